@@ -0,0 +1,115 @@
+package ccs.jlox;
+
+import ccs.jlox.backend.Interpreter;
+import ccs.jlox.backend.OutputSink;
+import ccs.jlox.error.CompileError;
+import ccs.jlox.error.ErrorHandler;
+import ccs.jlox.error.RuntimeError;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Runs many programs concurrently on a fixed pool. Every run gets its own interpreter, error
+// handler and captured output; compiled units are shared between runs of the same script.
+public final class BatchRunner implements AutoCloseable {
+  private final ExecutorService pool;
+
+  public BatchRunner(int parallelism) {
+    this.pool = Executors.newFixedThreadPool(parallelism);
+  }
+
+  // Compiles and runs each script independently
+  public List<Result> runScripts(List<Path> scripts) {
+    List<Callable<Result>> runs = new ArrayList<>();
+    for (Path script : scripts) {
+      runs.add(
+          () -> {
+            ErrorHandler errorHandler = new ErrorHandler();
+            try {
+              Map<String, CompilationUnit> units = LoxCompiler.compile(script, errorHandler);
+              return execute(script.toString(), units, errorHandler, null);
+            } catch (IOException e) {
+              return failedToLoad(script, e);
+            }
+          });
+    }
+    return invokeAll(runs);
+  }
+
+  // Compiles the script once and runs it once per input. Each run sees its input in the global
+  // `input`.
+  public List<Result> runInputs(Path script, List<String> inputs) {
+    ErrorHandler compileErrors = new ErrorHandler();
+    Map<String, CompilationUnit> units;
+    try {
+      units = LoxCompiler.compile(script, compileErrors);
+    } catch (IOException e) {
+      return inputs.stream().map(input -> failedToLoad(script, e)).toList();
+    }
+
+    List<Callable<Result>> runs = new ArrayList<>();
+    for (String input : inputs) {
+      runs.add(
+          () -> {
+            ErrorHandler errorHandler = new ErrorHandler();
+            errorHandler.addCompileErrors(compileErrors.getCompileErrors());
+            return execute(script.toString(), units, errorHandler, input);
+          });
+    }
+    return invokeAll(runs);
+  }
+
+  private static Result execute(
+      String name, Map<String, CompilationUnit> units, ErrorHandler errorHandler, String input) {
+    StringBuilder output = new StringBuilder();
+    if (!errorHandler.hadCompileError()) {
+      Interpreter interpreter = new Interpreter(units, errorHandler, OutputSink.of(output));
+      if (input != null) interpreter.defineMainGlobal("input", input);
+      interpreter.execute("__main__");
+    }
+    return new Result(
+        name, output.toString(), errorHandler.getCompileErrors(), errorHandler.getRuntimeErrors());
+  }
+
+  private static Result failedToLoad(Path script, IOException e) {
+    CompileError error = new CompileError(0, "", "Could not read script: " + e.getMessage());
+    return new Result(script.toString(), "", List.of(error), List.of());
+  }
+
+  private List<Result> invokeAll(List<Callable<Result>> runs) {
+    try {
+      List<Result> results = new ArrayList<>(runs.size());
+      for (Future<Result> future : pool.invokeAll(runs)) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for batch", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Batch run failed", e.getCause());
+    }
+  }
+
+  @Override
+  public void close() {
+    pool.shutdown();
+  }
+
+  public record Result(
+      String script,
+      String output,
+      List<CompileError> compileErrors,
+      List<RuntimeError> runtimeErrors) {
+    public boolean succeeded() {
+      return compileErrors.isEmpty() && runtimeErrors.isEmpty();
+    }
+  }
+}
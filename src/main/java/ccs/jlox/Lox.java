@@ -1,21 +1,26 @@
 package ccs.jlox;
 
 import ccs.jlox.backend.Interpreter;
+import ccs.jlox.backend.OutputSink;
 import ccs.jlox.error.ErrorHandler;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 public class Lox {
   private static final ErrorHandler ERROR_HANDLER = new ErrorHandler();
+  private static final String USAGE = "Usage: jlox [script] | jlox --batch [-j threads] scripts...";
 
   public static void main(String[] args) throws IOException {
-    if (args.length > 1) {
-      System.out.println("Usage: jlox [script]");
-      System.exit(64);
+    if (args.length > 0 && args[0].equals("--batch")) {
+      runBatch(Arrays.asList(args).subList(1, args.length));
+    } else if (args.length > 1) {
+      exitWithUsage();
     } else if (args.length == 1) {
       runFile(args[0], true);
     } else {
@@ -24,11 +29,22 @@ public class Lox {
   }
 
   static void runFile(String path, boolean handleErrors) throws IOException {
+    runFile(path, handleErrors, Boolean.getBoolean("jlox.lazyImports"));
+  }
+
+  static void runFile(String path, boolean handleErrors, boolean lazyImports) throws IOException {
     Path filePath = Paths.get(path);
 
-    Map<String, CompilationUnit> compilationUnits = LoxCompiler.compile(filePath);
-    Interpreter interpreter = new Interpreter(compilationUnits);
-    interpreter.execute("__main__");
+    ModuleLoader moduleLoader;
+    if (lazyImports) {
+      moduleLoader = LoxCompiler.compileLazily(filePath, ERROR_HANDLER);
+    } else {
+      moduleLoader = LoxCompiler.compile(filePath, ERROR_HANDLER)::get;
+    }
+    if (!ERROR_HANDLER.hadCompileError()) {
+      Interpreter interpreter = new Interpreter(moduleLoader, ERROR_HANDLER, output());
+      interpreter.execute("__main__");
+    }
 
     if (handleErrors) {
       printFileErrors(filePath.getFileName().toString());
@@ -37,6 +53,53 @@ public class Lox {
     }
   }
 
+  static void runBatch(List<String> args) {
+    int threads = Runtime.getRuntime().availableProcessors();
+    List<String> scripts = args;
+    if (!args.isEmpty() && args.get(0).equals("-j")) {
+      threads = args.size() >= 2 ? threadCount(args.get(1)) : 0;
+      if (threads < 1) exitWithUsage();
+      scripts = args.subList(2, args.size());
+    }
+
+    List<BatchRunner.Result> results;
+    try (BatchRunner runner = new BatchRunner(threads)) {
+      results = runner.runScripts(scripts.stream().map(Path::of).toList());
+    }
+
+    boolean hadCompileError = false;
+    boolean hadRuntimeError = false;
+    for (BatchRunner.Result result : results) {
+      String filename = Path.of(result.script()).getFileName().toString();
+      System.out.printf("== %s ==%n", result.script());
+      System.out.print(result.output());
+      result
+          .compileErrors()
+          .forEach(error -> System.out.print(ErrorHandler.errorRepresentation(error, filename)));
+      result
+          .runtimeErrors()
+          .forEach(error -> System.out.print(ErrorHandler.errorRepresentation(error, filename)));
+      hadCompileError |= !result.compileErrors().isEmpty();
+      hadRuntimeError |= !result.runtimeErrors().isEmpty();
+    }
+    if (hadCompileError) System.exit(65);
+    if (hadRuntimeError) System.exit(70);
+  }
+
+  // Zero when the value is not a number
+  private static int threadCount(String value) {
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  private static void exitWithUsage() {
+    System.out.println(USAGE);
+    System.exit(64);
+  }
+
   static void runPrompt() throws IOException {
     InputStreamReader input = new InputStreamReader(System.in);
     BufferedReader reader = new BufferedReader(input);
@@ -51,14 +114,20 @@ public class Lox {
     }
   }
 
+  // Standard output, written from a background thread with -Djlox.asyncOutput=true
+  private static OutputSink output() {
+    OutputSink stdout = OutputSink.stdout();
+    return Boolean.getBoolean("jlox.asyncOutput") ? stdout.async() : stdout;
+  }
+
   public static ErrorHandler getErrorHandler() {
     return ERROR_HANDLER;
   }
 
   private static void runSource(String source) throws IOException {
-    Map<String, CompilationUnit> compilationUnits = LoxCompiler.compile(source);
+    Map<String, CompilationUnit> compilationUnits = LoxCompiler.compile(source, ERROR_HANDLER);
     if (ERROR_HANDLER.hadCompileError()) return;
-    Interpreter interpreter = new Interpreter(compilationUnits);
+    Interpreter interpreter = new Interpreter(compilationUnits, ERROR_HANDLER, output());
     interpreter.execute("__main__");
   }
 
@@ -1,86 +1,170 @@
 package ccs.jlox;
 
 import ccs.jlox.ast.Stmt;
-import ccs.jlox.ast.Token;
+import ccs.jlox.backend.ffi.NativeModules;
+import ccs.jlox.cache.ModuleCache;
+import ccs.jlox.error.CompileError;
 import ccs.jlox.error.ErrorHandler;
 import ccs.jlox.frontend.Parser;
 import ccs.jlox.frontend.Scanner;
+import ccs.jlox.frontend.SourceText;
+import ccs.jlox.frontend.TokenBuffer;
+import ccs.jlox.interm.Flattener;
+import ccs.jlox.interm.PurityAnalysis;
 import ccs.jlox.interm.Resolver;
-import ccs.jlox.interm.VariableLocation;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.stream.Collectors;
 
 public final class LoxCompiler {
-  private static final ErrorHandler ERROR_HANDLER = Lox.getErrorHandler();
+  private static volatile boolean deferFunctionBodies = Boolean.getBoolean("jlox.lazyFunctions");
+  private static volatile boolean flattenExpressions = Boolean.getBoolean("jlox.flatExpressions");
 
-  public static Map<String, CompilationUnit> compile(Path path) throws IOException {
+  // Function bodies are only checked for balanced brackets at load time and are parsed and
+  // resolved when first called
+  public static void setDeferFunctionBodies(boolean defer) {
+    deferFunctionBodies = defer;
+  }
+
+  // Operator and variable trees are stored in flat arrays with variable locations inlined. Has no
+  // effect on deferred function bodies.
+  public static void setFlattenExpressions(boolean flatten) {
+    flattenExpressions = flatten;
+  }
+
+  public static Map<String, CompilationUnit> compile(Path path, ErrorHandler errorHandler)
+      throws IOException {
     Path projectRoot = path.getParent();
-    String mainSource = Files.readString(path);
-    return compile(mainSource, fqn -> loadProjectSource(projectRoot, fqn));
+    SourceText mainSource = SourceText.map(path);
+    return compile(mainSource, true, fqn -> loadProjectSource(projectRoot, fqn), errorHandler);
   }
 
-  public static Map<String, CompilationUnit> compile(String mainSource) throws IOException {
-    return compile(mainSource, LoxCompiler::loadStdSource);
+  public static Map<String, CompilationUnit> compile(String mainSource, ErrorHandler errorHandler)
+      throws IOException {
+    // Prompt lines are not worth caching
+    return compile(SourceText.of(mainSource), false, LoxCompiler::loadStdSource, errorHandler);
   }
 
-  private static Map<String, CompilationUnit> compile(String mainSource, SourceLoader sourceLoader)
+  // Only compiles the main file. Imports are compiled the first time they are executed.
+  public static ModuleLoader compileLazily(Path path, ErrorHandler errorHandler)
       throws IOException {
-    SingleFileOutput mainOutput = compileUnit(mainSource);
-    Map<String, CompilationUnit> compiledUnits = new HashMap<>();
-    compiledUnits.put("__main__", new CompilationUnit(mainOutput.stmts(), mainOutput.locals()));
-    Queue<String> unitsToCompile = new LinkedList<>(mainOutput.imports());
-
-    while (!unitsToCompile.isEmpty()) {
-      String fullyQualifiedName = unitsToCompile.poll();
-      if (!compiledUnits.containsKey(fullyQualifiedName)) {
-        String source = sourceLoader.loadSource(fullyQualifiedName);
-        SingleFileOutput output = compileUnit(source);
-        compiledUnits.put(fullyQualifiedName, new CompilationUnit(output.stmts(), output.locals()));
-        unitsToCompile.addAll(output.imports());
+    Path projectRoot = path.getParent();
+    SourceText mainSource = SourceText.map(path);
+    SingleFileOutput mainOutput = compileUnit(mainSource, true);
+    errorHandler.addCompileErrors(mainOutput.errors());
+    return new LazyModuleLoader(
+        mainOutput, fqn -> loadProjectSource(projectRoot, fqn), errorHandler);
+  }
+
+  private static Map<String, CompilationUnit> compile(
+      SourceText mainSource,
+      boolean cacheMain,
+      SourceLoader sourceLoader,
+      ErrorHandler errorHandler)
+      throws IOException {
+    Map<String, SingleFileOutput> outputs = new ConcurrentHashMap<>();
+    SingleFileOutput mainOutput = compileUnit(mainSource, cacheMain);
+    outputs.put("__main__", mainOutput);
+
+    // Modules only depend on each other at link time, so every discovered import is compiled on
+    // its own task. Claiming a module in `outputs` before forking it de-duplicates in-flight work.
+    try {
+      ForkJoinPool.commonPool()
+          .invoke(new ImportsTask(mainOutput.imports(), outputs, sourceLoader));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+
+    // Walk the import graph breadth first so units and errors come out in the same order no
+    // matter which task finished first
+    Map<String, CompilationUnit> compiledUnits = new LinkedHashMap<>();
+    Queue<String> unitsToVisit = new LinkedList<>(List.of("__main__"));
+    while (!unitsToVisit.isEmpty()) {
+      String fullyQualifiedName = unitsToVisit.poll();
+      if (!compiledUnits.containsKey(fullyQualifiedName)
+          && !NativeModules.contains(fullyQualifiedName)) {
+        SingleFileOutput output = outputs.get(fullyQualifiedName);
+        compiledUnits.put(fullyQualifiedName, output.unit());
+        errorHandler.addCompileErrors(output.errors());
+        unitsToVisit.addAll(output.imports());
       }
     }
 
     return compiledUnits;
   }
 
-  private static SingleFileOutput compileUnit(String source) {
-    Scanner scanner = new Scanner(source);
-    List<Token> tokens = scanner.scanTokens();
+  private static SingleFileOutput compileUnit(SourceText source, boolean cacheable) {
+    // Deferred bodies cannot be encoded, so that mode skips the cache altogether
+    boolean deferBodies = deferFunctionBodies;
+    if (cacheable && !deferBodies) {
+      Optional<ModuleCache.Entry> cached = ModuleCache.get(source, flattenExpressions);
+      if (cached.isPresent()) {
+        return new SingleFileOutput(cached.get().unit(), cached.get().imports(), List.of());
+      }
+    }
+
+    ErrorHandler errorHandler = new ErrorHandler();
+    Scanner scanner = new Scanner(source, errorHandler);
+    TokenBuffer tokens = scanner.scanTokens();
 
-    Parser parser = new Parser(tokens);
+    Parser parser = new Parser(tokens, errorHandler, deferBodies);
     List<Stmt> stmts = parser.parse();
 
-    if (ERROR_HANDLER.hadCompileError()) return new SingleFileOutput(stmts, null, null);
+    if (errorHandler.hadCompileError()) {
+      return new SingleFileOutput(
+          new CompilationUnit(stmts, null), List.of(), errorHandler.getCompileErrors());
+    }
 
-    Resolver resolver = new Resolver();
+    Resolver resolver = new Resolver(errorHandler);
     Resolver.ResolverContext resolverContext = resolver.resolve(stmts);
-    return new SingleFileOutput(stmts, resolverContext.locals(), resolverContext.imports());
+    if (!errorHandler.hadCompileError()) {
+      PurityAnalysis.analyze(stmts, resolverContext.locals(), errorHandler);
+    }
+    CompilationUnit unit = new CompilationUnit(stmts, resolverContext.locals());
+
+    if (cacheable && !deferBodies && !errorHandler.hadCompileError()) {
+      unit =
+          ModuleCache.put(
+                  source,
+                  new ModuleCache.Entry(unit, resolverContext.imports()),
+                  flattenExpressions)
+              .unit();
+    } else if (flattenExpressions && !deferBodies && !errorHandler.hadCompileError()) {
+      // Deferred bodies resolve into the original locals when called, so they keep the tree form
+      unit = Flattener.flatten(unit);
+    }
+    return new SingleFileOutput(unit, resolverContext.imports(), errorHandler.getCompileErrors());
   }
 
-  private static String loadProjectSource(Path projectRoot, String fullyQualifiedName)
+  private static SourceText loadProjectSource(Path projectRoot, String fullyQualifiedName)
       throws IOException {
     String packageName = parsePackageName(fullyQualifiedName);
     String unitName = parseUnitName(fullyQualifiedName);
     Path path = Paths.get(projectRoot.toString(), packageName.replace(".", "/"), unitName + ".lox");
     if (Files.exists(path)) {
-      return Files.readString(path);
+      return SourceText.map(path);
     } else {
       return loadStdSource(fullyQualifiedName);
     }
   }
 
-  private static String loadStdSource(String fullyQualifiedName) throws IOException {
+  private static SourceText loadStdSource(String fullyQualifiedName) throws IOException {
     String unitName = parseUnitName(fullyQualifiedName);
-    return Files.readString(Path.of("std", unitName + ".lox"));
+    return SourceText.map(Path.of("std", unitName + ".lox"));
   }
 
   private static String parseUnitName(String fullyQualifiedName) {
@@ -95,9 +179,96 @@ public final class LoxCompiler {
 
   @FunctionalInterface
   private interface SourceLoader {
-    String loadSource(String fullyQualifiedName) throws IOException;
+    SourceText loadSource(String fullyQualifiedName) throws IOException;
+  }
+
+  private static final class LazyModuleLoader implements ModuleLoader {
+    private final Map<String, SingleFileOutput> outputs = new ConcurrentHashMap<>();
+    private final SourceLoader sourceLoader;
+    private final ErrorHandler errorHandler;
+
+    LazyModuleLoader(
+        SingleFileOutput mainOutput, SourceLoader sourceLoader, ErrorHandler errorHandler) {
+      this.sourceLoader = sourceLoader;
+      this.errorHandler = errorHandler;
+      outputs.put("__main__", mainOutput);
+    }
+
+    @Override
+    public CompilationUnit load(String fullyQualifiedName) {
+      SingleFileOutput output = outputs.computeIfAbsent(fullyQualifiedName, this::compileModule);
+      return output.errors().isEmpty() ? output.unit() : null;
+    }
+
+    private SingleFileOutput compileModule(String fullyQualifiedName) {
+      try {
+        SingleFileOutput output = compileUnit(sourceLoader.loadSource(fullyQualifiedName), true);
+        errorHandler.addCompileErrors(output.errors());
+        return output;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  @SuppressWarnings("serial")
+  private static final class ImportsTask extends RecursiveAction {
+    private final List<String> imports;
+    private final Map<String, SingleFileOutput> outputs;
+    private final SourceLoader sourceLoader;
+
+    ImportsTask(
+        List<String> imports, Map<String, SingleFileOutput> outputs, SourceLoader sourceLoader) {
+      this.imports = imports;
+      this.outputs = outputs;
+      this.sourceLoader = sourceLoader;
+    }
+
+    @Override
+    protected void compute() {
+      List<ModuleTask> tasks = new ArrayList<>();
+      for (String fullyQualifiedName : imports) {
+        if (!NativeModules.contains(fullyQualifiedName)
+            && outputs.putIfAbsent(fullyQualifiedName, IN_FLIGHT) == null) {
+          tasks.add(new ModuleTask(fullyQualifiedName, outputs, sourceLoader));
+        }
+      }
+      invokeAll(tasks);
+    }
   }
 
-  record SingleFileOutput(
-      List<Stmt> stmts, Map<Integer, VariableLocation> locals, List<String> imports) {}
+  @SuppressWarnings("serial")
+  private static final class ModuleTask extends RecursiveAction {
+    private final String fullyQualifiedName;
+    private final Map<String, SingleFileOutput> outputs;
+    private final SourceLoader sourceLoader;
+
+    ModuleTask(
+        String fullyQualifiedName,
+        Map<String, SingleFileOutput> outputs,
+        SourceLoader sourceLoader) {
+      this.fullyQualifiedName = fullyQualifiedName;
+      this.outputs = outputs;
+      this.sourceLoader = sourceLoader;
+    }
+
+    @Override
+    protected void compute() {
+      SourceText source;
+      try {
+        source = sourceLoader.loadSource(fullyQualifiedName);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      SingleFileOutput output = compileUnit(source, true);
+      outputs.put(fullyQualifiedName, output);
+      new ImportsTask(output.imports(), outputs, sourceLoader).compute();
+    }
+  }
+
+  // Placeholder for a module that has been claimed by a task but is not compiled yet
+  private static final SingleFileOutput IN_FLIGHT =
+      new SingleFileOutput(null, List.of(), List.of());
+
+  record SingleFileOutput(CompilationUnit unit, List<String> imports, List<CompileError> errors) {}
 }
@@ -0,0 +1,8 @@
+package ccs.jlox;
+
+// Returns null when the module could not be compiled. The compile errors have already been
+// reported by then.
+@FunctionalInterface
+public interface ModuleLoader {
+  CompilationUnit load(String fullyQualifiedName);
+}
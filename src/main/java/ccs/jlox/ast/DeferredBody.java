@@ -0,0 +1,51 @@
+package ccs.jlox.ast;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Function body whose tree is only built the first time it is executed. The parser supplies the
+// step that parses its tokens and the resolver the step that resolves the result. At load time
+// the body is still parsed and resolved once to report its errors, but that draft is dropped as
+// soon as the resolver has checked it, so only the tokens stay in memory.
+public final class DeferredBody {
+  private final Supplier<List<Stmt>> parser;
+  private Consumer<List<Stmt>> resolver;
+  private volatile List<Stmt> statements;
+  private List<Stmt> draft;
+
+  public DeferredBody(Supplier<List<Stmt>> parser, List<Stmt> draft) {
+    this.parser = parser;
+    this.draft = draft;
+  }
+
+  // The statements of the checking parse, which are only handed out once
+  public List<Stmt> takeDraft() {
+    List<Stmt> result = draft;
+    draft = null;
+    return result;
+  }
+
+  public void setResolver(Consumer<List<Stmt>> resolver) {
+    this.resolver = resolver;
+  }
+
+  public boolean isParsed() {
+    return statements != null;
+  }
+
+  public List<Stmt> statements() {
+    List<Stmt> result = statements;
+    if (result == null) {
+      synchronized (this) {
+        result = statements;
+        if (result == null) {
+          result = parser.get();
+          resolver.accept(result);
+          statements = result;
+        }
+      }
+    }
+    return result;
+  }
+}
@@ -25,6 +25,11 @@ public sealed interface Expr {
 
   record Unary(Token operator, Expr right) implements Expr {}
 
+  record Await(Token keyword, Expr value) implements Expr {}
+
+  // "a${x}b${y}c" has the segments a, b and c and the values x and y
+  record Interpolation(List<String> segments, List<Expr> values) implements Expr {}
+
   record Variable(Token name) implements Expr {}
 
   record Assignment(Expr variable, Token equals, Expr value) implements Expr {}
@@ -33,6 +38,9 @@ public sealed interface Expr {
 
   record ArrayIndex(Expr array, Token rightParen, Expr idx) implements Expr {}
 
+  // Root of an expression tree that was flattened into `code`
+  record Flat(FlatCode code, int root) implements Expr {}
+
   // XXX: Is this circular dependency Expr <-> Stmt okay?
-  record Function(List<Token> params, List<Stmt> body) implements Expr {}
+  record Function(List<Token> params, List<Stmt> body, boolean async) implements Expr {}
 }
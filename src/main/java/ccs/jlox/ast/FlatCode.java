@@ -0,0 +1,91 @@
+package ccs.jlox.ast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Expression nodes of one compilation unit stored in parallel arrays. A node is an index; its
+// operands are either child node indices, resolved variable locations or constant pool indices
+// depending on the kind. Lines only live in a side table for error reporting.
+public final class FlatCode {
+  public static final int CONSTANT = 0; // a: constant
+  public static final int LOCAL = 1; // a: depth, b: slot
+  public static final int GLOBAL = 2; // a: constant holding the name
+  public static final int UNARY = 3; // a: operand, c: operator
+  public static final int BINARY = 4; // a: left, b: right, c: operator
+  public static final int LOGICAL = 5; // a: left, b: right, c: operator
+  public static final int TERNARY = 6; // a: condition, b: left, c: right
+  public static final int TREE = 7; // a: constant holding an Expr that was not flattened
+
+  private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+  private int[] kinds = new int[64];
+  private int[] as = new int[64];
+  private int[] bs = new int[64];
+  private int[] cs = new int[64];
+  private int[] lines = new int[64];
+  private final List<Object> constantList = new ArrayList<>();
+  private Object[] constants;
+  private int size = 0;
+
+  public int add(int kind, int a, int b, int c, int line) {
+    if (size == kinds.length) {
+      int capacity = size * 2;
+      kinds = Arrays.copyOf(kinds, capacity);
+      as = Arrays.copyOf(as, capacity);
+      bs = Arrays.copyOf(bs, capacity);
+      cs = Arrays.copyOf(cs, capacity);
+      lines = Arrays.copyOf(lines, capacity);
+    }
+    kinds[size] = kind;
+    as[size] = a;
+    bs[size] = b;
+    cs[size] = c;
+    lines[size] = line;
+    return size++;
+  }
+
+  public int addConstant(Object value) {
+    constantList.add(value);
+    return constantList.size() - 1;
+  }
+
+  // Called once every node has been added
+  public void seal() {
+    kinds = Arrays.copyOf(kinds, size);
+    as = Arrays.copyOf(as, size);
+    bs = Arrays.copyOf(bs, size);
+    cs = Arrays.copyOf(cs, size);
+    lines = Arrays.copyOf(lines, size);
+    constants = constantList.toArray();
+    constantList.clear();
+  }
+
+  public int kind(int node) {
+    return kinds[node];
+  }
+
+  public int a(int node) {
+    return as[node];
+  }
+
+  public int b(int node) {
+    return bs[node];
+  }
+
+  public int c(int node) {
+    return cs[node];
+  }
+
+  public TokenType operator(int node) {
+    return TOKEN_TYPES[cs[node]];
+  }
+
+  public int line(int node) {
+    return lines[node];
+  }
+
+  public Object constant(int index) {
+    return constants[index];
+  }
+}
@@ -0,0 +1,29 @@
+package ccs.jlox.ast;
+
+// Memoization state of a function declaration. `requested` comes from an @memo annotation and
+// `pure` is filled in by the purity analysis once the unit is resolved.
+public final class Memo {
+  private final boolean requested;
+  private volatile boolean pure;
+
+  public Memo(boolean requested) {
+    this(requested, false);
+  }
+
+  public Memo(boolean requested, boolean pure) {
+    this.requested = requested;
+    this.pure = pure;
+  }
+
+  public boolean isRequested() {
+    return requested;
+  }
+
+  public boolean isPure() {
+    return pure;
+  }
+
+  public void markPure() {
+    pure = true;
+  }
+}
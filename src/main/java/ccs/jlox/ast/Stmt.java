@@ -11,7 +11,7 @@ public sealed interface Stmt {
 
   record Var(Token name, Expr initializer) implements Stmt {}
 
-  record Function(Token name, Expr.Function function) implements Stmt {}
+  record Function(Token name, Expr.Function function, Memo memo) implements Stmt {}
 
   record Class(Token name, Expr.Variable superclass, List<Function> methods) implements Stmt {}
 
@@ -24,4 +24,7 @@ public sealed interface Stmt {
   record Debug(int line) implements Stmt {}
 
   record Break(int line) implements Stmt {}
+
+  // Stands in for the statements of a lazily parsed function body
+  record Deferred(DeferredBody body) implements Stmt {}
 }
@@ -0,0 +1,47 @@
+package ccs.jlox.ast;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// An interned identifier. There is a single Symbol per name for the whole process, so symbols are
+// compared by identity and their hash is computed once from a dense id.
+public final class Symbol {
+  private static final Map<String, Symbol> TABLE = new ConcurrentHashMap<>();
+  private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+  private final String name;
+  private final int id;
+  private final int hash;
+
+  private Symbol(String name, int id) {
+    this.name = name;
+    this.id = id;
+    // Fibonacci hashing spreads consecutive ids over the whole int range
+    this.hash = id * 0x9E3779B9;
+  }
+
+  public static Symbol of(String name) {
+    Symbol symbol = TABLE.get(name);
+    if (symbol != null) return symbol;
+    return TABLE.computeIfAbsent(name, key -> new Symbol(key, NEXT_ID.getAndIncrement()));
+  }
+
+  public String name() {
+    return name;
+  }
+
+  public int id() {
+    return id;
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
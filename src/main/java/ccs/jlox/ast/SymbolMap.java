@@ -0,0 +1,76 @@
+package ccs.jlox.ast;
+
+// Open addressing map keyed by symbol identity. Lookups use the symbol's precomputed hash and never
+// call String.hashCode or equals. Values may be null, so use containsKey to tell them apart from
+// missing entries.
+// Keys and values are interleaved in one array so a reader always sees a consistent table, even
+// while another thread grows it. Reads take no lock; writes are serialized, since a write to an
+// existing entry could otherwise land in a table that a concurrent grow has already copied.
+public final class SymbolMap<V> {
+  private volatile Object[] table;
+  private int size = 0;
+
+  public SymbolMap() {
+    this(8);
+  }
+
+  public SymbolMap(int expectedSize) {
+    int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+    table = new Object[capacity * 2];
+  }
+
+  public boolean containsKey(Symbol key) {
+    Object[] entries = table;
+    return entries[slot(entries, key)] == key;
+  }
+
+  @SuppressWarnings("unchecked")
+  public V get(Symbol key) {
+    Object[] entries = table;
+    int slot = slot(entries, key);
+    return entries[slot] == key ? (V) entries[slot + 1] : null;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  public synchronized void put(Symbol key, V value) {
+    Object[] entries = table;
+    int slot = slot(entries, key);
+    if (entries[slot] == key) {
+      entries[slot + 1] = value;
+      return;
+    }
+    if ((size + 1) * 4 > entries.length) {
+      entries = grow(entries);
+      slot = slot(entries, key);
+    }
+    size++;
+    entries[slot] = key;
+    entries[slot + 1] = value;
+    table = entries;
+  }
+
+  // Either the slot holding `key` or the empty slot where it would go
+  private static int slot(Object[] entries, Symbol key) {
+    int mask = entries.length / 2 - 1;
+    int index = key.hashCode() & mask;
+    while (entries[index * 2] != null && entries[index * 2] != key) {
+      index = (index + 1) & mask;
+    }
+    return index * 2;
+  }
+
+  private static Object[] grow(Object[] entries) {
+    Object[] grown = new Object[entries.length * 2];
+    for (int i = 0; i < entries.length; i += 2) {
+      if (entries[i] != null) {
+        int slot = slot(grown, (Symbol) entries[i]);
+        grown[slot] = entries[i];
+        grown[slot + 1] = entries[i + 1];
+      }
+    }
+    return grown;
+  }
+}
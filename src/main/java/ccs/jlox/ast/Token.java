@@ -1,3 +1,8 @@
 package ccs.jlox.ast;
 
-public record Token(TokenType type, String lexeme, Object literal, int line) {}
+// Identifiers carry their interned Symbol as the literal
+public record Token(TokenType type, String lexeme, Object literal, int line) {
+  public Symbol symbol() {
+    return (Symbol) literal;
+  }
+}
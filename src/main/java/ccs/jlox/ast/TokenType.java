@@ -2,62 +2,78 @@ package ccs.jlox.ast;
 
 public enum TokenType {
   // single character tokens
-  BACKSLASH,
-  LEFT_PAREN,
-  RIGHT_PAREN,
-  LEFT_SQUARE_BRACKET,
-  RIGHT_SQUARE_BRACKET,
-  LEFT_BRACE,
-  RIGHT_BRACE,
-  COMMA,
-  DOT,
-  SEMICOLON,
-  QUESTION_MARK,
-  COLON,
+  BACKSLASH("\\"),
+  LEFT_PAREN("("),
+  RIGHT_PAREN(")"),
+  LEFT_SQUARE_BRACKET("["),
+  RIGHT_SQUARE_BRACKET("]"),
+  LEFT_BRACE("{"),
+  RIGHT_BRACE("}"),
+  COMMA(","),
+  DOT("."),
+  SEMICOLON(";"),
+  QUESTION_MARK("?"),
+  COLON(":"),
+  AT("@"),
 
   // one or two character tokens
-  ARROW,
-  PLUS,
-  PLUS_EQUAL,
-  STAR,
-  STAR_EQUAL,
-  MINUS,
-  MINUS_EQUAL,
-  SLASH,
-  SLASH_EQUAL,
-  BANG,
-  BANG_EQUAL,
-  EQUAL,
-  EQUAL_EQUAL,
-  GREATER,
-  GREATER_EQUAL,
-  LESS,
-  LESS_EQUAL,
+  ARROW("->"),
+  PLUS("+"),
+  PLUS_EQUAL("+="),
+  STAR("*"),
+  STAR_EQUAL("*="),
+  MINUS("-"),
+  MINUS_EQUAL("-="),
+  SLASH("/"),
+  SLASH_EQUAL("/="),
+  BANG("!"),
+  BANG_EQUAL("!="),
+  EQUAL("="),
+  EQUAL_EQUAL("=="),
+  GREATER(">"),
+  GREATER_EQUAL(">="),
+  LESS("<"),
+  LESS_EQUAL("<="),
 
   // literals
-  IDENTIFIER,
-  STRING,
-  NUMBER,
+  IDENTIFIER(null),
+  STRING(null),
+  // The part of an interpolated string before a ${, from the opening quote or the previous }
+  INTERPOLATION(null),
+  NUMBER(null),
 
   // keywords
-  AND,
-  AS,
-  BREAK,
-  CLASS,
-  DEBUG,
-  ELSE,
-  FALSE,
-  FUN,
-  FOR,
-  IF,
-  IMPORT,
-  NIL,
-  OR,
-  RETURN,
-  SUPER,
-  THIS,
-  TRUE,
-  VAR,
-  WHILE,
-  EOF
+  AND("and"),
+  AS("as"),
+  ASYNC("async"),
+  AWAIT("await"),
+  BREAK("break"),
+  CLASS("class"),
+  DEBUG("debug"),
+  ELSE("else"),
+  FALSE("false"),
+  FUN("fun"),
+  FOR("for"),
+  IF("if"),
+  IMPORT("import"),
+  NIL("nil"),
+  OR("or"),
+  RETURN("return"),
+  SUPER("super"),
+  THIS("this"),
+  TRUE("true"),
+  VAR("var"),
+  WHILE("while"),
+  EOF("");
+
+  // Lexeme shared by every token of this type, or null when it depends on the source
+  private final String fixedLexeme;
+
+  TokenType(String fixedLexeme) {
+    this.fixedLexeme = fixedLexeme;
+  }
+
+  public String fixedLexeme() {
+    return fixedLexeme;
+  }
 }
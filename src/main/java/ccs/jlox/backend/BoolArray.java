@@ -0,0 +1,61 @@
+package ccs.jlox.backend;
+
+import ccs.jlox.error.RuntimeError;
+import java.util.Arrays;
+
+public final class BoolArray implements Indexable {
+  private final boolean[] values;
+
+  public BoolArray(int size) {
+    this(new boolean[size]);
+  }
+
+  private BoolArray(boolean[] values) {
+    this.values = values;
+  }
+
+  @Override
+  public Object get(int index) {
+    return values[index];
+  }
+
+  @Override
+  public void set(int index, Object value, int line) {
+    values[index] = bool(value, line);
+  }
+
+  @Override
+  public void fill(int from, int to, Object value, int line) {
+    Arrays.fill(values, from, to, bool(value, line));
+  }
+
+  @Override
+  public BoolArray resized(int size) {
+    return new BoolArray(Arrays.copyOf(values, size));
+  }
+
+  @Override
+  public BoolArray slice(int from, int to) {
+    return new BoolArray(Arrays.copyOfRange(values, from, to));
+  }
+
+  @Override
+  public Object storage() {
+    return values;
+  }
+
+  @Override
+  public int size() {
+    return values.length;
+  }
+
+  @Override
+  public String toString() {
+    return "<bool array>";
+  }
+
+  private static boolean bool(Object value, int line) {
+    if (value instanceof Boolean bool) return bool;
+    throw new RuntimeError(line, "Bool arrays can only hold booleans.");
+  }
+}
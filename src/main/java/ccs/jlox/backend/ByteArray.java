@@ -0,0 +1,69 @@
+package ccs.jlox.backend;
+
+import ccs.jlox.error.RuntimeError;
+import java.util.Arrays;
+
+// Elements are integers from 0 to 255
+public final class ByteArray implements Indexable {
+  private final byte[] values;
+
+  public ByteArray(int size) {
+    this(new byte[size]);
+  }
+
+  public ByteArray(byte[] values) {
+    this.values = values;
+  }
+
+  // The backing array, shared with the caller
+  public byte[] values() {
+    return values;
+  }
+
+  @Override
+  public Object get(int index) {
+    return (double) (values[index] & 0xFF);
+  }
+
+  @Override
+  public void set(int index, Object value, int line) {
+    values[index] = octet(value, line);
+  }
+
+  @Override
+  public void fill(int from, int to, Object value, int line) {
+    Arrays.fill(values, from, to, octet(value, line));
+  }
+
+  @Override
+  public ByteArray resized(int size) {
+    return new ByteArray(Arrays.copyOf(values, size));
+  }
+
+  @Override
+  public ByteArray slice(int from, int to) {
+    return new ByteArray(Arrays.copyOfRange(values, from, to));
+  }
+
+  @Override
+  public Object storage() {
+    return values;
+  }
+
+  @Override
+  public int size() {
+    return values.length;
+  }
+
+  @Override
+  public String toString() {
+    return "<byte array>";
+  }
+
+  private static byte octet(Object value, int line) {
+    if (value instanceof Double number && number >= 0 && number <= 255 && number % 1 == 0) {
+      return (byte) number.intValue();
+    }
+    throw new RuntimeError(line, "Byte arrays can only hold integers from 0 to 255.");
+  }
+}
@@ -0,0 +1,67 @@
+package ccs.jlox.backend;
+
+import ccs.jlox.error.RuntimeError;
+import java.util.Arrays;
+
+// Fixed size array of unboxed numbers, for numeric kernels that would otherwise box every element
+public final class DoubleArray implements Indexable {
+  private final double[] values;
+
+  public DoubleArray(int size) {
+    this(new double[size]);
+  }
+
+  public DoubleArray(double[] values) {
+    this.values = values;
+  }
+
+  // The backing array, shared with the caller
+  public double[] values() {
+    return values;
+  }
+
+  @Override
+  public Object get(int index) {
+    return values[index];
+  }
+
+  @Override
+  public void set(int index, Object value, int line) {
+    values[index] = number(value, line);
+  }
+
+  @Override
+  public void fill(int from, int to, Object value, int line) {
+    Arrays.fill(values, from, to, number(value, line));
+  }
+
+  @Override
+  public DoubleArray resized(int size) {
+    return new DoubleArray(Arrays.copyOf(values, size));
+  }
+
+  @Override
+  public DoubleArray slice(int from, int to) {
+    return new DoubleArray(Arrays.copyOfRange(values, from, to));
+  }
+
+  @Override
+  public Object storage() {
+    return values;
+  }
+
+  @Override
+  public int size() {
+    return values.length;
+  }
+
+  @Override
+  public String toString() {
+    return "<double array>";
+  }
+
+  private static double number(Object value, int line) {
+    if (value instanceof Double number) return number;
+    throw new RuntimeError(line, "Double arrays can only hold numbers.");
+  }
+}
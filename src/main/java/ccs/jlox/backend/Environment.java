@@ -29,7 +29,11 @@ final class Environment {
   }
 
   Object getAt(VariableLocation variableLocation) {
-    return ancestor(variableLocation.depth()).get(variableLocation.slot());
+    return getAt(variableLocation.depth(), variableLocation.slot());
+  }
+
+  Object getAt(int depth, int slot) {
+    return ancestor(depth).get(slot);
   }
 
   Environment ancestor(int distance) {
@@ -0,0 +1,41 @@
+package ccs.jlox.backend;
+
+import ccs.jlox.error.RuntimeError;
+
+// An array Lox code can index with a[i]. The generic LoxArray holds any value; the typed arrays
+// store primitives and reject writes of other types. Callers check bounds with checkIndex.
+public interface Indexable {
+  int size();
+
+  Object get(int index);
+
+  void set(int index, Object value, int line);
+
+  void fill(int from, int to, Object value, int line);
+
+  // New array of the same type with the given size, either truncated or padded with the default
+  // element (nil, 0 or false)
+  Indexable resized(int size);
+
+  Indexable slice(int from, int to);
+
+  // Backing Java array, for bulk copies between arrays of the same type
+  Object storage();
+
+  static int checkIndex(Indexable array, Object index, int line) {
+    if (!(index instanceof Double number)) {
+      throw new RuntimeError(line, "Array index must be a number.");
+    }
+    if (number != Math.floor(number)) {
+      throw new RuntimeError(line, "Array index must be an integer.");
+    }
+    if (number < 0 || number >= array.size()) {
+      throw new RuntimeError(
+          line,
+          String.format(
+              "Index %d is out of bounds for an array of size %d.",
+              number.longValue(), array.size()));
+    }
+    return number.intValue();
+  }
+}
@@ -1,45 +1,189 @@
 package ccs.jlox.backend;
 
 import ccs.jlox.CompilationUnit;
-import ccs.jlox.Lox;
+import ccs.jlox.ModuleLoader;
 import ccs.jlox.ast.Expr;
+import ccs.jlox.ast.FlatCode;
+import ccs.jlox.ast.Memo;
 import ccs.jlox.ast.Stmt;
+import ccs.jlox.ast.Symbol;
+import ccs.jlox.ast.SymbolMap;
 import ccs.jlox.ast.Token;
 import ccs.jlox.ast.TokenType;
+import ccs.jlox.backend.ffi.NativeModule;
+import ccs.jlox.backend.ffi.NativeModules;
+import ccs.jlox.backend.ffi.PrintFunction;
 import ccs.jlox.error.ErrorHandler;
 import ccs.jlox.error.RuntimeError;
 import ccs.jlox.interm.VariableLocation;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public final class Interpreter {
-  private static final ErrorHandler ERROR_HANDLER = Lox.getErrorHandler();
-
+  private static final Symbol SUPER = Symbol.of("super");
+
+  // Everything a run touches lives on the interpreter, so a compiled program can be executed by
+  // several interpreters on different threads at once
+  private final ModuleLoader moduleLoader;
+  private final ErrorHandler errorHandler;
+  private final OutputSink out;
+  private final Scheduler scheduler;
+  // Shared with forked interpreters
   private final Map<String, CompilationUnit> compilationUnits;
-  private final Map<String, LoxModule> modules = new HashMap<>();
+  private final Map<String, LoxModule> modules;
+  private final Map<String, ModuleImport> imports;
+  private final Set<LoxFile> openWriters;
   private String currentNamespace = "__main__";
   private Environment currentEnvironment;
 
-  public Interpreter(Map<String, CompilationUnit> compilationUnits) {
-    this.compilationUnits = compilationUnits;
-    CompilationUnit mainCompilationUnit = compilationUnits.get("__main__");
+  public Interpreter(
+      Map<String, CompilationUnit> compilationUnits, ErrorHandler errorHandler, OutputSink out) {
+    this(compilationUnits::get, errorHandler, out);
+  }
+
+  public Interpreter(ModuleLoader moduleLoader, ErrorHandler errorHandler, OutputSink out) {
+    this.moduleLoader = moduleLoader;
+    this.errorHandler = errorHandler;
+    this.out = out;
+    this.scheduler = new Scheduler();
+    this.compilationUnits = new ConcurrentHashMap<>();
+    this.modules = new ConcurrentHashMap<>();
+    this.imports = new ConcurrentHashMap<>();
+    this.openWriters = ConcurrentHashMap.newKeySet();
+    CompilationUnit mainCompilationUnit = moduleLoader.load("__main__");
+    compilationUnits.put("__main__", mainCompilationUnit);
     LoxModule mainModule = new LoxModule("__main__", mainCompilationUnit.locals());
     modules.put("__main__", mainModule);
   }
 
+  private Interpreter(Interpreter parent) {
+    this.moduleLoader = parent.moduleLoader;
+    this.errorHandler = parent.errorHandler;
+    this.out = parent.out;
+    this.scheduler = parent.scheduler;
+    this.compilationUnits = parent.compilationUnits;
+    this.modules = parent.modules;
+    this.imports = parent.imports;
+    this.openWriters = parent.openWriters;
+    this.currentNamespace = parent.currentNamespace;
+  }
+
+  // An interpreter for running code on another thread. It has its own call state but sees the same
+  // modules, errors and output as this one.
+  public Interpreter fork() {
+    return new Interpreter(this);
+  }
+
+  // Prepares a call of `entry` in a new isolate: an interpreter over the same compiled units but
+  // with its own modules and heap. The entry's module is loaded again on the isolate's side, so
+  // only top level functions of imported modules qualify. The argument is copied now and the result
+  // is copied when the task completes.
+  public Supplier<Object> isolate(LoxCallable entry, Object argument, Token callSite) {
+    if (!(entry instanceof LoxFunction function)
+        || !function.isTopLevel()
+        || function.getNamespace().equals("__main__")) {
+      throw new RuntimeError(
+          callSite.line(), "Isolate entry must be a top level function of an imported module.");
+    }
+    if (function.arity() != 1) {
+      throw new RuntimeError(callSite.line(), "Isolate entry must take one argument.");
+    }
+    Object message = Transfer.copy(argument, callSite.line());
+    return () -> {
+      Interpreter isolate = new Interpreter(moduleLoader, errorHandler, out);
+      try {
+        return isolate.scheduler.run(
+            () -> {
+              try {
+                LoxModule module = isolate.importModule(function.getNamespace(), callSite.line());
+                Object callee = module.getGlobals().get(Symbol.of(function.getName()));
+                Object result =
+                    ((LoxCallable) callee)
+                        .call(isolate, callSite, Collections.singletonList(message));
+                return Transfer.copy(result, callSite.line());
+              } catch (RuntimeError error) {
+                isolate.reportError(error);
+                return null;
+              }
+            },
+            errorHandler);
+      } finally {
+        // Nothing outside the isolate can reach its files
+        isolate.closeOpenWriters();
+      }
+    };
+  }
+
+  // Rejects functions that assign to variables they do not own, so that several threads can call
+  // them at once without racing on a shared environment
+  public void checkNoOuterWrites(LoxCallable callable, Token callSite) {
+    if (!(callable instanceof LoxFunction function)) return;
+    Optional<Token> write =
+        function.findOuterWrite(modules.get(function.getNamespace()).getLocals());
+    if (write.isPresent()) {
+      throw new RuntimeError(
+          callSite.line(),
+          String.format(
+              "Function %s assigns to '%s' on line %d, which is declared outside of it.",
+              function.getName(), write.get().lexeme(), write.get().line()));
+    }
+  }
+
+  public void reportError(RuntimeError error) {
+    errorHandler.runtimeError(error);
+  }
+
+  // Runs a program. Imports run through executeModule, so output is only flushed once at the end.
   public void execute(String namespace) {
+    try {
+      scheduler.run(() -> executeModule(namespace), errorHandler);
+    } finally {
+      closeOpenWriters();
+      out.flush();
+    }
+  }
+
+  // Files the script opened for writing and has not closed yet
+  void opened(LoxFile file) {
+    openWriters.add(file);
+  }
+
+  void closed(LoxFile file) {
+    openWriters.remove(file);
+  }
+
+  // A writer the script never closed still holds the tail of its output in its buffer
+  private void closeOpenWriters() {
+    for (LoxFile file : List.copyOf(openWriters)) {
+      try {
+        file.close();
+      } catch (RuntimeError error) {
+        errorHandler.runtimeError(error);
+      }
+    }
+  }
+
+  private Void executeModule(String namespace) {
     setCurrentNamespace(namespace);
     try {
       for (Stmt stmt : compilationUnits.get(currentNamespace).statements()) {
         execute(stmt);
       }
     } catch (RuntimeError error) {
-      ERROR_HANDLER.runtimeError(error);
+      errorHandler.runtimeError(error);
     }
+    return null;
   }
 
   private void execute(Stmt stmt) {
@@ -55,6 +199,7 @@ public final class Interpreter {
       case Stmt.Import importStmt -> executeImportStmt(importStmt);
       case Stmt.Debug debugStmt -> executeDebugStmt(debugStmt);
       case Stmt.Break breakStmt -> executeBreakStmt(breakStmt);
+      case Stmt.Deferred deferredStmt -> executeDeferredStmt(deferredStmt);
     }
   }
 
@@ -91,18 +236,21 @@ public final class Interpreter {
     if (varStmt.initializer() != null) {
       value = evaluate(varStmt.initializer());
     }
-    define(varStmt.name().lexeme(), value);
+    define(varStmt.name().symbol(), value);
   }
 
   private void executeFunctionStmt(Stmt.Function functionStmt) {
+    Memo memo = functionStmt.memo();
+    boolean memoize = memo.isPure() && (memo.isRequested() || MemoCache.memoizeAll());
     LoxFunction function =
         new LoxFunction(
             currentNamespace,
             functionStmt.name().lexeme(),
             functionStmt.function(),
             getEnvironment(),
-            false);
-    define(functionStmt.name().lexeme(), function);
+            false,
+            memoize ? new MemoCache() : null);
+    define(functionStmt.name().symbol(), function);
   }
 
   private void executeClassStmt(Stmt.Class classStmt) {
@@ -114,14 +262,14 @@ public final class Interpreter {
       }
     }
     // XXX: Why two step process (first define class then assign it)?
-    define(classStmt.name().lexeme(), null);
+    define(classStmt.name().symbol(), null);
 
     if (classStmt.superclass() != null) {
       setEnvironment(new Environment(getEnvironment()));
-      define("super", superclass);
+      define(SUPER, superclass);
     }
 
-    Map<String, LoxFunction> methods = new HashMap<>();
+    SymbolMap<LoxFunction> methods = new SymbolMap<>(classStmt.methods().size());
     for (Stmt.Function method : classStmt.methods()) {
       LoxFunction function =
           new LoxFunction(
@@ -130,7 +278,7 @@ public final class Interpreter {
               method.function(),
               getEnvironment(),
               method.name().lexeme().equals("init"));
-      methods.put(method.name().lexeme(), function);
+      methods.put(method.name().symbol(), function);
     }
 
     LoxClass klass = new LoxClass(classStmt.name().lexeme(), (LoxClass) superclass, methods);
@@ -139,7 +287,7 @@ public final class Interpreter {
       setEnvironment(getEnvironment().ancestor(1));
     }
 
-    define(classStmt.name().lexeme(), klass);
+    define(classStmt.name().symbol(), klass);
   }
 
   private void executeBlockStmt(Stmt.Block blockStmt) {
@@ -163,46 +311,112 @@ public final class Interpreter {
   private void executeImportStmt(Stmt.Import importStmt) {
     String fullyQualifiedName =
         importStmt.path().stream().map(Token::lexeme).collect(Collectors.joining("."));
-    String qualifier = importStmt.name().lexeme();
+    Symbol qualifier = importStmt.name().symbol();
+    define(qualifier, importModule(fullyQualifiedName, importStmt.path().get(0).line()));
+  }
+
+  // A module import that has started. Other threads wait for it to finish; the importing thread
+  // itself gets the module half initialized, as an import cycle always did.
+  private record ModuleImport(Thread importer, CompletableFuture<LoxModule> done) {}
 
-    // Check if we have already executed the lox module
-    if (modules.containsKey(fullyQualifiedName)) {
-      LoxModule loxModule = modules.get(fullyQualifiedName);
-      defineGlobal(qualifier, loxModule);
-      return;
+  private LoxModule importModule(String fullyQualifiedName, int line) {
+    ModuleImport started = new ModuleImport(Thread.currentThread(), new CompletableFuture<>());
+    ModuleImport existing = imports.putIfAbsent(fullyQualifiedName, started);
+    if (existing != null) {
+      if (existing.importer() == Thread.currentThread() && !existing.done().isDone()) {
+        return modules.get(fullyQualifiedName);
+      }
+      try {
+        return scheduler.yielding(existing.done()::join);
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeError error) throw error;
+        throw e;
+      }
     }
 
-    CompilationUnit compilationUnit = compilationUnits.get(fullyQualifiedName);
+    LoxModule loxModule;
+    try {
+      loxModule = createModule(fullyQualifiedName, line);
+    } catch (RuntimeException e) {
+      // Not loaded, so a later import tries again
+      imports.remove(fullyQualifiedName, started);
+      started.done().completeExceptionally(e);
+      throw e;
+    }
+    started.done().complete(loxModule);
+    if (errorHandler.hadCompileError()) {
+      throw new RuntimeError(line, String.format("Could not parse module %s.", fullyQualifiedName));
+    }
+    return loxModule;
+  }
+
+  // Loads and runs the module; called once per module by the thread that imports it first
+  private LoxModule createModule(String fullyQualifiedName, int line) {
+    Optional<NativeModule> nativeModule = NativeModules.get(fullyQualifiedName);
+    if (nativeModule.isPresent()) {
+      LoxModule loxModule = new LoxModule(fullyQualifiedName, Map.of());
+      nativeModule.get().getFunctions().forEach(loxModule::addNativeFunction);
+      modules.put(fullyQualifiedName, loxModule);
+      return loxModule;
+    }
+
+    CompilationUnit compilationUnit = loadModule(fullyQualifiedName, line);
+    compilationUnits.put(fullyQualifiedName, compilationUnit);
     LoxModule loxModule = new LoxModule(fullyQualifiedName, compilationUnit.locals());
     modules.put(fullyQualifiedName, loxModule);
-    defineGlobal(qualifier, loxModule);
 
+    // The import may be inside a function, but the module's declarations are its globals
     String previousNamespace = currentNamespace;
-    currentNamespace = fullyQualifiedName;
-    execute(fullyQualifiedName);
-    currentNamespace = previousNamespace;
-    if (ERROR_HANDLER.hadCompileError()) {
+    Environment previousEnvironment = getEnvironment();
+    setEnvironment(null);
+    try {
+      scheduler.runNested(() -> executeModule(fullyQualifiedName));
+    } finally {
+      currentNamespace = previousNamespace;
+      setEnvironment(previousEnvironment);
+    }
+    return loxModule;
+  }
+
+  private CompilationUnit loadModule(String fullyQualifiedName, int line) {
+    CompilationUnit compilationUnit;
+    try {
+      compilationUnit = moduleLoader.load(fullyQualifiedName);
+    } catch (UncheckedIOException e) {
+      throw new RuntimeError(line, String.format("Could not load module %s.", fullyQualifiedName));
+    }
+    if (compilationUnit == null) {
       throw new RuntimeError(
-          importStmt.path().get(0).line(),
-          String.format("Could not parse module %s.", fullyQualifiedName));
+          line, String.format("Could not compile module %s.", fullyQualifiedName));
     }
+    return compilationUnit;
   }
 
   private void executeDebugStmt(Stmt.Debug debugStmt) {
-    System.out.printf("[DEBUG] Line %d%n", debugStmt.line());
+    out.println(String.format("[DEBUG] Line %d", debugStmt.line()));
   }
 
   private void executeBreakStmt(Stmt.Break breakStmt) {
     throw new Break();
   }
 
+  private void executeDeferredStmt(Stmt.Deferred deferredStmt) {
+    for (Stmt stmt : deferredStmt.body().statements()) {
+      execute(stmt);
+    }
+  }
+
   private Object evaluate(Expr expr) {
+    // Type switches test cases in order and flattened roots are the most common node, so that case
+    // comes first
     return switch (expr) {
+      case Expr.Flat flat -> evaluateFlat(flat.code(), flat.root());
       case Expr.Literal lit -> evaluateLiteralExpr(lit);
       case Expr.Logical log -> evaluateLogicalExpr(log);
       case Expr.Variable variable -> evaluateVariableExpr(variable);
       case Expr.Assignment assignment -> evaluateAssignmentExpr(assignment);
       case Expr.Unary unary -> evaluateUnaryExpr(unary);
+      case Expr.Await await -> scheduler.await(evaluate(await.value()));
       case Expr.Binary binary -> evaluateBinaryExpr(binary);
       case Expr.Ternary ternary -> evaluateTernaryExpr(ternary);
       case Expr.Grouping group -> evaluateGroupingExpr(group);
@@ -213,6 +427,7 @@ public final class Interpreter {
       case Expr.ArrayCreation arrayCExpr -> evaluateArrayCreationExpr(arrayCExpr);
       case Expr.ArrayIndex arrayIndexExpr -> evaluateArrayIndexExpr(arrayIndexExpr);
       case Expr.Function functionExpr -> evaluateFunctionExpr(functionExpr);
+      case Expr.Interpolation interpolation -> evaluateInterpolationExpr(interpolation);
     };
   }
 
@@ -240,7 +455,7 @@ public final class Interpreter {
     if (varLocation != null) {
       return getAt(varLocation);
     } else {
-      return getGlobal(name.lexeme(), name.line());
+      return getGlobal(name.symbol(), name.line());
     }
   }
 
@@ -255,7 +470,7 @@ public final class Interpreter {
       if (varLocation != null) {
         assignAt(varLocation, value);
       } else {
-        assignGlobal(variable.name().lexeme(), value, variable.name().line());
+        assignGlobal(variable.name().symbol(), value, variable.name().line());
       }
       return value;
     } else if (assignmentExpr.variable() instanceof Expr.Get get) {
@@ -266,13 +481,10 @@ public final class Interpreter {
       }
     } else if (assignmentExpr.variable() instanceof Expr.ArrayIndex indexExpr) {
       Object object = evaluate(indexExpr.array());
-      if (object instanceof LoxArray loxArray) {
-        Object index = evaluate(indexExpr.idx());
-
-        if (index instanceof Double doubleIndex) {
-          loxArray.set(doubleIndex.intValue(), value);
-          return value;
-        }
+      if (object instanceof Indexable array) {
+        int line = indexExpr.rightParen().line();
+        array.set(Indexable.checkIndex(array, evaluate(indexExpr.idx()), line), value, line);
+        return value;
       }
     }
 
@@ -283,10 +495,13 @@ public final class Interpreter {
 
   private Object evaluateUnaryExpr(Expr.Unary unaryExpr) {
     Object right = evaluate(unaryExpr.right());
+    return unary(unaryExpr.operator().type(), unaryExpr.operator().line(), right);
+  }
 
-    return switch (unaryExpr.operator().type()) {
+  private static Object unary(TokenType operator, int line, Object right) {
+    return switch (operator) {
       case MINUS -> {
-        checkNumberOperand(unaryExpr.operator(), right);
+        checkNumberOperand(line, right);
         yield -(double) right;
       }
       case BANG -> !isTruthy(right);
@@ -297,52 +512,79 @@ public final class Interpreter {
   private Object evaluateBinaryExpr(Expr.Binary binaryExpr) {
     Object left = evaluate(binaryExpr.left());
     Object right = evaluate(binaryExpr.right());
+    return binary(binaryExpr.operator().type(), binaryExpr.operator().line(), left, right);
+  }
 
-    return switch (binaryExpr.operator().type()) {
+  private static Object binary(TokenType operator, int line, Object left, Object right) {
+    return switch (operator) {
       case GREATER -> {
-        checkNumberOperands(binaryExpr.operator(), left, right);
+        checkNumberOperands(line, left, right);
         yield (double) left > (double) right;
       }
       case GREATER_EQUAL -> {
-        checkNumberOperands(binaryExpr.operator(), left, right);
+        checkNumberOperands(line, left, right);
         yield (double) left >= (double) right;
       }
       case LESS -> {
-        checkNumberOperands(binaryExpr.operator(), left, right);
+        checkNumberOperands(line, left, right);
         yield (double) left < (double) right;
       }
       case LESS_EQUAL -> {
-        checkNumberOperands(binaryExpr.operator(), left, right);
+        checkNumberOperands(line, left, right);
         yield (double) left <= (double) right;
       }
       case BANG_EQUAL -> !isEqual(left, right);
       case EQUAL_EQUAL -> isEqual(left, right);
       case MINUS -> {
-        checkNumberOperands(binaryExpr.operator(), left, right);
+        checkNumberOperands(line, left, right);
         yield (double) left - (double) right;
       }
       case SLASH -> {
-        checkNumberOperands(binaryExpr.operator(), left, right);
+        checkNumberOperands(line, left, right);
         yield (double) left / (double) right;
       }
       case STAR -> {
-        checkNumberOperands(binaryExpr.operator(), left, right);
+        checkNumberOperands(line, left, right);
         yield (double) left * (double) right;
       }
       case PLUS -> {
         if (left instanceof Double dLeft && right instanceof Double dRight) {
           yield dLeft + dRight;
         }
-        if (left instanceof String sLeft && right instanceof String sRight) {
-          yield sLeft + sRight;
+        if (Rope.isString(left) && Rope.isString(right)) {
+          yield Rope.concat((CharSequence) left, (CharSequence) right);
         }
-        throw new RuntimeError(
-            binaryExpr.operator().line(), "Operands must be two numbers or two strings.");
+        throw new RuntimeError(line, "Operands must be two numbers or two strings.");
       }
       default -> new IllegalStateException();
     };
   }
 
+  private Object evaluateFlat(FlatCode code, int node) {
+    return switch (code.kind(node)) {
+      case FlatCode.CONSTANT -> code.constant(code.a(node));
+      case FlatCode.LOCAL -> getEnvironment().getAt(code.a(node), code.b(node));
+      case FlatCode.GLOBAL -> getGlobal((Symbol) code.constant(code.a(node)), code.line(node));
+      case FlatCode.UNARY -> unary(
+          code.operator(node), code.line(node), evaluateFlat(code, code.a(node)));
+      case FlatCode.BINARY -> {
+        Object left = evaluateFlat(code, code.a(node));
+        Object right = evaluateFlat(code, code.b(node));
+        yield binary(code.operator(node), code.line(node), left, right);
+      }
+      case FlatCode.LOGICAL -> {
+        Object left = evaluateFlat(code, code.a(node));
+        if (code.operator(node) == TokenType.OR ? isTruthy(left) : !isTruthy(left)) yield left;
+        yield evaluateFlat(code, code.b(node));
+      }
+      case FlatCode.TERNARY -> isTruthy(evaluateFlat(code, code.a(node)))
+          ? evaluateFlat(code, code.b(node))
+          : evaluateFlat(code, code.c(node));
+      case FlatCode.TREE -> evaluate((Expr) code.constant(code.a(node)));
+      default -> throw new IllegalStateException();
+    };
+  }
+
   private Object evaluateTernaryExpr(Expr.Ternary ternaryExpr) {
     Object condition = evaluate(ternaryExpr.condition());
 
@@ -353,16 +595,39 @@ public final class Interpreter {
     }
   }
 
+  // Every value is evaluated and formatted first, so the result is built in one exactly sized copy
+  private Object evaluateInterpolationExpr(Expr.Interpolation interpolationExpr) {
+    List<String> segments = interpolationExpr.segments();
+    List<Expr> values = interpolationExpr.values();
+    String[] texts = new String[values.size()];
+    int length = segments.get(0).length();
+    for (int i = 0; i < texts.length; i++) {
+      texts[i] = PrintFunction.stringify(evaluate(values.get(i)));
+      length += texts[i].length() + segments.get(i + 1).length();
+    }
+    StringBuilder builder = new StringBuilder(length).append(segments.get(0));
+    for (int i = 0; i < texts.length; i++) {
+      builder.append(texts[i]).append(segments.get(i + 1));
+    }
+    return builder.toString();
+  }
+
   private Object evaluateGroupingExpr(Expr.Grouping groupExpr) {
     return evaluate(groupExpr.expr());
   }
 
   private Object evaluateCallExpr(Expr.Call callExpr) {
-    Object callee = evaluate(callExpr.callee());
-    List<Object> arguments = new ArrayList<>();
-    for (Expr argument : callExpr.arguments()) {
-      arguments.add(evaluate(argument));
+    Object callee;
+    if (callExpr.callee() instanceof Expr.Get getExpr) {
+      Object object = evaluate(getExpr.object());
+      if (object instanceof NativeInstance instance) {
+        return instance.invoke(this, getExpr.name(), callExpr.paren(), evaluateArguments(callExpr));
+      }
+      callee = getProperty(object, getExpr.name());
+    } else {
+      callee = evaluate(callExpr.callee());
     }
+    List<Object> arguments = evaluateArguments(callExpr);
 
     if (!(callee instanceof LoxCallable function)) {
       throw new RuntimeError(callExpr.paren().line(), "Can only call functions and classes.");
@@ -377,21 +642,37 @@ public final class Interpreter {
     return function.call(this, callExpr.paren(), arguments);
   }
 
+  private List<Object> evaluateArguments(Expr.Call callExpr) {
+    List<Object> arguments = new ArrayList<>();
+    for (Expr argument : callExpr.arguments()) {
+      arguments.add(evaluate(argument));
+    }
+    return arguments;
+  }
+
   private Object evaluateGetExpr(Expr.Get getExpr) {
-    Object object = evaluate(getExpr.object());
+    return getProperty(evaluate(getExpr.object()), getExpr.name());
+  }
+
+  private Object getProperty(Object object, Token name) {
     if (object instanceof LoxInstance loxInstance) {
-      return loxInstance.get(getExpr.name());
+      return loxInstance.get(name);
+    }
+    if (object instanceof NativeInstance nativeInstance) {
+      return nativeInstance.get(name);
     }
     if (object instanceof LoxModule loxModule) {
       String previousNamespace = currentNamespace;
       currentNamespace = loxModule.getFullyQualifiedName();
-      // XXX: This might work for globals (as there is a fallback there when the key is not in the
-      // locals)
-      Object value = evaluateVariableExpr(new Expr.Variable(getExpr.name()));
-      currentNamespace = previousNamespace;
-      return value;
+      try {
+        // XXX: This might work for globals (as there is a fallback there when the key is not in the
+        // locals)
+        return evaluateVariableExpr(new Expr.Variable(name));
+      } finally {
+        currentNamespace = previousNamespace;
+      }
     }
-    throw new RuntimeError(getExpr.name().line(), "Only instances or modules have properties.");
+    throw new RuntimeError(name.line(), "Only instances or modules have properties.");
   }
 
   private Object evaluateThisExpr(Expr.This thisExpr) {
@@ -406,7 +687,7 @@ public final class Interpreter {
     // XXX: Hacky. We know from the resolver that "this" is defined
     // one scope closer and on the first slot.
     LoxInstance object = (LoxInstance) getAt(new VariableLocation(varLocation.depth() - 1, 0));
-    LoxFunction method = superClass.findMethod(superExpr.method().lexeme());
+    LoxFunction method = superClass.findMethod(superExpr.method().symbol());
 
     if (method == null) {
       throw new RuntimeError(
@@ -420,6 +701,10 @@ public final class Interpreter {
     Object size = evaluate(arrayCExpr.size());
 
     if (size instanceof Double doubleSize) {
+      if (doubleSize < 0 || doubleSize % 1 != 0) {
+        throw new RuntimeError(
+            arrayCExpr.rightBracket().line(), "Array size must be a non negative integer.");
+      }
       return new LoxArray(doubleSize.intValue());
     }
 
@@ -429,12 +714,9 @@ public final class Interpreter {
   private Object evaluateArrayIndexExpr(Expr.ArrayIndex arrayIndexExpr) {
     Object object = evaluate(arrayIndexExpr.array());
 
-    if (object instanceof LoxArray loxArray) {
-      Object index = evaluate(arrayIndexExpr.idx());
-      if (index instanceof Double doubleIndex) {
-        return loxArray.get(doubleIndex.intValue());
-      }
-      throw new RuntimeError(arrayIndexExpr.rightParen().line(), "Cannot index non array object.");
+    if (object instanceof Indexable array) {
+      int line = arrayIndexExpr.rightParen().line();
+      return array.get(Indexable.checkIndex(array, evaluate(arrayIndexExpr.idx()), line));
     }
 
     throw new RuntimeError(arrayIndexExpr.rightParen().line(), "Cannot index non array object.");
@@ -446,6 +728,19 @@ public final class Interpreter {
         currentNamespace, UUID.randomUUID().toString(), functionExpr, getEnvironment(), false);
   }
 
+  public Scheduler getScheduler() {
+    return scheduler;
+  }
+
+  public OutputSink getOut() {
+    return out;
+  }
+
+  // Predefines a global of the main module, e.g. the input of a batch run
+  public void defineMainGlobal(String name, Object value) {
+    modules.get("__main__").getGlobals().put(Symbol.of(name), value);
+  }
+
   private LoxModule getCurrentModule() {
     return modules.get(currentNamespace);
   }
@@ -470,7 +765,7 @@ public final class Interpreter {
     this.currentNamespace = namespace;
   }
 
-  private void define(String name, Object value) {
+  private void define(Symbol name, Object value) {
     if (getEnvironment() == null) {
       defineGlobal(name, value);
     } else {
@@ -486,11 +781,11 @@ public final class Interpreter {
     return getEnvironment().getAt(variableLocation);
   }
 
-  private void defineGlobal(String name, Object value) {
+  private void defineGlobal(Symbol name, Object value) {
     getCurrentModule().getGlobals().put(name, value);
   }
 
-  private void assignGlobal(String name, Object value, int line) {
+  private void assignGlobal(Symbol name, Object value, int line) {
     if (getCurrentModule().getGlobals().containsKey(name)) {
       getCurrentModule().getGlobals().put(name, value);
     } else {
@@ -498,32 +793,33 @@ public final class Interpreter {
     }
   }
 
-  private Object getGlobal(String name, int line) {
+  private Object getGlobal(Symbol name, int line) {
     if (getCurrentModule().getGlobals().containsKey(name)) {
       return getCurrentModule().getGlobals().get(name);
     }
     throw new RuntimeError(line, "Undefined variable '" + name + "'.");
   }
 
-  private static boolean isEqual(Object a, Object b) {
+  public static boolean isEqual(Object a, Object b) {
     if (a == null && b == null) return true;
     if (a == null) return false;
+    if (a instanceof Rope || b instanceof Rope) return Rope.normalize(a).equals(Rope.normalize(b));
     return a.equals(b);
   }
 
-  private static boolean isTruthy(Object object) {
+  public static boolean isTruthy(Object object) {
     if (object == null) return false;
     if (object instanceof Boolean) return (boolean) object;
     return true;
   }
 
-  private static void checkNumberOperand(Token operator, Object operand) {
+  private static void checkNumberOperand(int line, Object operand) {
     if (operand instanceof Double) return;
-    throw new RuntimeError(operator.line(), "Operand must be a number.");
+    throw new RuntimeError(line, "Operand must be a number.");
   }
 
-  private static void checkNumberOperands(Token operator, Object left, Object right) {
+  private static void checkNumberOperands(int line, Object left, Object right) {
     if (left instanceof Double && right instanceof Double) return;
-    throw new RuntimeError(operator.line(), "Operands must be numbers.");
+    throw new RuntimeError(line, "Operands must be numbers.");
   }
 }
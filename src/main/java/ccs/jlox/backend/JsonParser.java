@@ -0,0 +1,367 @@
+package ccs.jlox.backend;
+
+import ccs.jlox.error.RuntimeError;
+import java.io.IOException;
+import java.io.Reader;
+
+// Recursive descent JSON parser behind std.json. Objects become maps, arrays become lists and
+// numbers, strings, booleans and null the matching Lox values. Input is read through a char buffer,
+// either the whole text or a window refilled from a Reader, so a stream is never held in memory
+// at once. The parser avoids garbage where it can:
+//  - numbers are accumulated digit by digit and only fall back to Double.parseDouble when the
+//    fast path can't round them exactly, so no string is built for them
+//  - strings without escapes are copied out of the buffer in one go
+//  - object keys are looked up in a small cache, so records sharing keys share the key strings
+public final class JsonParser {
+  private static final int MAX_DEPTH = 512;
+  private static final int KEY_CACHE_SIZE = 256;
+  // Powers of ten that are exact doubles
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+    1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private final Reader reader;
+  private final int line;
+  private final char[] buffer;
+  private int position;
+  private int limit;
+  // Characters dropped from the buffer by refills, for error offsets
+  private long discarded;
+  private final StringBuilder scratch = new StringBuilder();
+  private final String[] keys = new String[KEY_CACHE_SIZE];
+  private State state = State.START;
+
+  // Where next() is in a stream of values
+  private enum State {
+    START,
+    // Inside a top level array, before the first element or after a comma
+    ELEMENT,
+    // Inside a top level array, after an element
+    SEPARATOR,
+    // Top level values one after the other, like JSON lines
+    SEQUENCE,
+    END
+  }
+
+  public JsonParser(String text, int line) {
+    this.reader = null;
+    this.line = line;
+    this.buffer = text.toCharArray();
+    this.limit = buffer.length;
+  }
+
+  public JsonParser(Reader reader, int line) {
+    this.reader = reader;
+    this.line = line;
+    this.buffer = new char[8192];
+  }
+
+  // The single value making up the whole input
+  public Object parse() {
+    skipWhitespace();
+    Object value = value(0);
+    skipWhitespace();
+    if (peek() >= 0) throw error("unexpected data after the value");
+    return value;
+  }
+
+  // Whether next() has another value: an element of the top level array or, when the input is not
+  // an array, another top level value
+  public boolean hasNext() {
+    if (state == State.START) {
+      skipWhitespace();
+      if (peek() == '[') {
+        position++;
+        skipWhitespace();
+        if (peek() == ']') {
+          position++;
+          finish();
+        } else {
+          state = State.ELEMENT;
+        }
+      } else {
+        state = State.SEQUENCE;
+      }
+    }
+    if (state == State.SEPARATOR) {
+      skipWhitespace();
+      int c = read();
+      if (c == ',') {
+        skipWhitespace();
+        state = State.ELEMENT;
+      } else if (c == ']') {
+        finish();
+      } else {
+        throw error("expected ',' or ']'");
+      }
+    }
+    if (state == State.SEQUENCE) {
+      skipWhitespace();
+      if (peek() < 0) state = State.END;
+    }
+    return state != State.END;
+  }
+
+  public Object next() {
+    if (!hasNext()) throw new RuntimeError(line, "No more JSON values.");
+    Object value = value(0);
+    if (state == State.ELEMENT) state = State.SEPARATOR;
+    return value;
+  }
+
+  private void finish() {
+    skipWhitespace();
+    if (peek() >= 0) throw error("unexpected data after the array");
+    state = State.END;
+  }
+
+  private Object value(int depth) {
+    if (depth > MAX_DEPTH) throw error("nested too deeply");
+    return switch (peek()) {
+      case '{' -> object(depth);
+      case '[' -> array(depth);
+      case '"' -> {
+        position++;
+        yield string(false);
+      }
+      case 't' -> literal("true", true);
+      case 'f' -> literal("false", false);
+      case 'n' -> literal("null", null);
+      case -1 -> throw error("unexpected end of input");
+      default -> {
+        int c = peek();
+        if (c == '-' || (c >= '0' && c <= '9')) yield number();
+        throw error("unexpected character '" + (char) c + "'");
+      }
+    };
+  }
+
+  private LoxMap object(int depth) {
+    position++;
+    LoxMap map = new LoxMap();
+    skipWhitespace();
+    if (peek() == '}') {
+      position++;
+      return map;
+    }
+    while (true) {
+      if (read() != '"') throw error("expected a string key");
+      String key = string(true);
+      skipWhitespace();
+      if (read() != ':') throw error("expected ':'");
+      skipWhitespace();
+      map.put(key, value(depth + 1));
+      skipWhitespace();
+      int c = read();
+      if (c == '}') return map;
+      if (c != ',') throw error("expected ',' or '}'");
+      skipWhitespace();
+    }
+  }
+
+  private LoxList array(int depth) {
+    position++;
+    LoxList list = new LoxList();
+    skipWhitespace();
+    if (peek() == ']') {
+      position++;
+      return list;
+    }
+    while (true) {
+      list.add(value(depth + 1));
+      skipWhitespace();
+      int c = read();
+      if (c == ']') return list;
+      if (c != ',') throw error("expected ',' or ']'");
+      skipWhitespace();
+    }
+  }
+
+  private Object literal(String text, Object value) {
+    for (int i = 0; i < text.length(); i++) {
+      if (read() != text.charAt(i)) throw error("expected '" + text + "'");
+    }
+    return value;
+  }
+
+  // Called after the opening quote
+  private String string(boolean isKey) {
+    // Fast path: the whole string is in the buffer and has no escapes
+    for (int i = position; i < limit; i++) {
+      char c = buffer[i];
+      if (c == '"') {
+        int start = position;
+        position = i + 1;
+        return isKey ? key(start, i) : new String(buffer, start, i - start);
+      }
+      if (c == '\\' || c < 0x20) break;
+    }
+    scratch.setLength(0);
+    while (true) {
+      int c = read();
+      if (c == '"') break;
+      if (c < 0) throw error("unterminated string");
+      if (c < 0x20) throw error("control character in string");
+      if (c != '\\') {
+        scratch.append((char) c);
+        continue;
+      }
+      c = read();
+      switch (c) {
+        case '"', '\\', '/' -> scratch.append((char) c);
+        case 'b' -> scratch.append('\b');
+        case 'f' -> scratch.append('\f');
+        case 'n' -> scratch.append('\n');
+        case 'r' -> scratch.append('\r');
+        case 't' -> scratch.append('\t');
+        case 'u' -> {
+          int code = 0;
+          for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(read(), 16);
+            if (digit < 0) throw error("invalid unicode escape");
+            code = code * 16 + digit;
+          }
+          scratch.append((char) code);
+        }
+        default -> throw error("invalid escape");
+      }
+    }
+    return scratch.toString();
+  }
+
+  private String key(int from, int to) {
+    int hash = 0;
+    for (int i = from; i < to; i++) hash = 31 * hash + buffer[i];
+    int slot = (hash ^ (hash >>> 16)) & (KEY_CACHE_SIZE - 1);
+    String cached = keys[slot];
+    if (cached != null && cached.length() == to - from) {
+      int i = 0;
+      while (i < cached.length() && cached.charAt(i) == buffer[from + i]) i++;
+      if (i == cached.length()) return cached;
+    }
+    String key = new String(buffer, from, to - from);
+    keys[slot] = key;
+    return key;
+  }
+
+  // The digits are kept in a long while they fit in 19 significant digits; if the result is then
+  // below 2^53 and scaled by at most 10^22, one multiplication or division by an exact power of
+  // ten rounds correctly. Anything else goes through Double.parseDouble.
+  private double number() {
+    scratch.setLength(0);
+    boolean negative = false;
+    if (peek() == '-') {
+      negative = true;
+      scratch.append((char) read());
+    }
+    long mantissa = 0;
+    int significant = 0;
+    int exponent = 0;
+    boolean truncated = false;
+
+    int c = peek();
+    if (c == '0') {
+      scratch.append((char) read());
+    } else if (c >= '1' && c <= '9') {
+      while ((c = peek()) >= '0' && c <= '9') {
+        scratch.append((char) read());
+        if (significant < 19) {
+          mantissa = mantissa * 10 + (c - '0');
+          significant++;
+        } else {
+          exponent++;
+          truncated = true;
+        }
+      }
+    } else {
+      throw error("expected a digit");
+    }
+
+    if (peek() == '.') {
+      scratch.append((char) read());
+      if (!isDigit(peek())) throw error("expected a digit after '.'");
+      while (isDigit(c = peek())) {
+        scratch.append((char) read());
+        if (mantissa == 0 && c == '0') {
+          exponent--;
+        } else if (significant < 19) {
+          mantissa = mantissa * 10 + (c - '0');
+          significant++;
+          exponent--;
+        } else {
+          truncated = true;
+        }
+      }
+    }
+
+    if (peek() == 'e' || peek() == 'E') {
+      scratch.append((char) read());
+      boolean negativeExponent = false;
+      if (peek() == '+' || peek() == '-') {
+        negativeExponent = peek() == '-';
+        scratch.append((char) read());
+      }
+      if (!isDigit(peek())) throw error("expected a digit in the exponent");
+      int written = 0;
+      while (isDigit(c = peek())) {
+        scratch.append((char) read());
+        // Far beyond the range of doubles; only the fallback sees the rest
+        if (written < 100_000) written = written * 10 + (c - '0');
+        else truncated = true;
+      }
+      exponent += negativeExponent ? -written : written;
+    }
+
+    if (!truncated && mantissa < (1L << 53) && Math.abs(exponent) < POWERS_OF_TEN.length) {
+      double value =
+          exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+      return negative ? -value : value;
+    }
+    return Double.parseDouble(scratch.toString());
+  }
+
+  private static boolean isDigit(int c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private void skipWhitespace() {
+    while (true) {
+      int c = peek();
+      if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return;
+      position++;
+    }
+  }
+
+  // The next character, or -1 at the end of the input
+  private int peek() {
+    if (position == limit && !refill()) return -1;
+    return buffer[position];
+  }
+
+  private int read() {
+    int c = peek();
+    if (c >= 0) position++;
+    return c;
+  }
+
+  private boolean refill() {
+    if (reader == null) return false;
+    try {
+      discarded += limit;
+      position = 0;
+      limit = 0;
+      int read = reader.read(buffer);
+      if (read <= 0) return false;
+      limit = read;
+      return true;
+    } catch (IOException e) {
+      throw new RuntimeError(line, "Could not read JSON: " + e.getMessage() + ".");
+    }
+  }
+
+  private RuntimeError error(String message) {
+    return new RuntimeError(
+        line, String.format("Invalid JSON at offset %d: %s.", discarded + position, message));
+  }
+}
@@ -0,0 +1,78 @@
+package ccs.jlox.backend;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.error.RuntimeError;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+// A JSON file from std.json read one value at a time: the elements of a top level array, or the
+// values of a file holding several (JSON lines). Only the value being parsed is in memory, so
+// files much larger than the heap can be processed record by record.
+public final class JsonReader implements NativeInstance {
+  private final String path;
+  private final Reader reader;
+  private final JsonParser parser;
+  private boolean closed;
+
+  private JsonReader(String path, Reader reader, int line) {
+    this.path = path;
+    this.reader = reader;
+    this.parser = new JsonParser(reader, line);
+  }
+
+  public static JsonReader open(String path, int line) {
+    try {
+      Reader reader =
+          new InputStreamReader(
+              Files.newInputStream(LoxFile.path(path, "open", line)), StandardCharsets.UTF_8);
+      return new JsonReader(path, reader, line);
+    } catch (IOException e) {
+      throw LoxFile.failure(line, "open", path, e);
+    }
+  }
+
+  @Override
+  public Object get(Token name) {
+    return bind(name, arity(name));
+  }
+
+  @Override
+  public synchronized Object invoke(
+      Interpreter interpreter, Token name, Token callSite, List<Object> arguments) {
+    NativeInstance.checkArity(arity(name), arguments, callSite);
+    int line = callSite.line();
+    if (closed && !name.lexeme().equals("close")) throw new RuntimeError(line, "File is closed.");
+    return switch (name.lexeme()) {
+      case "hasNext" -> parser.hasNext();
+      case "next" -> parser.next();
+      case "close" -> {
+        if (!closed) {
+          closed = true;
+          try {
+            reader.close();
+          } catch (IOException e) {
+            throw LoxFile.failure(line, "close", path, e);
+          }
+        }
+        yield null;
+      }
+      default -> throw new IllegalStateException("Unexpected reader method: " + name.lexeme());
+    };
+  }
+
+  private static int arity(Token name) {
+    return switch (name.lexeme()) {
+      case "hasNext", "next", "close" -> 0;
+      default -> throw new RuntimeError(name.line(), "Undefined property '" + name.lexeme() + "'.");
+    };
+  }
+
+  @Override
+  public String toString() {
+    return "JsonReader instance";
+  }
+}
@@ -1,19 +1,52 @@
 package ccs.jlox.backend;
 
-final class LoxArray {
-  private final int size;
+import java.util.Arrays;
+
+public final class LoxArray implements Indexable {
   private final Object[] array;
 
-  LoxArray(int size) {
-    this.size = size;
-    this.array = new Object[size];
+  public LoxArray(int size) {
+    this(new Object[size]);
+  }
+
+  private LoxArray(Object[] array) {
+    this.array = array;
   }
 
-  Object get(int index) {
+  public Object get(int index) {
     return array[index];
   }
 
-  void set(int index, Object value) {
+  public void set(int index, Object value) {
+    array[index] = value;
+  }
+
+  @Override
+  public void set(int index, Object value, int line) {
     array[index] = value;
   }
+
+  @Override
+  public void fill(int from, int to, Object value, int line) {
+    Arrays.fill(array, from, to, value);
+  }
+
+  @Override
+  public LoxArray resized(int size) {
+    return new LoxArray(Arrays.copyOf(array, size));
+  }
+
+  @Override
+  public LoxArray slice(int from, int to) {
+    return new LoxArray(Arrays.copyOfRange(array, from, to));
+  }
+
+  @Override
+  public Object storage() {
+    return array;
+  }
+
+  public int size() {
+    return array.length;
+  }
 }
@@ -0,0 +1,375 @@
+package ccs.jlox.backend;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.error.RuntimeError;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Bounded cache behind std.cache. Entries are found through a HashMap (whose key equality matches
+// Interpreter.isEqual) and kept in the order the eviction policy needs, so every operation is O(1):
+//  - LRU keeps a list in access order and evicts its head
+//  - LFU keeps one list per use count and evicts the oldest entry with the lowest count
+//  - TTL keeps a list in write order; entries expire a fixed time after they are written, measured
+//    with System.nanoTime, and expired entries always form a prefix of the list
+// The limit bounds either the number of entries or, with a weigher, their total weight.
+// All methods lock the cache, except that getOrCompute runs the loader without holding it.
+public final class LoxCache implements NativeInstance {
+  private final Policy policy;
+  private final double limit;
+  private final LoxCallable weigher;
+  private final long timeToLive;
+  private final Map<Object, Entry> entries = new HashMap<>();
+  private double weight;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  public enum Kind {
+    LRU,
+    LFU,
+    TTL
+  }
+
+  // timeToLive is in nanoseconds and only used by TTL caches; a null weigher counts entries
+  public LoxCache(Kind kind, double limit, LoxCallable weigher, long timeToLive) {
+    this.policy =
+        switch (kind) {
+          case LRU -> new RecencyPolicy(true);
+          case TTL -> new RecencyPolicy(false);
+          case LFU -> new FrequencyPolicy();
+        };
+    this.limit = limit;
+    this.weigher = weigher;
+    this.timeToLive = timeToLive;
+  }
+
+  private static final class Entry {
+    private final Object key;
+    private Object value;
+    private double weight;
+    private long expiresAt;
+    private int frequency;
+    private Entry previous;
+    private Entry next;
+
+    private Entry(Object key) {
+      this.key = key;
+    }
+  }
+
+  // Circular doubly linked list with a sentinel node
+  private static final class EntryList {
+    private final Entry sentinel = new Entry(null);
+
+    private EntryList() {
+      sentinel.previous = sentinel;
+      sentinel.next = sentinel;
+    }
+
+    private void addLast(Entry entry) {
+      entry.previous = sentinel.previous;
+      entry.next = sentinel;
+      sentinel.previous.next = entry;
+      sentinel.previous = entry;
+    }
+
+    private void remove(Entry entry) {
+      entry.previous.next = entry.next;
+      entry.next.previous = entry.previous;
+      entry.previous = null;
+      entry.next = null;
+    }
+
+    private Entry first() {
+      return sentinel.next == sentinel ? null : sentinel.next;
+    }
+
+    private boolean isEmpty() {
+      return sentinel.next == sentinel;
+    }
+  }
+
+  private interface Policy {
+    void added(Entry entry);
+
+    void used(Entry entry);
+
+    void removed(Entry entry);
+
+    Entry victim();
+
+    // Oldest entry by write time, for TTL expiry
+    Entry oldest();
+
+    void clear();
+  }
+
+  private static final class RecencyPolicy implements Policy {
+    private final boolean reorderOnUse;
+    private EntryList order = new EntryList();
+
+    private RecencyPolicy(boolean reorderOnUse) {
+      this.reorderOnUse = reorderOnUse;
+    }
+
+    @Override
+    public void added(Entry entry) {
+      order.addLast(entry);
+    }
+
+    @Override
+    public void used(Entry entry) {
+      if (!reorderOnUse) return;
+      order.remove(entry);
+      order.addLast(entry);
+    }
+
+    @Override
+    public void removed(Entry entry) {
+      order.remove(entry);
+    }
+
+    @Override
+    public Entry victim() {
+      return order.first();
+    }
+
+    @Override
+    public Entry oldest() {
+      return order.first();
+    }
+
+    @Override
+    public void clear() {
+      order = new EntryList();
+    }
+  }
+
+  private static final class FrequencyPolicy implements Policy {
+    private final Map<Integer, EntryList> buckets = new HashMap<>();
+    private int minFrequency;
+
+    @Override
+    public void added(Entry entry) {
+      if (entry.frequency == 0) entry.frequency = 1;
+      if (buckets.isEmpty() || entry.frequency < minFrequency) minFrequency = entry.frequency;
+      buckets.computeIfAbsent(entry.frequency, ignored -> new EntryList()).addLast(entry);
+    }
+
+    @Override
+    public void used(Entry entry) {
+      int frequency = entry.frequency;
+      unlink(entry);
+      if (frequency == minFrequency && !buckets.containsKey(frequency)) minFrequency++;
+      entry.frequency = frequency + 1;
+      buckets.computeIfAbsent(entry.frequency, ignored -> new EntryList()).addLast(entry);
+    }
+
+    @Override
+    public void removed(Entry entry) {
+      unlink(entry);
+    }
+
+    @Override
+    public Entry victim() {
+      // Explicit removals can empty the lowest bucket, leaving minFrequency stale
+      if (!buckets.containsKey(minFrequency)) {
+        minFrequency = buckets.keySet().stream().min(Integer::compare).orElse(0);
+      }
+      EntryList bucket = buckets.get(minFrequency);
+      return bucket == null ? null : bucket.first();
+    }
+
+    @Override
+    public Entry oldest() {
+      return null;
+    }
+
+    @Override
+    public void clear() {
+      buckets.clear();
+      minFrequency = 0;
+    }
+
+    private void unlink(Entry entry) {
+      EntryList bucket = buckets.get(entry.frequency);
+      bucket.remove(entry);
+      if (bucket.isEmpty()) buckets.remove(entry.frequency);
+    }
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  @Override
+  public Object get(Token name) {
+    return switch (name.lexeme()) {
+      case "size" -> (double) size();
+      case "weight" -> weight();
+      case "hits" -> (double) counters()[0];
+      case "misses" -> (double) counters()[1];
+      case "evictions" -> (double) counters()[2];
+      default -> bind(name, arity(name));
+    };
+  }
+
+  @Override
+  public Object invoke(
+      Interpreter interpreter, Token name, Token callSite, List<Object> arguments) {
+    NativeInstance.checkArity(arity(name), arguments, callSite);
+    int line = callSite.line();
+    return switch (name.lexeme()) {
+      case "get" -> lookup(key(arguments.get(0), line));
+      case "contains" -> contains(key(arguments.get(0), line));
+      case "put" -> {
+        Object key = key(arguments.get(0), line);
+        put(key, arguments.get(1), weigh(interpreter, callSite, key, arguments.get(1)));
+        yield null;
+      }
+      case "getOrCompute" -> getOrCompute(interpreter, callSite, arguments);
+      case "remove" -> remove(key(arguments.get(0), line));
+      case "clear" -> {
+        clear();
+        yield null;
+      }
+      default -> throw new IllegalStateException("Unexpected cache method: " + name.lexeme());
+    };
+  }
+
+  private static int arity(Token name) {
+    return switch (name.lexeme()) {
+      case "clear" -> 0;
+      case "get", "contains", "remove" -> 1;
+      case "put", "getOrCompute" -> 2;
+      default -> throw new RuntimeError(name.line(), "Undefined property '" + name.lexeme() + "'.");
+    };
+  }
+
+  // A hit returns the cached value; a miss calls loader(key) and caches what it returns. Two
+  // threads missing the same key at once may both run the loader.
+  private Object getOrCompute(Interpreter interpreter, Token callSite, List<Object> arguments) {
+    Object key = key(arguments.get(0), callSite.line());
+    if (!(arguments.get(1) instanceof LoxCallable loader) || loader.arity() != 1) {
+      throw new RuntimeError(callSite.line(), "Expected a function taking 1 argument.");
+    }
+    synchronized (this) {
+      Entry entry = live(key);
+      if (entry != null) {
+        hits++;
+        policy.used(entry);
+        return entry.value;
+      }
+      misses++;
+    }
+    Object value = loader.call(interpreter, callSite, Arrays.asList(key));
+    put(key, value, weigh(interpreter, callSite, key, value));
+    return value;
+  }
+
+  // Does not count as a use, nor as a hit or a miss
+  private synchronized boolean contains(Object key) {
+    return live(key) != null;
+  }
+
+  private synchronized Object lookup(Object key) {
+    Entry entry = live(key);
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    policy.used(entry);
+    return entry.value;
+  }
+
+  // Makes room before adding, so the new entry is never the one evicted. An entry heavier than
+  // the whole limit is not kept.
+  private synchronized void put(Object key, Object value, double entryWeight) {
+    expire();
+    Entry entry = entries.get(key);
+    if (entry != null) {
+      // Re-added below as the most recently written entry; for LFU the write counts as a use
+      unlink(entry);
+      entry.frequency++;
+    } else {
+      entry = new Entry(key);
+    }
+    if (entryWeight > limit) return;
+    while (weight + entryWeight > limit && !entries.isEmpty()) {
+      unlink(policy.victim());
+      evictions++;
+    }
+    entry.value = value;
+    entry.weight = entryWeight;
+    entry.expiresAt = System.nanoTime() + timeToLive;
+    entries.put(key, entry);
+    policy.added(entry);
+    weight += entryWeight;
+  }
+
+  private synchronized Object remove(Object key) {
+    Entry entry = live(key);
+    if (entry == null) return null;
+    unlink(entry);
+    return entry.value;
+  }
+
+  private synchronized void clear() {
+    entries.clear();
+    policy.clear();
+    weight = 0;
+  }
+
+  private synchronized double weight() {
+    return weight;
+  }
+
+  private synchronized long[] counters() {
+    return new long[] {hits, misses, evictions};
+  }
+
+  // The entry for the key, unless it has expired
+  private Entry live(Object key) {
+    expire();
+    return entries.get(key);
+  }
+
+  private void expire() {
+    if (timeToLive <= 0) return;
+    long now = System.nanoTime();
+    for (Entry oldest = policy.oldest();
+        oldest != null && now - oldest.expiresAt >= 0;
+        oldest = policy.oldest()) {
+      unlink(oldest);
+      evictions++;
+    }
+  }
+
+  private void unlink(Entry entry) {
+    entries.remove(entry.key);
+    policy.removed(entry);
+    weight -= entry.weight;
+  }
+
+  private double weigh(Interpreter interpreter, Token callSite, Object key, Object value) {
+    if (weigher == null) return 1;
+    if (weigher.call(interpreter, callSite, Arrays.asList(key, value)) instanceof Double weight
+        && weight >= 0) {
+      return weight;
+    }
+    throw new RuntimeError(callSite.line(), "Weigher must return a non negative number.");
+  }
+
+  private static Object key(Object key, int line) {
+    if (key == null) throw new RuntimeError(line, "Cache keys can't be nil.");
+    return Rope.normalize(key);
+  }
+
+  @Override
+  public String toString() {
+    return "Cache instance";
+  }
+}
@@ -0,0 +1,78 @@
+package ccs.jlox.backend;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+
+// Bounded FIFO queue between isolates. It is the only value isolates share; everything sent
+// through it is copied first (see Transfer).
+public final class LoxChannel {
+  // Returned by poll when nothing is buffered, since nil is a valid message
+  public static final Object EMPTY = new Object();
+
+  private final Object[] buffer;
+  private final List<Semaphore> selectors = new CopyOnWriteArrayList<>();
+  private int head = 0;
+  private int count = 0;
+  private boolean closed = false;
+
+  public LoxChannel(int capacity) {
+    this.buffer = new Object[capacity];
+  }
+
+  // Returns false if the channel was closed
+  public synchronized boolean send(Object value) throws InterruptedException {
+    while (count == buffer.length && !closed) wait();
+    if (closed) return false;
+    buffer[(head + count) % buffer.length] = value;
+    count++;
+    notifyAll();
+    wakeSelectors();
+    return true;
+  }
+
+  // Blocks until a message arrives; nil once the channel is closed and drained
+  public synchronized Object receive() throws InterruptedException {
+    while (count == 0 && !closed) wait();
+    Object value = poll();
+    return value == EMPTY ? null : value;
+  }
+
+  public synchronized Object poll() {
+    if (count == 0) return EMPTY;
+    Object value = buffer[head];
+    buffer[head] = null;
+    head = (head + 1) % buffer.length;
+    count--;
+    notifyAll();
+    return value;
+  }
+
+  public synchronized void close() {
+    closed = true;
+    notifyAll();
+    wakeSelectors();
+  }
+
+  public synchronized boolean isDrained() {
+    return closed && count == 0;
+  }
+
+  // A selector is released whenever this channel gets a message or is closed
+  public void addSelector(Semaphore selector) {
+    selectors.add(selector);
+  }
+
+  public void removeSelector(Semaphore selector) {
+    selectors.remove(selector);
+  }
+
+  private void wakeSelectors() {
+    selectors.forEach(Semaphore::release);
+  }
+
+  @Override
+  public String toString() {
+    return "<channel>";
+  }
+}
@@ -1,15 +1,18 @@
 package ccs.jlox.backend;
 
+import ccs.jlox.ast.Symbol;
+import ccs.jlox.ast.SymbolMap;
 import ccs.jlox.ast.Token;
 import java.util.List;
-import java.util.Map;
 
 final class LoxClass implements LoxCallable {
+  private static final Symbol INIT = Symbol.of("init");
+
   private final String name;
   private final LoxClass superclass;
-  private final Map<String, LoxFunction> methods;
+  private final SymbolMap<LoxFunction> methods;
 
-  LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
+  LoxClass(String name, LoxClass superclass, SymbolMap<LoxFunction> methods) {
     this.name = name;
     this.superclass = superclass;
     this.methods = methods;
@@ -18,14 +21,14 @@ final class LoxClass implements LoxCallable {
   @Override
   public Object call(Interpreter interpreter, Token callSite, List<Object> arguments) {
     LoxInstance instance = new LoxInstance(this);
-    LoxFunction initializer = findMethod("init");
+    LoxFunction initializer = findMethod(INIT);
     if (initializer != null) {
       initializer.bind(instance).call(interpreter, callSite, arguments);
     }
     return instance;
   }
 
-  LoxFunction findMethod(String name) {
+  LoxFunction findMethod(Symbol name) {
     if (methods.containsKey(name)) {
       return methods.get(name);
     }
@@ -43,7 +46,7 @@ final class LoxClass implements LoxCallable {
 
   @Override
   public int arity() {
-    LoxFunction initializer = findMethod("init");
+    LoxFunction initializer = findMethod(INIT);
     if (initializer == null) return 0;
     return initializer.arity();
   }
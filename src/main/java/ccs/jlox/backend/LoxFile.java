@@ -0,0 +1,209 @@
+package ccs.jlox.backend;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.backend.ffi.PrintFunction;
+import ccs.jlox.error.RuntimeError;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+// A UTF-8 text file from std.io, opened either for reading or for writing. Both directions go
+// through a buffer, so reading line by line holds one line at a time whatever the size of the
+// file, and many small writes turn into few system calls. A file opened for writing that the
+// script never closes is closed when the program ends, so the tail of its buffer is not lost.
+public final class LoxFile implements NativeInstance {
+  private final Interpreter interpreter;
+  private final String path;
+  private final BufferedReader reader;
+  private final BufferedWriter writer;
+  // Where the file was opened, for errors when the program closes it
+  private final int line;
+  private boolean closed;
+
+  private LoxFile(
+      Interpreter interpreter,
+      String path,
+      BufferedReader reader,
+      BufferedWriter writer,
+      int line) {
+    this.interpreter = interpreter;
+    this.path = path;
+    this.reader = reader;
+    this.writer = writer;
+    this.line = line;
+  }
+
+  // Mode is "r" to read, "w" to truncate and write or "a" to append
+  public static LoxFile open(Interpreter interpreter, String path, String mode, int line) {
+    Path file = path(path, "open", line);
+    LoxFile loxFile;
+    try {
+      loxFile =
+          switch (mode) {
+            case "r" -> new LoxFile(
+                interpreter,
+                path,
+                Files.newBufferedReader(file, StandardCharsets.UTF_8),
+                null,
+                line);
+            case "w" -> new LoxFile(
+                interpreter,
+                path,
+                null,
+                Files.newBufferedWriter(file, StandardCharsets.UTF_8),
+                line);
+            case "a" -> new LoxFile(
+                interpreter,
+                path,
+                null,
+                Files.newBufferedWriter(
+                    file,
+                    StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND),
+                line);
+            default -> throw new RuntimeError(line, "File mode must be \"r\", \"w\" or \"a\".");
+          };
+    } catch (IOException e) {
+      throw failure(line, "open", path, e);
+    }
+    if (loxFile.writer != null) interpreter.opened(loxFile);
+    return loxFile;
+  }
+
+  @Override
+  public Object get(Token name) {
+    return switch (name.lexeme()) {
+      case "path" -> path;
+      default -> bind(name, arity(name));
+    };
+  }
+
+  @Override
+  public synchronized Object invoke(
+      Interpreter interpreter, Token name, Token callSite, List<Object> arguments) {
+    NativeInstance.checkArity(arity(name), arguments, callSite);
+    int line = callSite.line();
+    try {
+      return switch (name.lexeme()) {
+        case "readLine" -> reader(line).readLine();
+        case "readAll" -> readAll(reader(line));
+        case "write" -> {
+          write(writer(line), arguments.get(0));
+          yield null;
+        }
+        case "flush" -> {
+          writer(line).flush();
+          yield null;
+        }
+        case "close" -> {
+          close(line);
+          yield null;
+        }
+        default -> throw new IllegalStateException("Unexpected file method: " + name.lexeme());
+      };
+    } catch (IOException e) {
+      throw failure(line, name.lexeme(), path, e);
+    }
+  }
+
+  private static int arity(Token name) {
+    return switch (name.lexeme()) {
+      case "readLine", "readAll", "flush", "close" -> 0;
+      case "write" -> 1;
+      default -> throw new RuntimeError(name.line(), "Undefined property '" + name.lexeme() + "'.");
+    };
+  }
+
+  // The rest of the file, from the current position
+  private static String readAll(Reader reader) throws IOException {
+    StringBuilder builder = new StringBuilder();
+    char[] buffer = new char[8192];
+    for (int read = reader.read(buffer); read >= 0; read = reader.read(buffer)) {
+      builder.append(buffer, 0, read);
+    }
+    return builder.toString();
+  }
+
+  // Ropes are written chunk by chunk rather than flattened first
+  private static void write(Writer writer, Object value) throws IOException {
+    if (!(value instanceof Rope rope)) {
+      writer.write(PrintFunction.stringify(value));
+      return;
+    }
+    IOException[] failure = {null};
+    Rope.chunks(
+        rope,
+        0,
+        rope.length(),
+        (chunk, from, to) -> {
+          try {
+            writer.write(chunk, from, to - from);
+            return true;
+          } catch (IOException e) {
+            failure[0] = e;
+            return false;
+          }
+        });
+    if (failure[0] != null) throw failure[0];
+  }
+
+  // Called by the interpreter when the program ends without the script closing the file
+  synchronized void close() {
+    close(line);
+  }
+
+  private void close(int line) {
+    if (closed) return;
+    closed = true;
+    if (writer != null) interpreter.closed(this);
+    Closeable closeable = reader != null ? reader : writer;
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      throw failure(line, "close", path, e);
+    }
+  }
+
+  private BufferedReader reader(int line) {
+    if (reader == null) throw new RuntimeError(line, "File is not open for reading.");
+    if (closed) throw new RuntimeError(line, "File is closed.");
+    return reader;
+  }
+
+  private BufferedWriter writer(int line) {
+    if (writer == null) throw new RuntimeError(line, "File is not open for writing.");
+    if (closed) throw new RuntimeError(line, "File is closed.");
+    return writer;
+  }
+
+  // Paths with characters the file system rejects, such as NUL
+  static Path path(String path, String operation, int line) {
+    try {
+      return Path.of(path);
+    } catch (InvalidPathException e) {
+      throw new RuntimeError(
+          line, String.format("Could not %s '%s': %s.", operation, path, e.getReason()));
+    }
+  }
+
+  static RuntimeError failure(int line, String operation, String path, IOException e) {
+    String reason = e instanceof NoSuchFileException ? "no such file" : e.getMessage();
+    return new RuntimeError(line, String.format("Could not %s '%s': %s.", operation, path, reason));
+  }
+
+  @Override
+  public String toString() {
+    return "File instance";
+  }
+}
@@ -2,8 +2,11 @@ package ccs.jlox.backend;
 
 import ccs.jlox.ast.Expr;
 import ccs.jlox.ast.Token;
+import ccs.jlox.interm.OuterWrites;
 import ccs.jlox.interm.VariableLocation;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 final class LoxFunction implements LoxCallable {
   private final String namespace;
@@ -11,6 +14,7 @@ final class LoxFunction implements LoxCallable {
   private final Expr.Function functionExpr;
   private final Environment closure;
   private final boolean isInitializer;
+  private final MemoCache memo;
 
   LoxFunction(
       String namespace,
@@ -18,15 +22,36 @@ final class LoxFunction implements LoxCallable {
       Expr.Function functionExpr,
       Environment closure,
       boolean isInitializer) {
+    this(namespace, name, functionExpr, closure, isInitializer, null);
+  }
+
+  LoxFunction(
+      String namespace,
+      String name,
+      Expr.Function functionExpr,
+      Environment closure,
+      boolean isInitializer,
+      MemoCache memo) {
     this.name = name;
     this.namespace = namespace;
     this.functionExpr = functionExpr;
     this.closure = closure;
     this.isInitializer = isInitializer;
+    this.memo = memo;
   }
 
   @Override
   public Object call(Interpreter interpreter, Token callSite, List<Object> arguments) {
+    if (functionExpr.async()) {
+      // The body runs as a task of the event loop, with its own call state
+      Interpreter task = interpreter.fork();
+      return interpreter.getScheduler().start(callSite.line(), () -> invoke(task, arguments));
+    }
+    if (memo != null) return memo.call(arguments, () -> invoke(interpreter, arguments));
+    return invoke(interpreter, arguments);
+  }
+
+  private Object invoke(Interpreter interpreter, List<Object> arguments) {
     Environment environment = new Environment(closure);
     for (int i = 0; i < functionExpr.params().size(); i++) {
       environment.define(arguments.get(i));
@@ -57,6 +82,28 @@ final class LoxFunction implements LoxCallable {
     return new LoxFunction(namespace, name, functionExpr, environment, isInitializer);
   }
 
+  MemoCache getMemo() {
+    return memo;
+  }
+
+  String getNamespace() {
+    return namespace;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  // An assignment in the body to a variable declared outside of it, if there is one
+  Optional<Token> findOuterWrite(Map<Integer, VariableLocation> locals) {
+    return OuterWrites.find(functionExpr, locals);
+  }
+
+  // Declared at the top level of its module rather than in a block, function or class
+  boolean isTopLevel() {
+    return closure == null;
+  }
+
   @Override
   public int arity() {
     return functionExpr.params().size();
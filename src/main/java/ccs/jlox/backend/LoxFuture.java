@@ -0,0 +1,47 @@
+package ccs.jlox.backend;
+
+import ccs.jlox.error.RuntimeError;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// Result of an async call or timer. Awaiting a failed future raises its error at the await.
+public final class LoxFuture {
+  private final CompletableFuture<Object> result = new CompletableFuture<>();
+  // Failures nobody awaited are reported when the event loop drains
+  private volatile boolean observed = false;
+
+  void complete(Object value) {
+    result.complete(value);
+  }
+
+  void fail(RuntimeError error) {
+    result.completeExceptionally(error);
+  }
+
+  public boolean isDone() {
+    return result.isDone();
+  }
+
+  boolean isObserved() {
+    return observed;
+  }
+
+  // Blocks until the future completes
+  Object get() {
+    observed = true;
+    try {
+      return result.join();
+    } catch (CompletionException e) {
+      throw (RuntimeError) e.getCause();
+    }
+  }
+
+  CompletableFuture<Object> toCompletableFuture() {
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "<future>";
+  }
+}
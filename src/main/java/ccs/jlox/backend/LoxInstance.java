@@ -1,12 +1,11 @@
 package ccs.jlox.backend;
 
+import ccs.jlox.ast.SymbolMap;
 import ccs.jlox.ast.Token;
 import ccs.jlox.error.RuntimeError;
-import java.util.HashMap;
-import java.util.Map;
 
 final class LoxInstance {
-  private final Map<String, Object> fields = new HashMap<>();
+  private final SymbolMap<Object> fields = new SymbolMap<>();
   private final LoxClass klass;
 
   LoxInstance(LoxClass klass) {
@@ -14,18 +13,18 @@ final class LoxInstance {
   }
 
   public Object get(Token name) {
-    if (fields.containsKey(name.lexeme())) {
-      return fields.get(name.lexeme());
+    if (fields.containsKey(name.symbol())) {
+      return fields.get(name.symbol());
     }
 
-    LoxFunction method = klass.findMethod(name.lexeme());
+    LoxFunction method = klass.findMethod(name.symbol());
     if (method != null) return method.bind(this);
 
     throw new RuntimeError(name.line(), "Undefined property '" + name.lexeme() + "'.");
   }
 
   public void set(Token name, Object value) {
-    fields.put(name.lexeme(), value);
+    fields.put(name.symbol(), value);
   }
 
   @Override
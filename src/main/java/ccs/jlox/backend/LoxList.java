@@ -0,0 +1,207 @@
+package ccs.jlox.backend;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.error.RuntimeError;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Growable array behind std.list. Elements live in an Object[] that doubles when full, so adding is
+// amortized O(1) and removing from the end is O(1). The list can also be indexed with l[i] and
+// used with the std.array functions, over its first `size` elements. Every method locks the list,
+// so threads sharing one can interleave their updates but never corrupt it; forEach only holds the
+// lock while reading each element, not while running the callback.
+public final class LoxList implements Indexable, NativeInstance {
+  private Object[] elements;
+  private int size;
+
+  public LoxList() {
+    this(new Object[8], 0);
+  }
+
+  private LoxList(Object[] elements, int size) {
+    this.elements = elements;
+    this.size = size;
+  }
+
+  @Override
+  public synchronized int size() {
+    return size;
+  }
+
+  @Override
+  public synchronized Object get(int index) {
+    return elements[index];
+  }
+
+  @Override
+  public synchronized void set(int index, Object value, int line) {
+    elements[index] = value;
+  }
+
+  @Override
+  public synchronized void fill(int from, int to, Object value, int line) {
+    Arrays.fill(elements, from, to, value);
+  }
+
+  @Override
+  public synchronized LoxList resized(int newSize) {
+    return new LoxList(Arrays.copyOf(elements, newSize), newSize);
+  }
+
+  @Override
+  public synchronized LoxList slice(int from, int to) {
+    return new LoxList(Arrays.copyOfRange(elements, from, to), to - from);
+  }
+
+  @Override
+  public synchronized Object storage() {
+    return elements;
+  }
+
+  public synchronized void add(Object value) {
+    if (size == elements.length) grow(size + 1);
+    elements[size++] = value;
+  }
+
+  @Override
+  public Object get(Token name) {
+    return switch (name.lexeme()) {
+      case "size" -> (double) size();
+      default -> bind(name, arity(name));
+    };
+  }
+
+  @Override
+  public Object invoke(
+      Interpreter interpreter, Token name, Token callSite, List<Object> arguments) {
+    NativeInstance.checkArity(arity(name), arguments, callSite);
+    switch (name.lexeme()) {
+      case "forEach" -> forEach(interpreter, arguments.get(0), callSite);
+      case "addAll" -> {
+        // The source is read before locking this list, so two lists adding each other can't
+        // deadlock
+        addAll(snapshot(arguments.get(0), callSite.line()));
+      }
+      case "foo" -> {
+        return foo(arguments.get(0), arguments.get(1), callSite.line());
+      }
+      default -> {
+        return invokeLocked(name, arguments, callSite.line());
+      }
+    }
+    return null;
+  }
+
+  private static Object[] snapshot(Object other, int line) {
+    if (other instanceof LoxList list) {
+      synchronized (list) {
+        return Arrays.copyOf(list.elements, list.size);
+      }
+    }
+    if (!(other instanceof Indexable source)) {
+      throw new RuntimeError(line, "Can only add all elements of a list or an array.");
+    }
+    Object[] items = new Object[source.size()];
+    for (int i = 0; i < items.length; i++) items[i] = source.get(i);
+    return items;
+  }
+
+  // Kept from the interpreted List, which had it: the larger of two numbers, like math.max
+  private static Object foo(Object a, Object b, int line) {
+    if (!(a instanceof Double first) || !(b instanceof Double second)) {
+      throw new RuntimeError(line, "Operands must be numbers.");
+    }
+    return first < second ? second : first;
+  }
+
+  private synchronized void addAll(Object[] items) {
+    if (size + items.length > elements.length) grow(size + items.length);
+    System.arraycopy(items, 0, elements, size, items.length);
+    size += items.length;
+  }
+
+  private synchronized Object invokeLocked(Token name, List<Object> arguments, int line) {
+    switch (name.lexeme()) {
+      case "add" -> add(arguments.get(0));
+      case "remove" -> {
+        if (size == 0) return null;
+        Object last = elements[--size];
+        elements[size] = null;
+        return last;
+      }
+      case "get" -> {
+        return elements[Indexable.checkIndex(this, arguments.get(0), line)];
+      }
+      case "set" -> elements[Indexable.checkIndex(this, arguments.get(0), line)] = arguments.get(1);
+      case "insert" -> insert(position(arguments.get(0), line), arguments.get(1));
+      case "clear" -> {
+        Arrays.fill(elements, 0, size, null);
+        size = 0;
+      }
+      case "indexOf" -> {
+        return (double) indexOf(arguments.get(0));
+      }
+      case "toArray" -> {
+        LoxArray array = new LoxArray(size);
+        System.arraycopy(elements, 0, array.storage(), 0, size);
+        return array;
+      }
+      default -> throw new IllegalStateException("Unexpected list method: " + name.lexeme());
+    }
+    return null;
+  }
+
+  private static int arity(Token name) {
+    return switch (name.lexeme()) {
+      case "remove", "clear", "toArray" -> 0;
+      case "add", "get", "addAll", "indexOf", "forEach" -> 1;
+      case "set", "insert", "foo" -> 2;
+      default -> throw new RuntimeError(name.line(), "Undefined property '" + name.lexeme() + "'.");
+    };
+  }
+
+  // Like checkIndex, but the end of the list is also a valid position
+  private int position(Object index, int line) {
+    if (index instanceof Double number && number == size) return size;
+    return Indexable.checkIndex(this, index, line);
+  }
+
+  private void insert(int index, Object value) {
+    if (size == elements.length) grow(size + 1);
+    System.arraycopy(elements, index, elements, index + 1, size - index);
+    elements[index] = value;
+    size++;
+  }
+
+  private int indexOf(Object value) {
+    for (int i = 0; i < size; i++) {
+      if (Interpreter.isEqual(elements[i], value)) return i;
+    }
+    return -1;
+  }
+
+  // The callback may add to or remove from the list; it sees the size as of each step
+  private void forEach(Interpreter interpreter, Object callback, Token callSite) {
+    if (!(callback instanceof LoxCallable function) || function.arity() != 1) {
+      throw new RuntimeError(callSite.line(), "Expected a function taking 1 argument.");
+    }
+    for (int i = 0; ; i++) {
+      Object element;
+      synchronized (this) {
+        if (i >= size) return;
+        element = elements[i];
+      }
+      function.call(interpreter, callSite, Collections.singletonList(element));
+    }
+  }
+
+  private void grow(int minCapacity) {
+    elements = Arrays.copyOf(elements, Math.max(minCapacity, elements.length * 2));
+  }
+
+  @Override
+  public String toString() {
+    return "List instance";
+  }
+}
@@ -0,0 +1,205 @@
+package ccs.jlox.backend;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.error.RuntimeError;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+// Hash map behind std.map, using open addressing with linear probing. Keys are equal when
+// Interpreter.isEqual says so: numbers, strings and booleans by value and everything else by
+// identity. Numbers hash their bits through the MurmurHash3 finalizer, since the low bits of small
+// integers are all zero, and strings use their cached hash code. Each slot keeps its key's hash so
+// probing compares ints before calling equals and growing does not rehash. Removal shifts the
+// following entries back instead of leaving tombstones. Every method locks the map, like LoxCache,
+// so threads sharing one can interleave their updates but never corrupt the table.
+public final class LoxMap implements NativeInstance {
+  private static final int MIN_CAPACITY = 16;
+
+  private Object[] keys;
+  private Object[] values;
+  private int[] hashes;
+  private int size;
+
+  public LoxMap() {
+    allocate(MIN_CAPACITY);
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  public synchronized Object get(Object key) {
+    int slot = find(key, hash(key));
+    return slot < 0 ? null : values[slot];
+  }
+
+  public synchronized void put(Object key, Object value) {
+    int hash = hash(key);
+    int slot = find(key, hash);
+    if (slot >= 0) {
+      values[slot] = value;
+      return;
+    }
+    if ((size + 1) * 4 > keys.length * 3) resize(keys.length * 2);
+    slot = home(hash);
+    while (keys[slot] != null) slot = next(slot);
+    keys[slot] = key;
+    values[slot] = value;
+    hashes[slot] = hash;
+    size++;
+  }
+
+  public synchronized Object remove(Object key) {
+    int slot = find(key, hash(key));
+    if (slot < 0) return null;
+    Object value = values[slot];
+    size--;
+    // Move back any later entry of the run whose home slot is not between the hole and itself
+    int hole = slot;
+    for (int i = next(hole); keys[i] != null; i = next(i)) {
+      int home = home(hashes[i]);
+      if (((i - home) & mask()) >= ((i - hole) & mask())) {
+        keys[hole] = keys[i];
+        values[hole] = values[i];
+        hashes[hole] = hashes[i];
+        hole = i;
+      }
+    }
+    keys[hole] = null;
+    values[hole] = null;
+    return value;
+  }
+
+  // Runs the action on a snapshot of the entries, outside the lock, so it may use the map
+  public void forEach(BiConsumer<Object, Object> action) {
+    Object[] entries;
+    synchronized (this) {
+      entries = new Object[size * 2];
+      int next = 0;
+      for (int slot = 0; slot < keys.length; slot++) {
+        if (keys[slot] == null) continue;
+        entries[next++] = keys[slot];
+        entries[next++] = values[slot];
+      }
+    }
+    for (int i = 0; i < entries.length; i += 2) action.accept(entries[i], entries[i + 1]);
+  }
+
+  @Override
+  public Object get(Token name) {
+    return switch (name.lexeme()) {
+      case "size" -> (double) size();
+      default -> bind(name, arity(name));
+    };
+  }
+
+  @Override
+  public Object invoke(
+      Interpreter interpreter, Token name, Token callSite, List<Object> arguments) {
+    NativeInstance.checkArity(arity(name), arguments, callSite);
+    int line = callSite.line();
+    return switch (name.lexeme()) {
+      case "get" -> get(key(arguments.get(0), line));
+      case "put" -> {
+        put(key(arguments.get(0), line), arguments.get(1));
+        yield null;
+      }
+      case "remove" -> remove(key(arguments.get(0), line));
+      case "contains" -> contains(key(arguments.get(0), line));
+      case "keys" -> collect(keys);
+      case "values" -> collect(values);
+      case "clear" -> {
+        clear();
+        yield null;
+      }
+      default -> throw new IllegalStateException("Unexpected map method: " + name.lexeme());
+    };
+  }
+
+  private static int arity(Token name) {
+    return switch (name.lexeme()) {
+      case "keys", "values", "clear" -> 0;
+      case "get", "remove", "contains" -> 1;
+      case "put" -> 2;
+      default -> throw new RuntimeError(name.line(), "Undefined property '" + name.lexeme() + "'.");
+    };
+  }
+
+  private synchronized boolean contains(Object key) {
+    return find(key, hash(key)) >= 0;
+  }
+
+  private synchronized void clear() {
+    allocate(MIN_CAPACITY);
+    size = 0;
+  }
+
+  private static Object key(Object key, int line) {
+    if (key == null) throw new RuntimeError(line, "Map keys can't be nil.");
+    return Rope.normalize(key);
+  }
+
+  private synchronized LoxList collect(Object[] column) {
+    LoxList list = new LoxList();
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != null) list.add(column[slot]);
+    }
+    return list;
+  }
+
+  private int find(Object key, int hash) {
+    for (int slot = home(hash); keys[slot] != null; slot = next(slot)) {
+      if (hashes[slot] == hash && Interpreter.isEqual(keys[slot], key)) return slot;
+    }
+    return -1;
+  }
+
+  static int hash(Object key) {
+    if (key instanceof Double number) {
+      long bits = Double.doubleToLongBits(number);
+      bits = (bits ^ (bits >>> 33)) * 0xFF51AFD7ED558CCDL;
+      bits = (bits ^ (bits >>> 33)) * 0xC4CEB9FE1A85EC53L;
+      return (int) (bits ^ (bits >>> 33));
+    }
+    int hash = key.hashCode() * 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+
+  private int home(int hash) {
+    return hash & mask();
+  }
+
+  private int next(int slot) {
+    return (slot + 1) & mask();
+  }
+
+  private int mask() {
+    return keys.length - 1;
+  }
+
+  private void allocate(int capacity) {
+    keys = new Object[capacity];
+    values = new Object[capacity];
+    hashes = new int[capacity];
+  }
+
+  private void resize(int capacity) {
+    Object[] oldKeys = keys;
+    Object[] oldValues = values;
+    int[] oldHashes = hashes;
+    allocate(capacity);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] == null) continue;
+      int slot = home(oldHashes[i]);
+      while (keys[slot] != null) slot = next(slot);
+      keys[slot] = oldKeys[i];
+      values[slot] = oldValues[i];
+      hashes[slot] = oldHashes[i];
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "Map instance";
+  }
+}
@@ -1,20 +1,23 @@
 package ccs.jlox.backend;
 
+import ccs.jlox.ast.Symbol;
+import ccs.jlox.ast.SymbolMap;
 import ccs.jlox.backend.ffi.AssertFunction;
 import ccs.jlox.backend.ffi.ClockFunction;
+import ccs.jlox.backend.ffi.FlushFunction;
+import ccs.jlox.backend.ffi.MemoStatsFunction;
 import ccs.jlox.backend.ffi.NativeFunction;
+import ccs.jlox.backend.ffi.ParallelFunctions;
 import ccs.jlox.backend.ffi.PrintFunction;
 import ccs.jlox.backend.ffi.SleepFunction;
 import ccs.jlox.interm.VariableLocation;
-import java.util.HashMap;
 import java.util.Map;
 
 // XXX: Should locals live here?
 public final class LoxModule {
   private final String fullyQualifiedName;
   private final Map<Integer, VariableLocation> locals;
-  // XXX: Change to more efficient implementation. See notes
-  private final Map<String, Object> globals = new HashMap<>();
+  private final SymbolMap<Object> globals = new SymbolMap<>();
 
   LoxModule(String fullyQualifiedName, Map<Integer, VariableLocation> locals) {
     this.fullyQualifiedName = fullyQualifiedName;
@@ -22,20 +25,23 @@ public final class LoxModule {
 
     // XXX; Find a way to only define them once
     addNativeFunction(new PrintFunction());
+    addNativeFunction(new FlushFunction());
     addNativeFunction(new ClockFunction());
     addNativeFunction(new AssertFunction());
     addNativeFunction(new SleepFunction());
+    addNativeFunction(new MemoStatsFunction());
+    ParallelFunctions.FUNCTIONS.forEach(this::addNativeFunction);
   }
 
-  private void addNativeFunction(NativeFunction nativeFunction) {
-    globals.put(nativeFunction.getName(), nativeFunction);
+  void addNativeFunction(NativeFunction nativeFunction) {
+    globals.put(Symbol.of(nativeFunction.getName()), nativeFunction);
   }
 
   String getFullyQualifiedName() {
     return fullyQualifiedName;
   }
 
-  Map<String, Object> getGlobals() {
+  SymbolMap<Object> getGlobals() {
     return globals;
   }
 
@@ -0,0 +1,166 @@
+package ccs.jlox.backend;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.error.RuntimeError;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+// A file from std.io mapped read-only into memory with FileChannel.map. The operating system pages
+// it in on demand and can drop clean pages at any time, so the heap only ever holds the slices
+// and lines that were asked for, however large the file is. A single mapping is limited to 2GB,
+// so larger files are mapped as several consecutive segments. Offsets are byte offsets; lines
+// and slices are decoded as UTF-8.
+public final class MappedFile implements NativeInstance {
+  private static final int SEGMENT_BITS = 30;
+  private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+  private final String path;
+  private final long size;
+  private MappedByteBuffer[] segments;
+  // Where readLine continues from
+  private long position;
+
+  private MappedFile(String path, long size, MappedByteBuffer[] segments) {
+    this.path = path;
+    this.size = size;
+    this.segments = segments;
+  }
+
+  public static MappedFile map(String path, int line) {
+    try (FileChannel channel =
+        FileChannel.open(LoxFile.path(path, "map", line), StandardOpenOption.READ)) {
+      long size = channel.size();
+      MappedByteBuffer[] segments =
+          new MappedByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS)];
+      for (int i = 0; i < segments.length; i++) {
+        long start = (long) i << SEGMENT_BITS;
+        segments[i] =
+            channel.map(
+                FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, 1L << SEGMENT_BITS));
+      }
+      // The mapping stays valid after the channel is closed
+      return new MappedFile(path, size, segments);
+    } catch (IOException e) {
+      throw LoxFile.failure(line, "map", path, e);
+    }
+  }
+
+  @Override
+  public synchronized Object get(Token name) {
+    return switch (name.lexeme()) {
+      case "size" -> (double) size;
+      case "position" -> (double) position;
+      default -> bind(name, arity(name));
+    };
+  }
+
+  @Override
+  public synchronized Object invoke(
+      Interpreter interpreter, Token name, Token callSite, List<Object> arguments) {
+    NativeInstance.checkArity(arity(name), arguments, callSite);
+    int line = callSite.line();
+    if (segments == null && !name.lexeme().equals("close")) {
+      throw new RuntimeError(line, "File is closed.");
+    }
+    return switch (name.lexeme()) {
+      case "byte" -> {
+        long offset = offset(arguments.get(0), line);
+        if (offset == size) throw new RuntimeError(line, "Offset is past the end of the file.");
+        yield (double) (byteAt(offset) & 0xFF);
+      }
+      case "bytes" -> {
+        long from = offset(arguments.get(0), line);
+        yield new ByteArray(copy(from, range(from, offset(arguments.get(1), line), line)));
+      }
+      case "slice" -> {
+        long from = offset(arguments.get(0), line);
+        yield decode(from, range(from, offset(arguments.get(1), line), line));
+      }
+      case "readLine" -> readLine();
+      case "seek" -> {
+        position = offset(arguments.get(0), line);
+        yield null;
+      }
+      case "close" -> {
+        // Unmapped once the buffers are collected; until then the pages stay reserved
+        segments = null;
+        yield null;
+      }
+      default -> throw new IllegalStateException("Unexpected file method: " + name.lexeme());
+    };
+  }
+
+  private static int arity(Token name) {
+    return switch (name.lexeme()) {
+      case "readLine", "close" -> 0;
+      case "byte", "seek" -> 1;
+      case "bytes", "slice" -> 2;
+      default -> throw new RuntimeError(name.line(), "Undefined property '" + name.lexeme() + "'.");
+    };
+  }
+
+  // The line starting at the current position without its line terminator (\n or \r\n), or nil
+  // at the end of the file
+  private String readLine() {
+    if (position >= size) return null;
+    long end = position;
+    while (end < size && byteAt(end) != '\n') end++;
+    long next = end < size ? end + 1 : end;
+    if (end > position && byteAt(end - 1) == '\r') end--;
+    String text = decode(position, (int) (end - position));
+    position = next;
+    return text;
+  }
+
+  private byte byteAt(long offset) {
+    return segments[(int) (offset >>> SEGMENT_BITS)].get((int) (offset & SEGMENT_MASK));
+  }
+
+  private String decode(long from, int length) {
+    return new String(copy(from, length), StandardCharsets.UTF_8);
+  }
+
+  private byte[] copy(long from, int length) {
+    byte[] bytes = new byte[length];
+    int copied = 0;
+    while (copied < length) {
+      long offset = from + copied;
+      MappedByteBuffer segment = segments[(int) (offset >>> SEGMENT_BITS)];
+      int start = (int) (offset & SEGMENT_MASK);
+      int count = Math.min(length - copied, segment.limit() - start);
+      segment.get(start, bytes, copied, count);
+      copied += count;
+    }
+    return bytes;
+  }
+
+  // Length of the slice between two offsets; slices become Lox strings or arrays, so they are
+  // limited to 2GB even when the file is not
+  private static int range(long from, long to, int line) {
+    if (to < from) throw new RuntimeError(line, "Slice end is before its start.");
+    if (to - from > Integer.MAX_VALUE - 8) throw new RuntimeError(line, "Slice is too large.");
+    return (int) (to - from);
+  }
+
+  private long offset(Object object, int line) {
+    if (!(object instanceof Double offset) || offset != Math.floor(offset)) {
+      throw new RuntimeError(line, "Offset must be an integer.");
+    }
+    if (offset < 0 || offset > size) {
+      throw new RuntimeError(
+          line,
+          String.format(
+              "Offset %d is out of bounds for a file of size %d.", offset.longValue(), size));
+    }
+    return offset.longValue();
+  }
+
+  @Override
+  public String toString() {
+    return "MappedFile instance";
+  }
+}
@@ -0,0 +1,96 @@
+package ccs.jlox.backend;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Results of a pure function keyed by its arguments, evicting the least recently used entry once
+// full. Only calls whose arguments and result are all nil, booleans, numbers or strings are cached,
+// since anything else could be mutated or compared by identity.
+// A function is memoized when it is pure and either annotated with @memo or jlox.memoize is set.
+public final class MemoCache {
+  private static final Object NIL = new Object();
+
+  private static volatile boolean memoizeAll = Boolean.getBoolean("jlox.memoize");
+  private static volatile int capacity = Integer.getInteger("jlox.memoCapacity", 4096);
+
+  private final Map<List<Object>, Object> entries;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  MemoCache() {
+    int maxSize = capacity;
+    this.entries =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+            return size() > maxSize;
+          }
+        };
+  }
+
+  // Memoize every pure function, not only the annotated ones
+  public static void setMemoizeAll(boolean memoize) {
+    memoizeAll = memoize;
+  }
+
+  public static void setCapacity(int entries) {
+    capacity = entries;
+  }
+
+  static boolean memoizeAll() {
+    return memoizeAll;
+  }
+
+  public static Optional<MemoCache> of(LoxCallable callable) {
+    if (callable instanceof LoxFunction function) return Optional.ofNullable(function.getMemo());
+    return Optional.empty();
+  }
+
+  // The body runs without holding the cache, so recursive and concurrent calls do not block
+  Object call(List<Object> arguments, Supplier<Object> body) {
+    if (!arguments.stream().allMatch(MemoCache::isValue)) return body.get();
+    List<Object> key = arguments.stream().map(Rope::normalize).toList();
+    Object cached;
+    synchronized (entries) {
+      cached = entries.get(key);
+    }
+    if (cached != null) {
+      hits.incrementAndGet();
+      return cached == NIL ? null : cached;
+    }
+
+    misses.incrementAndGet();
+    Object result = body.get();
+    if (isValue(result)) {
+      synchronized (entries) {
+        entries.put(key, result == null ? NIL : result);
+      }
+    }
+    return result;
+  }
+
+  public long hits() {
+    return hits.get();
+  }
+
+  public long misses() {
+    return misses.get();
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  private static boolean isValue(Object object) {
+    return object == null
+        || object instanceof Boolean
+        || object instanceof Double
+        || Rope.isString(object);
+  }
+}
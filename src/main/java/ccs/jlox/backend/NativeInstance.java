@@ -0,0 +1,30 @@
+package ccs.jlox.backend;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.backend.ffi.BuiltinFunction;
+import ccs.jlox.error.RuntimeError;
+import java.util.List;
+
+// An object implemented in Java that Lox code uses like a class instance, through properties and
+// methods. The interpreter calls `object.method(...)` through invoke directly, so no bound method
+// is allocated per call; get is only used when a method is read without being called.
+public interface NativeInstance {
+  Object get(Token name);
+
+  Object invoke(Interpreter interpreter, Token name, Token callSite, List<Object> arguments);
+
+  // The method as a callable value
+  default LoxCallable bind(Token name, int arity) {
+    return new BuiltinFunction(
+        name.lexeme(),
+        arity,
+        (interpreter, callSite, arguments) -> invoke(interpreter, name, callSite, arguments));
+  }
+
+  static void checkArity(int arity, List<Object> arguments, Token callSite) {
+    if (arguments.size() != arity) {
+      throw new RuntimeError(
+          callSite.line(), "Expected " + arity + " arguments but got " + arguments.size() + ".");
+    }
+  }
+}
@@ -0,0 +1,217 @@
+package ccs.jlox.backend;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Where print and debug statements write. Text is collected in a buffer and handed to the
+// destination in large chunks: when the buffer fills up, on flush() and once a program has run,
+// so printing costs an append rather than a locked, flushed write per line. Embedders can send
+// output to any Appendable or WritableByteChannel. async() moves the writes to a background
+// thread, so scripts don't wait on a slow destination. A sink is shared by all the threads and
+// isolates of an interpreter. Appending only takes the sink's lock; a full buffer is swapped for an
+// empty one and written under a separate write lock, so other threads keep printing meanwhile and
+// chunks still reach the destination in order.
+public final class OutputSink {
+  private static final int CAPACITY = 1 << 16;
+  private static final WritableByteChannel STDOUT =
+      new FileOutputStream(FileDescriptor.out).getChannel();
+
+  private final Destination destination;
+  // Flushing after every print keeps a terminal responsive
+  private final boolean flushEachPrint;
+  private final Object writeLock = new Object();
+  // Guarded by this
+  private StringBuilder buffer = new StringBuilder(CAPACITY);
+  // Being written, or empty and ready to swap in; guarded by writeLock
+  private StringBuilder spare = new StringBuilder(CAPACITY);
+
+  private OutputSink(Destination destination, boolean flushEachPrint) {
+    this.destination = destination;
+    this.flushEachPrint = flushEachPrint;
+  }
+
+  private interface Destination {
+    void write(CharSequence chunk) throws IOException;
+
+    void flush() throws IOException;
+  }
+
+  // Standard output, written to directly rather than through System.out
+  public static OutputSink stdout() {
+    Destination channel = channelDestination(STDOUT);
+    return new OutputSink(
+        new Destination() {
+          @Override
+          public void write(CharSequence chunk) throws IOException {
+            // Keeps the order of anything else printed through System.out, like the REPL prompt
+            System.out.flush();
+            channel.write(chunk);
+          }
+
+          @Override
+          public void flush() {}
+        },
+        System.console() != null);
+  }
+
+  public static OutputSink of(Appendable appendable) {
+    return new OutputSink(
+        new Destination() {
+          @Override
+          public void write(CharSequence chunk) throws IOException {
+            appendable.append(chunk);
+          }
+
+          @Override
+          public void flush() throws IOException {
+            if (appendable instanceof Flushable flushable) flushable.flush();
+          }
+        },
+        false);
+  }
+
+  // Encodes as UTF-8
+  public static OutputSink of(WritableByteChannel channel) {
+    return new OutputSink(channelDestination(channel), false);
+  }
+
+  private static Destination channelDestination(WritableByteChannel channel) {
+    return new Destination() {
+      @Override
+      public void write(CharSequence chunk) throws IOException {
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(chunk));
+        while (bytes.hasRemaining()) channel.write(bytes);
+      }
+
+      @Override
+      public void flush() {}
+    };
+  }
+
+  // A sink writing to the same destination from a daemon thread, to be used instead of this one.
+  // Chunks are written in order and flush() waits for all of them; a failed write is reported by
+  // the next flush.
+  public OutputSink async() {
+    ExecutorService writer =
+        Executors.newSingleThreadExecutor(
+            task -> {
+              Thread thread = new Thread(task, "lox-output");
+              thread.setDaemon(true);
+              return thread;
+            });
+    return new OutputSink(
+        new Destination() {
+          private volatile IOException failure;
+
+          @Override
+          public void write(CharSequence chunk) {
+            String copy = chunk.toString();
+            writer.execute(
+                () -> {
+                  try {
+                    destination.write(copy);
+                  } catch (IOException e) {
+                    if (failure == null) failure = e;
+                  }
+                });
+          }
+
+          @Override
+          public void flush() throws IOException {
+            try {
+              writer
+                  .submit(
+                      () -> {
+                        destination.flush();
+                        return null;
+                      })
+                  .get();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+              if (e.getCause() instanceof IOException cause) throw cause;
+              throw new IllegalStateException(e.getCause());
+            }
+            IOException failed = failure;
+            if (failed != null) {
+              failure = null;
+              throw failed;
+            }
+          }
+        },
+        flushEachPrint);
+  }
+
+  public void print(String text) {
+    boolean full;
+    synchronized (this) {
+      buffer.append(text);
+      full = buffer.length() >= CAPACITY;
+    }
+    appended(full);
+  }
+
+  public void println(String text) {
+    boolean full;
+    synchronized (this) {
+      buffer.append(text).append(System.lineSeparator());
+      full = buffer.length() >= CAPACITY;
+    }
+    appended(full);
+  }
+
+  public void flush() {
+    synchronized (writeLock) {
+      drain();
+      try {
+        destination.flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private void appended(boolean full) {
+    if (flushEachPrint) {
+      flush();
+    } else if (full) {
+      synchronized (writeLock) {
+        drain();
+      }
+    }
+  }
+
+  // Called holding writeLock, which is always taken before the sink's own lock
+  private void drain() {
+    StringBuilder chunk;
+    synchronized (this) {
+      if (buffer.length() == 0) return;
+      chunk = buffer;
+      buffer = spare;
+    }
+    try {
+      destination.write(chunk);
+    } catch (IOException e) {
+      // The chunk goes back in front of whatever was printed meanwhile, for the next attempt
+      synchronized (this) {
+        StringBuilder printed = buffer;
+        buffer = chunk.append(printed);
+        printed.setLength(0);
+        spare = printed;
+      }
+      throw new UncheckedIOException(e);
+    }
+    chunk.setLength(0);
+    spare = chunk;
+  }
+}
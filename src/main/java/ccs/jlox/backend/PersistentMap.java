@@ -0,0 +1,324 @@
+package ccs.jlox.backend;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.error.RuntimeError;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+// Immutable hash map from std.persistent: a hash array mapped trie. Each level consumes 5 bits of
+// the key's hash and a bitmap tells which of the 32 slots are used, so nodes only store the
+// present entries. Keys whose whole hash collides share a collision node. An update copies the
+// nodes on one path and shares the rest. Keys are hashed and compared like std.map keys.
+public final class PersistentMap implements NativeInstance {
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+
+  public static final PersistentMap EMPTY = new PersistentMap(0, null);
+
+  private final int size;
+  private final Node root;
+
+  private PersistentMap(int size, Node root) {
+    this.size = size;
+    this.root = root;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public Object get(Object key) {
+    return root == null ? null : root.find(0, LoxMap.hash(key), key, null);
+  }
+
+  public boolean contains(Object key) {
+    Object missing = new Object();
+    return root != null && root.find(0, LoxMap.hash(key), key, missing) != missing;
+  }
+
+  public PersistentMap put(Object key, Object value) {
+    boolean[] added = {false};
+    Node start = root == null ? BitmapNode.EMPTY : root;
+    Node newRoot = start.put(null, 0, LoxMap.hash(key), key, value, added);
+    if (newRoot == root) return this;
+    return new PersistentMap(added[0] ? size + 1 : size, newRoot);
+  }
+
+  public PersistentMap remove(Object key) {
+    if (root == null) return this;
+    Node newRoot = root.remove(0, LoxMap.hash(key), key);
+    if (newRoot == root) return this;
+    return newRoot == null ? EMPTY : new PersistentMap(size - 1, newRoot);
+  }
+
+  public void forEach(BiConsumer<Object, Object> action) {
+    if (root != null) root.forEach(action);
+  }
+
+  @Override
+  public Object get(Token name) {
+    return switch (name.lexeme()) {
+      case "size" -> (double) size;
+      default -> bind(name, arity(name));
+    };
+  }
+
+  @Override
+  public Object invoke(
+      Interpreter interpreter, Token name, Token callSite, List<Object> arguments) {
+    NativeInstance.checkArity(arity(name), arguments, callSite);
+    int line = callSite.line();
+    return switch (name.lexeme()) {
+      case "get" -> get(key(arguments.get(0), line));
+      case "put" -> put(key(arguments.get(0), line), arguments.get(1));
+      case "remove" -> remove(key(arguments.get(0), line));
+      case "contains" -> contains(key(arguments.get(0), line));
+      case "keys" -> {
+        PersistentVector.Builder keys = new PersistentVector.Builder();
+        forEach((key, value) -> keys.add(key));
+        yield keys.build();
+      }
+      case "values" -> {
+        PersistentVector.Builder values = new PersistentVector.Builder();
+        forEach((key, value) -> values.add(value));
+        yield values.build();
+      }
+      default -> throw new IllegalStateException("Unexpected map method: " + name.lexeme());
+    };
+  }
+
+  private static int arity(Token name) {
+    return switch (name.lexeme()) {
+      case "keys", "values" -> 0;
+      case "get", "remove", "contains" -> 1;
+      case "put" -> 2;
+      default -> throw new RuntimeError(name.line(), "Undefined property '" + name.lexeme() + "'.");
+    };
+  }
+
+  private static Object key(Object key, int line) {
+    if (key == null) throw new RuntimeError(line, "Map keys can't be nil.");
+    return Rope.normalize(key);
+  }
+
+  @Override
+  public String toString() {
+    return "PersistentMap instance";
+  }
+
+  private sealed interface Node permits BitmapNode, CollisionNode {
+    Object find(int shift, int hash, Object key, Object missing);
+
+    // `edit` is the token of the builder allowed to change nodes it created in place, or null
+    Node put(Object edit, int shift, int hash, Object key, Object value, boolean[] added);
+
+    // Returns null when the node becomes empty
+    Node remove(int shift, int hash, Object key);
+
+    void forEach(BiConsumer<Object, Object> action);
+  }
+
+  // Entries are stored as pairs in `array`: a key and its value, or null and a child node
+  private static final class BitmapNode implements Node {
+    static final BitmapNode EMPTY = new BitmapNode(null, 0, new Object[0]);
+
+    private final Object edit;
+    private int bitmap;
+    private Object[] array;
+
+    BitmapNode(Object edit, int bitmap, Object[] array) {
+      this.edit = edit;
+      this.bitmap = bitmap;
+      this.array = array;
+    }
+
+    @Override
+    public Object find(int shift, int hash, Object key, Object missing) {
+      int bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) return missing;
+      int index = index(bit);
+      Object existing = array[2 * index];
+      Object valueOrNode = array[2 * index + 1];
+      if (existing == null) return ((Node) valueOrNode).find(shift + BITS, hash, key, missing);
+      return Interpreter.isEqual(key, existing) ? valueOrNode : missing;
+    }
+
+    @Override
+    public Node put(Object edit, int shift, int hash, Object key, Object value, boolean[] added) {
+      int bit = bit(hash, shift);
+      int index = index(bit);
+      if ((bitmap & bit) != 0) {
+        Object existing = array[2 * index];
+        Object valueOrNode = array[2 * index + 1];
+        if (existing == null) {
+          Node child = ((Node) valueOrNode).put(edit, shift + BITS, hash, key, value, added);
+          return child == valueOrNode ? this : with(edit, 2 * index + 1, child);
+        }
+        if (Interpreter.isEqual(key, existing)) {
+          return value == valueOrNode ? this : with(edit, 2 * index + 1, value);
+        }
+        added[0] = true;
+        Node child =
+            pair(edit, shift + BITS, existing, valueOrNode, hash, key, value, new boolean[1]);
+        BitmapNode node = (BitmapNode) with(edit, 2 * index, null);
+        node.array[2 * index + 1] = child;
+        return node;
+      }
+      added[0] = true;
+      int count = Integer.bitCount(bitmap);
+      Object[] newArray = new Object[2 * (count + 1)];
+      System.arraycopy(array, 0, newArray, 0, 2 * index);
+      newArray[2 * index] = key;
+      newArray[2 * index + 1] = value;
+      System.arraycopy(array, 2 * index, newArray, 2 * (index + 1), 2 * (count - index));
+      if (edit != null && this.edit == edit) {
+        bitmap |= bit;
+        array = newArray;
+        return this;
+      }
+      return new BitmapNode(edit, bitmap | bit, newArray);
+    }
+
+    @Override
+    public Node remove(int shift, int hash, Object key) {
+      int bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) return this;
+      int index = index(bit);
+      Object existing = array[2 * index];
+      Object valueOrNode = array[2 * index + 1];
+      if (existing == null) {
+        Node child = ((Node) valueOrNode).remove(shift + BITS, hash, key);
+        if (child == valueOrNode) return this;
+        if (child != null) return with(null, 2 * index + 1, child);
+      } else if (!Interpreter.isEqual(key, existing)) {
+        return this;
+      }
+      if (bitmap == bit) return null;
+      Object[] newArray = new Object[array.length - 2];
+      System.arraycopy(array, 0, newArray, 0, 2 * index);
+      System.arraycopy(array, 2 * (index + 1), newArray, 2 * index, newArray.length - 2 * index);
+      return new BitmapNode(null, bitmap ^ bit, newArray);
+    }
+
+    @Override
+    public void forEach(BiConsumer<Object, Object> action) {
+      for (int i = 0; i < array.length; i += 2) {
+        if (array[i] == null) {
+          ((Node) array[i + 1]).forEach(action);
+        } else {
+          action.accept(array[i], array[i + 1]);
+        }
+      }
+    }
+
+    private Node with(Object edit, int slot, Object value) {
+      if (edit != null && this.edit == edit) {
+        array[slot] = value;
+        return this;
+      }
+      Object[] newArray = array.clone();
+      newArray[slot] = value;
+      return new BitmapNode(edit, bitmap, newArray);
+    }
+
+    private int index(int bit) {
+      return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    private static int bit(int hash, int shift) {
+      return 1 << ((hash >>> shift) & MASK);
+    }
+  }
+
+  // Keys with the same full hash, as pairs in `array`
+  private record CollisionNode(int hash, Object[] array) implements Node {
+    @Override
+    public Object find(int shift, int hash, Object key, Object missing) {
+      int index = indexOf(key);
+      return index < 0 ? missing : array[index + 1];
+    }
+
+    @Override
+    public Node put(Object edit, int shift, int hash, Object key, Object value, boolean[] added) {
+      if (hash != this.hash) {
+        // Nest this node one level down, in a bitmap node that can tell the two hashes apart
+        BitmapNode parent =
+            new BitmapNode(edit, BitmapNode.bit(this.hash, shift), new Object[] {null, this});
+        return parent.put(edit, shift, hash, key, value, added);
+      }
+      int index = indexOf(key);
+      if (index >= 0) {
+        if (array[index + 1] == value) return this;
+        Object[] newArray = array.clone();
+        newArray[index + 1] = value;
+        return new CollisionNode(hash, newArray);
+      }
+      added[0] = true;
+      Object[] newArray = Arrays.copyOf(array, array.length + 2);
+      newArray[array.length] = key;
+      newArray[array.length + 1] = value;
+      return new CollisionNode(hash, newArray);
+    }
+
+    @Override
+    public Node remove(int shift, int hash, Object key) {
+      int index = indexOf(key);
+      if (index < 0) return this;
+      if (array.length == 2) return null;
+      Object[] newArray = new Object[array.length - 2];
+      System.arraycopy(array, 0, newArray, 0, index);
+      System.arraycopy(array, index + 2, newArray, index, newArray.length - index);
+      return new CollisionNode(hash, newArray);
+    }
+
+    @Override
+    public void forEach(BiConsumer<Object, Object> action) {
+      for (int i = 0; i < array.length; i += 2) action.accept(array[i], array[i + 1]);
+    }
+
+    private int indexOf(Object key) {
+      for (int i = 0; i < array.length; i += 2) {
+        if (Interpreter.isEqual(key, array[i])) return i;
+      }
+      return -1;
+    }
+  }
+
+  // Node holding two entries whose keys differ
+  private static Node pair(
+      Object edit,
+      int shift,
+      Object key1,
+      Object value1,
+      int hash2,
+      Object key2,
+      Object value2,
+      boolean[] added) {
+    int hash1 = LoxMap.hash(key1);
+    if (hash1 == hash2) return new CollisionNode(hash1, new Object[] {key1, value1, key2, value2});
+    return BitmapNode.EMPTY
+        .put(edit, shift, hash1, key1, value1, added)
+        .put(edit, shift, hash2, key2, value2, added);
+  }
+
+  // Puts in place, then publishes the result once; the builder can't be used after build
+  public static final class Builder {
+    private Object edit = new Object();
+    private int size;
+    private Node root = new BitmapNode(edit, 0, new Object[0]);
+
+    public Builder put(Object key, Object value) {
+      if (edit == null) throw new IllegalStateException("Builder used after build.");
+      boolean[] added = {false};
+      root = root.put(edit, 0, LoxMap.hash(key), key, value, added);
+      if (added[0]) size++;
+      return this;
+    }
+
+    public PersistentMap build() {
+      edit = null;
+      return size == 0 ? EMPTY : new PersistentMap(size, root);
+    }
+  }
+}
@@ -0,0 +1,272 @@
+package ccs.jlox.backend;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.error.RuntimeError;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Immutable vector from std.persistent: a 32-way trie of full leaves plus a tail holding the last
+// (up to 32) elements, as in Clojure. Updates copy only the path from the root to one leaf, so they
+// are O(log32 n) and share everything else with the old vector; pushes and pops at the end only
+// touch the tail most of the time. Builder fills a vector in place before it is published.
+public final class PersistentVector implements NativeInstance {
+  private static final int BITS = 5;
+  private static final int WIDTH = 1 << BITS;
+  private static final int MASK = WIDTH - 1;
+
+  private static final Node EMPTY_NODE = new Node(null, new Object[WIDTH]);
+  public static final PersistentVector EMPTY =
+      new PersistentVector(0, BITS, EMPTY_NODE, new Object[0]);
+
+  private final int size;
+  private final int shift;
+  private final Node root;
+  private final Object[] tail;
+
+  // Nodes created by a builder carry its edit token and may be changed in place by that builder
+  private record Node(Object edit, Object[] array) {}
+
+  private PersistentVector(int size, int shift, Node root, Object[] tail) {
+    this.size = size;
+    this.shift = shift;
+    this.root = root;
+    this.tail = tail;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public Object get(int index) {
+    return leafFor(index)[index & MASK];
+  }
+
+  public PersistentVector set(int index, Object value) {
+    if (index >= tailOffset(size)) {
+      Object[] newTail = tail.clone();
+      newTail[index & MASK] = value;
+      return new PersistentVector(size, shift, root, newTail);
+    }
+    return new PersistentVector(size, shift, set(shift, root, index, value), tail);
+  }
+
+  public PersistentVector push(Object value) {
+    if (size - tailOffset(size) < WIDTH) {
+      Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+      newTail[tail.length] = value;
+      return new PersistentVector(size + 1, shift, root, newTail);
+    }
+    Node tailNode = new Node(null, tail);
+    int newShift = shift;
+    Node newRoot;
+    if ((size >>> BITS) > (1 << shift)) {
+      newRoot = new Node(null, new Object[WIDTH]);
+      newRoot.array()[0] = root;
+      newRoot.array()[1] = newPath(null, shift, tailNode);
+      newShift += BITS;
+    } else {
+      newRoot = pushTail(null, size, shift, root, tailNode);
+    }
+    return new PersistentVector(size + 1, newShift, newRoot, new Object[] {value});
+  }
+
+  public PersistentVector pop() {
+    if (size == 1) return EMPTY;
+    if (size - tailOffset(size) > 1) {
+      return new PersistentVector(size - 1, shift, root, Arrays.copyOf(tail, tail.length - 1));
+    }
+    Object[] newTail = leafFor(size - 2);
+    Node newRoot = popTail(shift, root);
+    int newShift = shift;
+    if (newRoot == null) newRoot = EMPTY_NODE;
+    if (shift > BITS && newRoot.array()[1] == null) {
+      newRoot = (Node) newRoot.array()[0];
+      newShift -= BITS;
+    }
+    return new PersistentVector(size - 1, newShift, newRoot, newTail);
+  }
+
+  public void forEach(Consumer<Object> action) {
+    for (int i = 0; i < size; i += WIDTH) {
+      Object[] leaf = leafFor(i);
+      for (int j = 0; j < Math.min(WIDTH, size - i); j++) action.accept(leaf[j]);
+    }
+  }
+
+  @Override
+  public Object get(Token name) {
+    return switch (name.lexeme()) {
+      case "size" -> (double) size;
+      default -> bind(name, arity(name));
+    };
+  }
+
+  @Override
+  public Object invoke(
+      Interpreter interpreter, Token name, Token callSite, List<Object> arguments) {
+    NativeInstance.checkArity(arity(name), arguments, callSite);
+    int line = callSite.line();
+    return switch (name.lexeme()) {
+      case "get" -> get(checkIndex(arguments.get(0), line));
+      case "set" -> set(checkIndex(arguments.get(0), line), arguments.get(1));
+      case "push" -> push(arguments.get(0));
+      case "pop" -> {
+        if (size == 0) throw new RuntimeError(line, "Can't pop from an empty vector.");
+        yield pop();
+      }
+      case "toArray" -> {
+        LoxArray array = new LoxArray(size);
+        int[] next = {0};
+        forEach(element -> array.set(next[0]++, element));
+        yield array;
+      }
+      case "forEach" -> {
+        if (!(arguments.get(0) instanceof LoxCallable function) || function.arity() != 1) {
+          throw new RuntimeError(line, "Expected a function taking 1 argument.");
+        }
+        forEach(
+            element -> function.call(interpreter, callSite, Collections.singletonList(element)));
+        yield null;
+      }
+      default -> throw new IllegalStateException("Unexpected vector method: " + name.lexeme());
+    };
+  }
+
+  private static int arity(Token name) {
+    return switch (name.lexeme()) {
+      case "pop", "toArray" -> 0;
+      case "get", "push", "forEach" -> 1;
+      case "set" -> 2;
+      default -> throw new RuntimeError(name.line(), "Undefined property '" + name.lexeme() + "'.");
+    };
+  }
+
+  private int checkIndex(Object index, int line) {
+    if (!(index instanceof Double number) || number != Math.floor(number)) {
+      throw new RuntimeError(line, "Vector index must be an integer.");
+    }
+    if (number < 0 || number >= size) {
+      throw new RuntimeError(
+          line,
+          String.format(
+              "Index %d is out of bounds for a vector of size %d.", number.longValue(), size));
+    }
+    return number.intValue();
+  }
+
+  // Index of the first element in the tail
+  private static int tailOffset(int size) {
+    return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+  }
+
+  private Object[] leafFor(int index) {
+    if (index >= tailOffset(size)) return tail;
+    Node node = root;
+    for (int level = shift; level > 0; level -= BITS) {
+      node = (Node) node.array()[(index >>> level) & MASK];
+    }
+    return node.array();
+  }
+
+  private static Node set(int level, Node node, int index, Object value) {
+    Node copy = new Node(null, node.array().clone());
+    if (level == 0) {
+      copy.array()[index & MASK] = value;
+    } else {
+      int child = (index >>> level) & MASK;
+      copy.array()[child] = set(level - BITS, (Node) node.array()[child], index, value);
+    }
+    return copy;
+  }
+
+  // Adds a full leaf to the rightmost path of a tree holding `size` elements (tail included)
+  private static Node pushTail(Object edit, int size, int level, Node parent, Node tailNode) {
+    int child = ((size - 1) >>> level) & MASK;
+    Node copy = editable(edit, parent);
+    Node inserted;
+    if (level == BITS) {
+      inserted = tailNode;
+    } else {
+      Node existing = (Node) parent.array()[child];
+      inserted =
+          existing != null
+              ? pushTail(edit, size, level - BITS, existing, tailNode)
+              : newPath(edit, level - BITS, tailNode);
+    }
+    copy.array()[child] = inserted;
+    return copy;
+  }
+
+  private static Node newPath(Object edit, int level, Node node) {
+    if (level == 0) return node;
+    Node path = new Node(edit, new Object[WIDTH]);
+    path.array()[0] = newPath(edit, level - BITS, node);
+    return path;
+  }
+
+  // Removes the rightmost leaf, returning null when the node becomes empty
+  private Node popTail(int level, Node node) {
+    int child = ((size - 2) >>> level) & MASK;
+    if (level > BITS) {
+      Node newChild = popTail(level - BITS, (Node) node.array()[child]);
+      if (newChild == null && child == 0) return null;
+      Node copy = new Node(null, node.array().clone());
+      copy.array()[child] = newChild;
+      return copy;
+    }
+    if (child == 0) return null;
+    Node copy = new Node(null, node.array().clone());
+    copy.array()[child] = null;
+    return copy;
+  }
+
+  private static Node editable(Object edit, Node node) {
+    if (edit != null && node.edit() == edit) return node;
+    return new Node(edit, node.array().clone());
+  }
+
+  @Override
+  public String toString() {
+    return "Vector instance";
+  }
+
+  // Appends in place, then publishes the result once; the builder can't be used after build
+  public static final class Builder {
+    private Object edit = new Object();
+    private int size;
+    private int shift = BITS;
+    private Node root = new Node(edit, new Object[WIDTH]);
+    private Object[] tail = new Object[WIDTH];
+
+    public Builder add(Object value) {
+      if (edit == null) throw new IllegalStateException("Builder used after build.");
+      if (size - tailOffset(size) < WIDTH) {
+        tail[size & MASK] = value;
+        size++;
+        return this;
+      }
+      Node tailNode = new Node(edit, tail);
+      tail = new Object[WIDTH];
+      tail[0] = value;
+      if ((size >>> BITS) > (1 << shift)) {
+        Node newRoot = new Node(edit, new Object[WIDTH]);
+        newRoot.array()[0] = root;
+        newRoot.array()[1] = newPath(edit, shift, tailNode);
+        root = newRoot;
+        shift += BITS;
+      } else {
+        root = pushTail(edit, size, shift, root, tailNode);
+      }
+      size++;
+      return this;
+    }
+
+    public PersistentVector build() {
+      edit = null;
+      if (size == 0) return EMPTY;
+      return new PersistentVector(size, shift, root, Arrays.copyOf(tail, size - tailOffset(size)));
+    }
+  }
+}
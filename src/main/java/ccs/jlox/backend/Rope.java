@@ -0,0 +1,162 @@
+package ccs.jlox.backend;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// A Lox string that is either the concatenation of two strings or a slice of one, sharing their
+// storage instead of copying it. `+` builds ropes once the result is longer than SHORT, so
+// building a long string piece by piece is linear. Any other use of the text (printing, equality,
+// hashing, map keys) flattens it once with an iterative walk and caches the result. Short results
+// stay plain Java strings, so Lox strings are String or Rope and normalize turns a rope into a
+// String where a single type is needed.
+public final class Rope implements CharSequence {
+  private static final int SHORT = 64;
+
+  // For a concatenation, the two halves; for a slice, the sliced text and a null right half
+  private final CharSequence left;
+  private final CharSequence right;
+  private final int offset;
+  private final int length;
+  private volatile String flat;
+
+  private Rope(CharSequence left, CharSequence right, int offset, int length) {
+    this.left = left;
+    this.right = right;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  public static boolean isString(Object value) {
+    return value instanceof String || value instanceof Rope;
+  }
+
+  public static Object normalize(Object value) {
+    return value instanceof Rope rope ? rope.toString() : value;
+  }
+
+  public static CharSequence concat(CharSequence left, CharSequence right) {
+    if (left.length() == 0) return right;
+    if (right.length() == 0) return left;
+    int length = left.length() + right.length();
+    if (length <= SHORT) return left.toString() + right;
+    return new Rope(left, right, 0, length);
+  }
+
+  // Characters from `from` up to but not including `to`, sharing the storage of the text
+  public static CharSequence slice(CharSequence text, int from, int to) {
+    int length = to - from;
+    if (length == text.length()) return text;
+    if (length <= SHORT) {
+      StringBuilder builder = new StringBuilder(length);
+      chunks(
+          text,
+          from,
+          to,
+          (chunk, start, end) -> {
+            builder.append(chunk, start, end);
+            return true;
+          });
+      return builder.toString();
+    }
+    if (text instanceof Rope rope && rope.right == null) {
+      return new Rope(rope.left, null, rope.offset + from, length);
+    }
+    return new Rope(text, null, from, length);
+  }
+
+  @FunctionalInterface
+  public interface ChunkConsumer {
+    // Returns false to stop the walk
+    boolean accept(String chunk, int from, int to);
+  }
+
+  // Visits the characters from `from` to `to` as runs of plain strings, in order. The walk keeps
+  // its own stack, since ropes built by appending in a loop are as deep as they are long.
+  public static void chunks(CharSequence text, int from, int to, ChunkConsumer consumer) {
+    record Frame(CharSequence text, int from, int to) {}
+
+    Deque<Frame> pending = new ArrayDeque<>();
+    pending.push(new Frame(text, from, to));
+    while (!pending.isEmpty()) {
+      Frame frame = pending.pop();
+      if (frame.from() >= frame.to()) continue;
+      if (!(frame.text() instanceof Rope rope)) {
+        if (!consumer.accept(frame.text().toString(), frame.from(), frame.to())) return;
+        continue;
+      }
+      String flattened = rope.flat;
+      if (flattened != null) {
+        if (!consumer.accept(flattened, frame.from(), frame.to())) return;
+      } else if (rope.right == null) {
+        pending.push(new Frame(rope.left, rope.offset + frame.from(), rope.offset + frame.to()));
+      } else {
+        int split = rope.left.length();
+        if (frame.to() > split) {
+          pending.push(
+              new Frame(rope.right, Math.max(frame.from() - split, 0), frame.to() - split));
+        }
+        if (frame.from() < split) {
+          pending.push(new Frame(rope.left, frame.from(), Math.min(frame.to(), split)));
+        }
+      }
+    }
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= length) throw new IndexOutOfBoundsException(index);
+    String flattened = flat;
+    if (flattened != null) return flattened.charAt(index);
+    char[] found = new char[1];
+    chunks(
+        this,
+        index,
+        index + 1,
+        (chunk, from, to) -> {
+          found[0] = chunk.charAt(from);
+          return false;
+        });
+    return found[0];
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return slice(this, start, end);
+  }
+
+  @Override
+  public String toString() {
+    String flattened = flat;
+    if (flattened == null) {
+      StringBuilder builder = new StringBuilder(length);
+      chunks(
+          this,
+          0,
+          length,
+          (chunk, from, to) -> {
+            builder.append(chunk, from, to);
+            return true;
+          });
+      flattened = builder.toString();
+      flat = flattened;
+    }
+    return flattened;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof Rope rope
+        && length == rope.length
+        && toString().equals(rope.toString());
+  }
+
+  @Override
+  public int hashCode() {
+    return toString().hashCode();
+  }
+}
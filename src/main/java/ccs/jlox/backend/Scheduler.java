@@ -0,0 +1,189 @@
+package ccs.jlox.backend;
+
+import ccs.jlox.error.ErrorHandler;
+import ccs.jlox.error.RuntimeError;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Event loop shared by an interpreter and its forks. Lox code of the loop only runs while holding
+// the loop lock, so async tasks interleave at await points only and never race each other. Any
+// blocking wait (await, sleep, joins, channels) gives the lock up until it returns.
+// Tasks run on virtual threads when the runtime has them (Java 21+). This build targets Java 17,
+// which has neither virtual threads nor continuations, so there every pending await, sleep or
+// blocking native parks a pooled platform thread until it returns. Thousands of pending awaits
+// cost thousands of threads; only the loop itself is never held while waiting. Timers share a
+// single thread.
+public final class Scheduler {
+  private static final ExecutorService TASKS = newTaskExecutor("lox-task");
+  private static final ScheduledExecutorService TIMERS =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "lox-timer");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final ReentrantLock loop = new ReentrantLock();
+  private final Set<LoxFuture> pending = ConcurrentHashMap.newKeySet();
+  private final Queue<LoxFuture> failures = new ConcurrentLinkedQueue<>();
+  private final Set<CompletableFuture<?>> threads = ConcurrentHashMap.newKeySet();
+
+  // Virtual threads when the runtime has them (Java 21+), otherwise a pool that grows on demand
+  public static ExecutorService newTaskExecutor(String name) {
+    try {
+      return (ExecutorService)
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+      AtomicInteger threadCount = new AtomicInteger();
+      return Executors.newCachedThreadPool(
+          runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          });
+    }
+  }
+
+  // Runs `body` on the loop. The outermost caller also waits for every task started meanwhile.
+  <T> T run(Supplier<T> body, ErrorHandler errorHandler) {
+    loop.lock();
+    try {
+      T result = body.get();
+      if (loop.getHoldCount() == 1) drain(errorHandler);
+      return result;
+    } finally {
+      loop.unlock();
+    }
+  }
+
+  // Runs `body` on the loop and leaves waiting for its tasks to the outermost run. Imports use it,
+  // since a std.thread thread importing a module would otherwise drain, waiting for itself.
+  <T> T runNested(Supplier<T> body) {
+    loop.lock();
+    try {
+      return body.get();
+    } finally {
+      loop.unlock();
+    }
+  }
+
+  // `line` is where the task was started, for errors that don't carry one
+  public LoxFuture start(int line, Supplier<Object> task) {
+    LoxFuture future = track(new LoxFuture());
+    TASKS.execute(() -> runTask(line, task, future));
+    return future;
+  }
+
+  public LoxFuture startAfter(int line, long millis, Supplier<Object> task) {
+    LoxFuture future = track(new LoxFuture());
+    TIMERS.schedule(
+        () -> TASKS.execute(() -> runTask(line, task, future)), millis, TimeUnit.MILLISECONDS);
+    return future;
+  }
+
+  // Threads from std.thread run outside the loop, but drain waits for them too, so a thread that
+  // is never joined still finishes before the program exits
+  public void watch(CompletableFuture<?> thread) {
+    threads.add(thread);
+    thread.whenComplete((value, error) -> threads.remove(thread));
+  }
+
+  public LoxFuture timer(long millis) {
+    LoxFuture future = track(new LoxFuture());
+    TIMERS.schedule(() -> future.complete(null), millis, TimeUnit.MILLISECONDS);
+    return future;
+  }
+
+  // Completes with an array of the results, or with the first failure
+  public LoxFuture all(List<LoxFuture> futures) {
+    LoxFuture combined = track(new LoxFuture());
+    CompletableFuture.allOf(
+            futures.stream().map(LoxFuture::toCompletableFuture).toArray(CompletableFuture[]::new))
+        .whenComplete(
+            (ignored, error) -> {
+              LoxArray results = new LoxArray(futures.size());
+              try {
+                for (int i = 0; i < futures.size(); i++) results.set(i, futures.get(i).get());
+                combined.complete(results);
+              } catch (RuntimeError failure) {
+                combined.fail(failure);
+              }
+            });
+    return combined;
+  }
+
+  public Object await(Object value) {
+    if (!(value instanceof LoxFuture future)) return value;
+    if (future.isDone()) return future.get();
+    return yielding(future::get);
+  }
+
+  // Runs a blocking call with the loop released, so other tasks can make progress meanwhile
+  public <T> T yielding(Supplier<T> blocking) {
+    int holds = loop.isHeldByCurrentThread() ? loop.getHoldCount() : 0;
+    for (int i = 0; i < holds; i++) loop.unlock();
+    try {
+      return blocking.get();
+    } finally {
+      for (int i = 0; i < holds; i++) loop.lock();
+    }
+  }
+
+  // The future always completes, since drain waits for it
+  private void runTask(int line, Supplier<Object> task, LoxFuture future) {
+    loop.lock();
+    try {
+      future.complete(task.get());
+    } catch (RuntimeError error) {
+      future.fail(error);
+    } catch (StackOverflowError error) {
+      future.fail(new RuntimeError(line, "Stack overflow."));
+    } catch (Throwable error) {
+      future.fail(new RuntimeError(line, "Task failed: " + error + "."));
+    } finally {
+      loop.unlock();
+    }
+  }
+
+  private LoxFuture track(LoxFuture future) {
+    pending.add(future);
+    future
+        .toCompletableFuture()
+        .whenComplete(
+            (value, error) -> {
+              if (error != null) failures.add(future);
+              pending.remove(future);
+            });
+    return future;
+  }
+
+  private void drain(ErrorHandler errorHandler) {
+    while (!pending.isEmpty() || !threads.isEmpty()) {
+      for (LoxFuture future : List.copyOf(pending)) {
+        yielding(() -> future.toCompletableFuture().handle((value, error) -> null).join());
+      }
+      for (CompletableFuture<?> thread : List.copyOf(threads)) {
+        yielding(() -> thread.handle((value, error) -> null).join());
+      }
+    }
+    for (LoxFuture future = failures.poll(); future != null; future = failures.poll()) {
+      if (future.isObserved()) continue;
+      try {
+        future.get();
+      } catch (RuntimeError error) {
+        errorHandler.runtimeError(error);
+      }
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package ccs.jlox.backend;
+
+import ccs.jlox.error.RuntimeError;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// Copies values crossing an isolate boundary so the two heaps never share mutable state. Arrays,
+// lists and maps are copied deeply (keeping aliasing and cycles), channels are passed by reference
+// and immutable values as is, including persistent collections of immutable values. Anything tied
+// to an interpreter (functions, classes, instances, modules) is rejected.
+public final class Transfer {
+  private Transfer() {}
+
+  public static Object copy(Object value, int line) {
+    return copy(value, new IdentityHashMap<>(), line);
+  }
+
+  private static Object copy(Object value, Map<Object, Object> copies, int line) {
+    if (value == null
+        || value instanceof Boolean
+        || value instanceof Double
+        || value instanceof String
+        || value instanceof Rope
+        || value instanceof LoxChannel) {
+      return value;
+    }
+    if (value instanceof LoxArray array) {
+      LoxArray copy = (LoxArray) copies.get(array);
+      if (copy != null) return copy;
+      copy = new LoxArray(array.size());
+      copies.put(array, copy);
+      for (int i = 0; i < array.size(); i++) {
+        copy.set(i, copy(array.get(i), copies, line));
+      }
+      return copy;
+    }
+    if (value instanceof LoxList list) {
+      LoxList copy = (LoxList) copies.get(list);
+      if (copy != null) return copy;
+      copy = new LoxList();
+      copies.put(list, copy);
+      for (int i = 0; i < list.size(); i++) {
+        copy.add(copy(list.get(i), copies, line));
+      }
+      return copy;
+    }
+    if (value instanceof LoxMap map) {
+      LoxMap copy = (LoxMap) copies.get(map);
+      if (copy != null) return copy;
+      copy = new LoxMap();
+      copies.put(map, copy);
+      LoxMap target = copy;
+      map.forEach(
+          (key, element) -> target.put(copy(key, copies, line), copy(element, copies, line)));
+      return copy;
+    }
+    if (value instanceof PersistentVector vector) {
+      // Immutable, so only copied when some element is not shared as is
+      PersistentVector.Builder copy = new PersistentVector.Builder();
+      boolean[] changed = {false};
+      vector.forEach(
+          element -> {
+            Object elementCopy = copy(element, copies, line);
+            changed[0] |= elementCopy != element;
+            copy.add(elementCopy);
+          });
+      return changed[0] ? copy.build() : vector;
+    }
+    if (value instanceof PersistentMap map) {
+      PersistentMap.Builder copy = new PersistentMap.Builder();
+      boolean[] changed = {false};
+      map.forEach(
+          (key, element) -> {
+            Object keyCopy = copy(key, copies, line);
+            Object elementCopy = copy(element, copies, line);
+            changed[0] |= keyCopy != key || elementCopy != element;
+            copy.put(keyCopy, elementCopy);
+          });
+      return changed[0] ? copy.build() : map;
+    }
+    if (value instanceof Indexable array) {
+      return copies.computeIfAbsent(array, ignored -> array.slice(0, array.size()));
+    }
+    throw new RuntimeError(
+        line, "Only nil, booleans, numbers, strings, collections and channels can cross isolates.");
+  }
+}
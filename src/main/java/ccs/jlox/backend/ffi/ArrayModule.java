@@ -0,0 +1,97 @@
+package ccs.jlox.backend.ffi;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.backend.BoolArray;
+import ccs.jlox.backend.ByteArray;
+import ccs.jlox.backend.DoubleArray;
+import ccs.jlox.backend.Indexable;
+import ccs.jlox.backend.Interpreter;
+import ccs.jlox.error.RuntimeError;
+import java.util.List;
+import java.util.function.IntFunction;
+
+// std.array: typed arrays and bulk operations on any array. Copies, fills, slices and resizes are
+// a single native call backed by System.arraycopy and Arrays.fill instead of an interpreted loop.
+public final class ArrayModule implements NativeModule {
+  @Override
+  public String getName() {
+    return "std.array";
+  }
+
+  @Override
+  public List<NativeFunction> getFunctions() {
+    return List.of(
+        new BuiltinFunction("doubles", 1, create(DoubleArray::new)),
+        new BuiltinFunction("bools", 1, create(BoolArray::new)),
+        new BuiltinFunction("bytes", 1, create(ByteArray::new)),
+        new BuiltinFunction("len", 1, ArrayModule::len),
+        new BuiltinFunction("copy", 5, ArrayModule::copy),
+        new BuiltinFunction("fill", 2, ArrayModule::fill),
+        new BuiltinFunction("slice", 3, ArrayModule::slice),
+        new BuiltinFunction("resize", 2, ArrayModule::resize));
+  }
+
+  private static BuiltinFunction.Body create(IntFunction<Indexable> constructor) {
+    return (interpreter, callSite, args) ->
+        constructor.apply(integer(args.get(0), "Array size", callSite));
+  }
+
+  private static Object len(Interpreter interpreter, Token callSite, List<Object> args) {
+    return (double) array(args.get(0), callSite).size();
+  }
+
+  // copy(source, sourceIndex, destination, destinationIndex, length), like System.arraycopy
+  private static Object copy(Interpreter interpreter, Token callSite, List<Object> args) {
+    Indexable source = array(args.get(0), callSite);
+    int sourceIndex = integer(args.get(1), "Source index", callSite);
+    Indexable destination = array(args.get(2), callSite);
+    int destinationIndex = integer(args.get(3), "Destination index", callSite);
+    int length = integer(args.get(4), "Length", callSite);
+    if (source.getClass() != destination.getClass()) {
+      throw new RuntimeError(callSite.line(), "Can only copy between arrays of the same type.");
+    }
+    if ((long) sourceIndex + length > source.size()
+        || (long) destinationIndex + length > destination.size()) {
+      throw new RuntimeError(callSite.line(), "Copy range is out of bounds.");
+    }
+    System.arraycopy(
+        source.storage(), sourceIndex, destination.storage(), destinationIndex, length);
+    return null;
+  }
+
+  private static Object fill(Interpreter interpreter, Token callSite, List<Object> args) {
+    Indexable array = array(args.get(0), callSite);
+    array.fill(0, array.size(), args.get(1), callSite.line());
+    return null;
+  }
+
+  // Elements from `from` up to but not including `to`, as a new array
+  private static Object slice(Interpreter interpreter, Token callSite, List<Object> args) {
+    Indexable array = array(args.get(0), callSite);
+    int from = integer(args.get(1), "Slice start", callSite);
+    int to = integer(args.get(2), "Slice end", callSite);
+    if (from > to || to > array.size()) {
+      throw new RuntimeError(callSite.line(), "Slice range is out of bounds.");
+    }
+    return array.slice(from, to);
+  }
+
+  private static Object resize(Interpreter interpreter, Token callSite, List<Object> args) {
+    return array(args.get(0), callSite).resized(integer(args.get(1), "Array size", callSite));
+  }
+
+  private static Indexable array(Object object, Token callSite) {
+    if (object instanceof Indexable array) return array;
+    throw new RuntimeError(callSite.line(), "Expected an array.");
+  }
+
+  private static int integer(Object object, String what, Token callSite) {
+    if (object instanceof Double number
+        && number >= 0
+        && number <= Integer.MAX_VALUE
+        && number % 1 == 0) {
+      return number.intValue();
+    }
+    throw new RuntimeError(callSite.line(), what + " must be a non negative integer.");
+  }
+}
@@ -15,7 +15,7 @@ public final class AssertFunction implements LoxCallable, NativeFunction {
   @Override
   public Object call(Interpreter interpreter, Token callSite, List<Object> arguments) {
     boolean truthValue = (Boolean) arguments.get(0);
-    String failureMessage = (String) arguments.get(1);
+    String failureMessage = String.valueOf(arguments.get(1));
 
     if (!truthValue) {
       throw new RuntimeError(callSite.line(), failureMessage);
@@ -0,0 +1,44 @@
+package ccs.jlox.backend.ffi;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.backend.Interpreter;
+import ccs.jlox.backend.LoxCallable;
+import java.util.List;
+
+// Native function given by a lambda, for modules with many small functions
+public final class BuiltinFunction implements LoxCallable, NativeFunction {
+  private final String name;
+  private final int arity;
+  private final Body body;
+
+  public BuiltinFunction(String name, int arity, Body body) {
+    this.name = name;
+    this.arity = arity;
+    this.body = body;
+  }
+
+  @Override
+  public int arity() {
+    return arity;
+  }
+
+  @Override
+  public Object call(Interpreter interpreter, Token callSite, List<Object> arguments) {
+    return body.call(interpreter, callSite, arguments);
+  }
+
+  @Override
+  public String toString() {
+    return prettyName();
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @FunctionalInterface
+  public interface Body {
+    Object call(Interpreter interpreter, Token callSite, List<Object> arguments);
+  }
+}
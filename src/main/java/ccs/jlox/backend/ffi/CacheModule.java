@@ -0,0 +1,75 @@
+package ccs.jlox.backend.ffi;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.backend.LoxCache;
+import ccs.jlox.backend.LoxCache.Kind;
+import ccs.jlox.backend.LoxCallable;
+import ccs.jlox.error.RuntimeError;
+import java.util.List;
+
+// std.cache: bounded caches with get, put, getOrCompute, remove, contains and clear methods and
+// size, weight, hits, misses and evictions properties. lru, lfu and ttl bound the number of
+// entries; the weighted variants bound the total of weigher(key, value) over the entries instead.
+// ttl entries expire the given number of milliseconds after they were last written.
+public final class CacheModule implements NativeModule {
+  @Override
+  public String getName() {
+    return "std.cache";
+  }
+
+  @Override
+  public List<NativeFunction> getFunctions() {
+    return List.of(
+        new BuiltinFunction(
+            "lru", 1, (interpreter, callSite, args) -> cache(Kind.LRU, args, null, 0, callSite)),
+        new BuiltinFunction(
+            "lfu", 1, (interpreter, callSite, args) -> cache(Kind.LFU, args, null, 0, callSite)),
+        new BuiltinFunction(
+            "ttl",
+            2,
+            (interpreter, callSite, args) ->
+                cache(Kind.TTL, args, null, millis(args.get(1), callSite), callSite)),
+        new BuiltinFunction(
+            "lruWeighted",
+            2,
+            (interpreter, callSite, args) ->
+                cache(Kind.LRU, args, weigher(args.get(1), callSite), 0, callSite)),
+        new BuiltinFunction(
+            "lfuWeighted",
+            2,
+            (interpreter, callSite, args) ->
+                cache(Kind.LFU, args, weigher(args.get(1), callSite), 0, callSite)),
+        new BuiltinFunction(
+            "ttlWeighted",
+            3,
+            (interpreter, callSite, args) ->
+                cache(
+                    Kind.TTL,
+                    args,
+                    weigher(args.get(2), callSite),
+                    millis(args.get(1), callSite),
+                    callSite)));
+  }
+
+  private static LoxCache cache(
+      Kind kind, List<Object> args, LoxCallable weigher, long timeToLive, Token callSite) {
+    if (!(args.get(0) instanceof Double limit) || limit < 0) {
+      throw new RuntimeError(callSite.line(), "Cache limit must be a non negative number.");
+    }
+    return new LoxCache(kind, limit, weigher, timeToLive);
+  }
+
+  // In nanoseconds
+  private static long millis(Object object, Token callSite) {
+    if (object instanceof Double millis && millis > 0) {
+      return (long) (millis * 1_000_000L);
+    }
+    throw new RuntimeError(
+        callSite.line(), "Time to live must be a positive number of milliseconds.");
+  }
+
+  private static LoxCallable weigher(Object object, Token callSite) {
+    if (object instanceof LoxCallable weigher && weigher.arity() == 2) return weigher;
+    throw new RuntimeError(callSite.line(), "Expected a function taking 2 arguments.");
+  }
+}
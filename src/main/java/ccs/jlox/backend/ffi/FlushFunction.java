@@ -0,0 +1,30 @@
+package ccs.jlox.backend.ffi;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.backend.Interpreter;
+import ccs.jlox.backend.LoxCallable;
+import java.util.List;
+
+// print is buffered; flush() writes out everything printed so far
+public final class FlushFunction implements LoxCallable, NativeFunction {
+  @Override
+  public int arity() {
+    return 0;
+  }
+
+  @Override
+  public Object call(Interpreter interpreter, Token callSite, List<Object> arguments) {
+    interpreter.getOut().flush();
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    return prettyName();
+  }
+
+  @Override
+  public String getName() {
+    return "flush";
+  }
+}
@@ -0,0 +1,43 @@
+package ccs.jlox.backend.ffi;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.backend.LoxFile;
+import ccs.jlox.backend.MappedFile;
+import ccs.jlox.backend.Rope;
+import ccs.jlox.error.RuntimeError;
+import java.util.List;
+
+// std.io: file access. open(path, mode) returns a buffered text file with readLine (nil at the end
+// of the file), readAll, write, flush and close methods; mode is "r", "w" or "a". map(path) maps a
+// file read-only and returns an object with byte, bytes, slice, readLine, seek and close methods
+// and size and position properties, for reading files larger than the heap.
+public final class IoModule implements NativeModule {
+  @Override
+  public String getName() {
+    return "std.io";
+  }
+
+  @Override
+  public List<NativeFunction> getFunctions() {
+    return List.of(
+        new BuiltinFunction(
+            "open",
+            2,
+            (interpreter, callSite, args) ->
+                LoxFile.open(
+                    interpreter,
+                    string(args.get(0), "Path", callSite),
+                    string(args.get(1), "Mode", callSite),
+                    callSite.line())),
+        new BuiltinFunction(
+            "map",
+            1,
+            (interpreter, callSite, args) ->
+                MappedFile.map(string(args.get(0), "Path", callSite), callSite.line())));
+  }
+
+  private static String string(Object object, String what, Token callSite) {
+    if (Rope.isString(object)) return object.toString();
+    throw new RuntimeError(callSite.line(), what + " must be a string.");
+  }
+}
@@ -0,0 +1,158 @@
+package ccs.jlox.backend.ffi;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.backend.Interpreter;
+import ccs.jlox.backend.LoxArray;
+import ccs.jlox.backend.LoxCallable;
+import ccs.jlox.backend.LoxChannel;
+import ccs.jlox.backend.Transfer;
+import ccs.jlox.error.RuntimeError;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// std.isolate: shared-nothing parallelism. An isolate runs a top level function of an imported
+// module on its own interpreter and heap; isolates only talk through channels, which copy what
+// they carry. Nothing on the single-threaded path takes a lock because of this.
+public final class IsolateModule implements NativeModule {
+  private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+  // Isolates are usually CPU bound and may block on channels, so each gets a platform thread
+  private static final ExecutorService EXECUTOR =
+      Executors.newCachedThreadPool(
+          runnable -> {
+            Thread thread = new Thread(runnable, "lox-isolate-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  @Override
+  public String getName() {
+    return "std.isolate";
+  }
+
+  @Override
+  public List<NativeFunction> getFunctions() {
+    return List.of(
+        new BuiltinFunction("spawn", 2, IsolateModule::spawn),
+        new BuiltinFunction("join", 1, IsolateModule::join),
+        new BuiltinFunction("channel", 1, IsolateModule::channel),
+        new BuiltinFunction("send", 2, IsolateModule::send),
+        new BuiltinFunction("receive", 1, IsolateModule::receive),
+        new BuiltinFunction("close", 1, IsolateModule::close),
+        new BuiltinFunction("select", 1, IsolateModule::select));
+  }
+
+  private static Object spawn(Interpreter interpreter, Token callSite, List<Object> args) {
+    if (!(args.get(0) instanceof LoxCallable entry)) {
+      throw new RuntimeError(callSite.line(), "Can only spawn functions.");
+    }
+    return new Isolate(
+        CompletableFuture.supplyAsync(interpreter.isolate(entry, args.get(1), callSite), EXECUTOR));
+  }
+
+  private static Object join(Interpreter interpreter, Token callSite, List<Object> args) {
+    if (!(args.get(0) instanceof Isolate isolate)) {
+      throw new RuntimeError(callSite.line(), "Can only join isolates.");
+    }
+    return interpreter.getScheduler().yielding(isolate.result()::join);
+  }
+
+  private static Object channel(Interpreter interpreter, Token callSite, List<Object> args) {
+    if (!(args.get(0) instanceof Double capacity) || capacity < 1) {
+      throw new RuntimeError(callSite.line(), "Channel capacity must be a positive number.");
+    }
+    return new LoxChannel(capacity.intValue());
+  }
+
+  private static Object send(Interpreter interpreter, Token callSite, List<Object> args) {
+    LoxChannel channel = channel(args.get(0), callSite);
+    Object message = Transfer.copy(args.get(1), callSite.line());
+    if (!blocking(interpreter, callSite, () -> channel.send(message))) {
+      throw new RuntimeError(callSite.line(), "Cannot send on a closed channel.");
+    }
+    return null;
+  }
+
+  private static Object receive(Interpreter interpreter, Token callSite, List<Object> args) {
+    LoxChannel channel = channel(args.get(0), callSite);
+    return blocking(interpreter, callSite, channel::receive);
+  }
+
+  private static Object close(Interpreter interpreter, Token callSite, List<Object> args) {
+    channel(args.get(0), callSite).close();
+    return null;
+  }
+
+  // Receives from whichever channel of the array has a message first and returns [index, message],
+  // or nil once every channel is closed and drained
+  private static Object select(Interpreter interpreter, Token callSite, List<Object> args) {
+    if (!(args.get(0) instanceof LoxArray array)) {
+      throw new RuntimeError(callSite.line(), "Can only select over an array of channels.");
+    }
+    LoxChannel[] channels = new LoxChannel[array.size()];
+    for (int i = 0; i < channels.length; i++) {
+      channels[i] = channel(array.get(i), callSite);
+    }
+
+    return blocking(interpreter, callSite, () -> select(channels));
+  }
+
+  private static Object select(LoxChannel[] channels) throws InterruptedException {
+    Semaphore selector = new Semaphore(0);
+    for (LoxChannel channel : channels) channel.addSelector(selector);
+    try {
+      while (true) {
+        boolean allDrained = true;
+        for (int i = 0; i < channels.length; i++) {
+          Object message = channels[i].poll();
+          if (message != LoxChannel.EMPTY) {
+            LoxArray result = new LoxArray(2);
+            result.set(0, (double) i);
+            result.set(1, message);
+            return result;
+          }
+          allDrained &= channels[i].isDrained();
+        }
+        if (allDrained) return null;
+        selector.acquire();
+      }
+    } finally {
+      for (LoxChannel channel : channels) channel.removeSelector(selector);
+    }
+  }
+
+  private static LoxChannel channel(Object object, Token callSite) {
+    if (object instanceof LoxChannel channel) return channel;
+    throw new RuntimeError(callSite.line(), "Expected a channel.");
+  }
+
+  // Waits with the event loop released
+  private static <T> T blocking(Interpreter interpreter, Token callSite, Wait<T> wait) {
+    return interpreter
+        .getScheduler()
+        .yielding(
+            () -> {
+              try {
+                return wait.get();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeError(callSite.line(), "Interrupted while waiting on a channel.");
+              }
+            });
+  }
+
+  @FunctionalInterface
+  private interface Wait<T> {
+    T get() throws InterruptedException;
+  }
+
+  private record Isolate(CompletableFuture<Object> result) {
+    @Override
+    public String toString() {
+      return "<isolate>";
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package ccs.jlox.backend.ffi;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.backend.Indexable;
+import ccs.jlox.backend.JsonParser;
+import ccs.jlox.backend.JsonReader;
+import ccs.jlox.backend.LoxMap;
+import ccs.jlox.backend.PersistentMap;
+import ccs.jlox.backend.PersistentVector;
+import ccs.jlox.backend.Rope;
+import ccs.jlox.error.RuntimeError;
+import java.util.List;
+
+// std.json: parse(text) turns a JSON document into Lox values, with objects as std.map maps and
+// arrays as std.list lists. stringify(value) does the reverse for nil, booleans, numbers, strings,
+// maps with string keys, lists, arrays and the persistent collections, without whitespace.
+// reader(path) streams a file value by value with hasNext, next and close methods.
+public final class JsonModule implements NativeModule {
+  private static final int MAX_DEPTH = 512;
+
+  @Override
+  public String getName() {
+    return "std.json";
+  }
+
+  @Override
+  public List<NativeFunction> getFunctions() {
+    return List.of(
+        new BuiltinFunction(
+            "parse",
+            1,
+            (interpreter, callSite, args) -> {
+              if (!Rope.isString(args.get(0))) {
+                throw new RuntimeError(callSite.line(), "Can only parse a string.");
+              }
+              return new JsonParser(args.get(0).toString(), callSite.line()).parse();
+            }),
+        new BuiltinFunction(
+            "stringify",
+            1,
+            (interpreter, callSite, args) -> {
+              StringBuilder out = new StringBuilder();
+              write(args.get(0), out, 0, callSite);
+              return out.toString();
+            }),
+        new BuiltinFunction(
+            "reader",
+            1,
+            (interpreter, callSite, args) -> {
+              if (!Rope.isString(args.get(0))) {
+                throw new RuntimeError(callSite.line(), "Path must be a string.");
+              }
+              return JsonReader.open(args.get(0).toString(), callSite.line());
+            }));
+  }
+
+  private static void write(Object value, StringBuilder out, int depth, Token callSite) {
+    if (depth > MAX_DEPTH) {
+      throw new RuntimeError(callSite.line(), "Value is nested too deeply or contains a cycle.");
+    }
+    switch (value) {
+      case null -> out.append("null");
+      case Boolean bool -> out.append(bool);
+      case Double number -> {
+        if (number.isNaN() || number.isInfinite()) {
+          throw new RuntimeError(callSite.line(), "Can't convert NaN or infinity to JSON.");
+        }
+        out.append(PrintFunction.stringify(number));
+      }
+      case String string -> quote(string, 0, string.length(), out);
+      case Rope rope -> {
+        out.append('"');
+        Rope.chunks(
+            rope,
+            0,
+            rope.length(),
+            (chunk, from, to) -> {
+              escape(chunk, from, to, out);
+              return true;
+            });
+        out.append('"');
+      }
+      case LoxMap map -> {
+        out.append('{');
+        boolean[] first = {true};
+        map.forEach(
+            (key, element) -> {
+              if (!first[0]) out.append(',');
+              first[0] = false;
+              member(key, element, out, depth, callSite);
+            });
+        out.append('}');
+      }
+      case PersistentMap map -> {
+        out.append('{');
+        boolean[] first = {true};
+        map.forEach(
+            (key, element) -> {
+              if (!first[0]) out.append(',');
+              first[0] = false;
+              member(key, element, out, depth, callSite);
+            });
+        out.append('}');
+      }
+      case PersistentVector vector -> {
+        out.append('[');
+        boolean[] first = {true};
+        vector.forEach(
+            element -> {
+              if (!first[0]) out.append(',');
+              first[0] = false;
+              write(element, out, depth + 1, callSite);
+            });
+        out.append(']');
+      }
+      case Indexable array -> {
+        out.append('[');
+        for (int i = 0; i < array.size(); i++) {
+          if (i > 0) out.append(',');
+          write(array.get(i), out, depth + 1, callSite);
+        }
+        out.append(']');
+      }
+      default -> throw new RuntimeError(
+          callSite.line(), "Can't convert " + PrintFunction.stringify(value) + " to JSON.");
+    }
+  }
+
+  private static void member(
+      Object key, Object value, StringBuilder out, int depth, Token callSite) {
+    if (!(key instanceof String string)) {
+      throw new RuntimeError(callSite.line(), "Object keys must be strings.");
+    }
+    quote(string, 0, string.length(), out);
+    out.append(':');
+    write(value, out, depth + 1, callSite);
+  }
+
+  private static void quote(String string, int from, int to, StringBuilder out) {
+    out.append('"');
+    escape(string, from, to, out);
+    out.append('"');
+  }
+
+  // Copies runs of plain characters at once
+  private static void escape(String string, int from, int to, StringBuilder out) {
+    int run = from;
+    for (int i = from; i < to; i++) {
+      char c = string.charAt(i);
+      if (c >= 0x20 && c != '"' && c != '\\') continue;
+      out.append(string, run, i);
+      switch (c) {
+        case '"' -> out.append("\\\"");
+        case '\\' -> out.append("\\\\");
+        case '\n' -> out.append("\\n");
+        case '\r' -> out.append("\\r");
+        case '\t' -> out.append("\\t");
+        case '\b' -> out.append("\\b");
+        case '\f' -> out.append("\\f");
+        default -> out.append(String.format("\\u%04x", (int) c));
+      }
+      run = i + 1;
+    }
+    out.append(string, run, to);
+  }
+}
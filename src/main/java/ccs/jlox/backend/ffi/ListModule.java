@@ -0,0 +1,18 @@
+package ccs.jlox.backend.ffi;
+
+import ccs.jlox.backend.LoxList;
+import java.util.List;
+
+// std.list: List() creates a growable list with add, remove, get, set, insert, clear, addAll,
+// indexOf, forEach and toArray methods and a size property.
+public final class ListModule implements NativeModule {
+  @Override
+  public String getName() {
+    return "std.list";
+  }
+
+  @Override
+  public List<NativeFunction> getFunctions() {
+    return List.of(new BuiltinFunction("List", 0, (interpreter, callSite, args) -> new LoxList()));
+  }
+}
@@ -0,0 +1,18 @@
+package ccs.jlox.backend.ffi;
+
+import ccs.jlox.backend.LoxMap;
+import java.util.List;
+
+// std.map: Map() creates a hash map with get, put, remove, contains, keys, values and clear methods
+// and a size property. Missing keys read as nil and nil can't be used as a key.
+public final class MapModule implements NativeModule {
+  @Override
+  public String getName() {
+    return "std.map";
+  }
+
+  @Override
+  public List<NativeFunction> getFunctions() {
+    return List.of(new BuiltinFunction("Map", 0, (interpreter, callSite, args) -> new LoxMap()));
+  }
+}
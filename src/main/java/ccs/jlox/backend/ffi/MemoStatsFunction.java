@@ -0,0 +1,39 @@
+package ccs.jlox.backend.ffi;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.backend.Interpreter;
+import ccs.jlox.backend.LoxArray;
+import ccs.jlox.backend.LoxCallable;
+import ccs.jlox.backend.MemoCache;
+import java.util.List;
+import java.util.Optional;
+
+// [hits, misses, entries] of a memoized function, or nil for any other value
+public final class MemoStatsFunction implements LoxCallable, NativeFunction {
+  @Override
+  public int arity() {
+    return 1;
+  }
+
+  @Override
+  public Object call(Interpreter interpreter, Token callSite, List<Object> arguments) {
+    if (!(arguments.get(0) instanceof LoxCallable callable)) return null;
+    Optional<MemoCache> memo = MemoCache.of(callable);
+    if (memo.isEmpty()) return null;
+    LoxArray stats = new LoxArray(3);
+    stats.set(0, (double) memo.get().hits());
+    stats.set(1, (double) memo.get().misses());
+    stats.set(2, (double) memo.get().size());
+    return stats;
+  }
+
+  @Override
+  public String toString() {
+    return prettyName();
+  }
+
+  @Override
+  public String getName() {
+    return "memoStats";
+  }
+}
@@ -0,0 +1,11 @@
+package ccs.jlox.backend.ffi;
+
+import java.util.List;
+
+// A module implemented in Java. Importing it does not compile anything; the module's globals are
+// its functions.
+public interface NativeModule {
+  String getName();
+
+  List<NativeFunction> getFunctions();
+}
@@ -0,0 +1,36 @@
+package ccs.jlox.backend.ffi;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public final class NativeModules {
+  private static final Map<String, NativeModule> MODULES =
+      Stream.of(
+              new ThreadModule(),
+              new IsolateModule(),
+              new TaskModule(),
+              new NumericModule(),
+              new ArrayModule(),
+              new ListModule(),
+              new MapModule(),
+              new PersistentModule(),
+              new SortModule(),
+              new CacheModule(),
+              new StringModule(),
+              new IoModule(),
+              new JsonModule())
+          .collect(Collectors.toUnmodifiableMap(NativeModule::getName, Function.identity()));
+
+  private NativeModules() {}
+
+  public static boolean contains(String fullyQualifiedName) {
+    return MODULES.containsKey(fullyQualifiedName);
+  }
+
+  public static Optional<NativeModule> get(String fullyQualifiedName) {
+    return Optional.ofNullable(MODULES.get(fullyQualifiedName));
+  }
+}
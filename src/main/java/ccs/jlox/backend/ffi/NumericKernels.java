@@ -0,0 +1,26 @@
+package ccs.jlox.backend.ffi;
+
+// Loops behind std.numeric. `out` may be one of the inputs.
+interface NumericKernels {
+  enum Op {
+    ADD,
+    SUB,
+    MUL,
+    DIV
+  }
+
+  void lanewise(Op op, double[] a, double[] b, double[] out);
+
+  void lanewise(Op op, double[] a, double b, double[] out);
+
+  double dot(double[] a, double[] b);
+
+  double sum(double[] a);
+
+  // Both expect a non empty array
+  double min(double[] a);
+
+  double max(double[] a);
+
+  void prefixSum(double[] a, double[] out);
+}
@@ -0,0 +1,160 @@
+package ccs.jlox.backend.ffi;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.backend.DoubleArray;
+import ccs.jlox.backend.Indexable;
+import ccs.jlox.backend.Interpreter;
+import ccs.jlox.backend.LoxArray;
+import ccs.jlox.backend.ffi.NumericKernels.Op;
+import ccs.jlox.error.RuntimeError;
+import java.util.List;
+
+// std.numeric: arrays of unboxed numbers and whole-array kernels over them. Element-wise
+// operations take either two arrays of the same size or an array and a number, and return a new
+// array. The kernels use the incubating Vector API when the JVM runs with
+// --add-modules jdk.incubator.vector and plain loops otherwise; jlox.vector=false forces the loops.
+public final class NumericModule implements NativeModule {
+  private static volatile NumericKernels kernels =
+      kernels(Boolean.parseBoolean(System.getProperty("jlox.vector", "true")));
+
+  public static void setVectorized(boolean vectorized) {
+    kernels = kernels(vectorized);
+  }
+
+  private static NumericKernels kernels(boolean vectorized) {
+    if (vectorized && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+      return new VectorKernels();
+    }
+    return new ScalarKernels();
+  }
+
+  @Override
+  public String getName() {
+    return "std.numeric";
+  }
+
+  @Override
+  public List<NativeFunction> getFunctions() {
+    return List.of(
+        new BuiltinFunction("zeros", 1, NumericModule::zeros),
+        new BuiltinFunction("fromArray", 1, NumericModule::fromArray),
+        new BuiltinFunction("toArray", 1, NumericModule::toArray),
+        new BuiltinFunction("size", 1, NumericModule::size),
+        new BuiltinFunction("get", 2, NumericModule::get),
+        new BuiltinFunction("set", 3, NumericModule::set),
+        new BuiltinFunction(
+            "add", 2, (interpreter, callSite, args) -> lanewise(Op.ADD, args, callSite)),
+        new BuiltinFunction(
+            "sub", 2, (interpreter, callSite, args) -> lanewise(Op.SUB, args, callSite)),
+        new BuiltinFunction(
+            "mul", 2, (interpreter, callSite, args) -> lanewise(Op.MUL, args, callSite)),
+        new BuiltinFunction(
+            "div", 2, (interpreter, callSite, args) -> lanewise(Op.DIV, args, callSite)),
+        new BuiltinFunction("dot", 2, NumericModule::dot),
+        new BuiltinFunction("sum", 1, NumericModule::sum),
+        new BuiltinFunction("min", 1, NumericModule::min),
+        new BuiltinFunction("max", 1, NumericModule::max),
+        new BuiltinFunction("prefixSum", 1, NumericModule::prefixSum));
+  }
+
+  private static Object zeros(Interpreter interpreter, Token callSite, List<Object> args) {
+    if (!(args.get(0) instanceof Double size) || size < 0 || size != Math.floor(size)) {
+      throw new RuntimeError(callSite.line(), "Size must be a non negative integer.");
+    }
+    return new DoubleArray(size.intValue());
+  }
+
+  private static Object fromArray(Interpreter interpreter, Token callSite, List<Object> args) {
+    if (!(args.get(0) instanceof LoxArray array)) {
+      throw new RuntimeError(callSite.line(), "Expected an array.");
+    }
+    double[] values = new double[array.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = number(array.get(i), callSite);
+    }
+    return new DoubleArray(values);
+  }
+
+  private static Object toArray(Interpreter interpreter, Token callSite, List<Object> args) {
+    double[] values = doubles(args.get(0), callSite);
+    LoxArray array = new LoxArray(values.length);
+    for (int i = 0; i < values.length; i++) array.set(i, values[i]);
+    return array;
+  }
+
+  private static Object size(Interpreter interpreter, Token callSite, List<Object> args) {
+    return (double) doubles(args.get(0), callSite).length;
+  }
+
+  private static Object get(Interpreter interpreter, Token callSite, List<Object> args) {
+    DoubleArray array = array(args.get(0), callSite);
+    return array.get(Indexable.checkIndex(array, args.get(1), callSite.line()));
+  }
+
+  private static Object set(Interpreter interpreter, Token callSite, List<Object> args) {
+    DoubleArray array = array(args.get(0), callSite);
+    int index = Indexable.checkIndex(array, args.get(1), callSite.line());
+    array.set(index, args.get(2), callSite.line());
+    return null;
+  }
+
+  private static Object lanewise(Op op, List<Object> args, Token callSite) {
+    double[] a = doubles(args.get(0), callSite);
+    double[] out = new double[a.length];
+    if (args.get(1) instanceof Double scalar) {
+      kernels.lanewise(op, a, scalar, out);
+    } else {
+      kernels.lanewise(op, a, sameSize(a, args.get(1), callSite), out);
+    }
+    return new DoubleArray(out);
+  }
+
+  private static Object dot(Interpreter interpreter, Token callSite, List<Object> args) {
+    double[] a = doubles(args.get(0), callSite);
+    return kernels.dot(a, sameSize(a, args.get(1), callSite));
+  }
+
+  private static Object sum(Interpreter interpreter, Token callSite, List<Object> args) {
+    return kernels.sum(doubles(args.get(0), callSite));
+  }
+
+  // nil for an empty array
+  private static Object min(Interpreter interpreter, Token callSite, List<Object> args) {
+    double[] values = doubles(args.get(0), callSite);
+    return values.length == 0 ? null : kernels.min(values);
+  }
+
+  private static Object max(Interpreter interpreter, Token callSite, List<Object> args) {
+    double[] values = doubles(args.get(0), callSite);
+    return values.length == 0 ? null : kernels.max(values);
+  }
+
+  private static Object prefixSum(Interpreter interpreter, Token callSite, List<Object> args) {
+    double[] values = doubles(args.get(0), callSite);
+    double[] out = new double[values.length];
+    kernels.prefixSum(values, out);
+    return new DoubleArray(out);
+  }
+
+  private static double[] doubles(Object object, Token callSite) {
+    return array(object, callSite).values();
+  }
+
+  private static DoubleArray array(Object object, Token callSite) {
+    if (object instanceof DoubleArray array) return array;
+    throw new RuntimeError(callSite.line(), "Expected a double array.");
+  }
+
+  private static double[] sameSize(double[] a, Object object, Token callSite) {
+    double[] b = doubles(object, callSite);
+    if (a.length != b.length) {
+      throw new RuntimeError(callSite.line(), "Arrays must have the same size.");
+    }
+    return b;
+  }
+
+  private static double number(Object object, Token callSite) {
+    if (object instanceof Double number) return number;
+    throw new RuntimeError(callSite.line(), "Operand must be a number.");
+  }
+}
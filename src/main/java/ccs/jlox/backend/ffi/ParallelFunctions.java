@@ -0,0 +1,178 @@
+package ccs.jlox.backend.ffi;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.backend.Interpreter;
+import ccs.jlox.backend.LoxArray;
+import ccs.jlox.backend.LoxCallable;
+import ccs.jlox.error.RuntimeError;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+// Global parallelMap, parallelFilter, parallelReduce and parallelForEach. Arrays of at least
+// `threshold` elements are split into chunks on the common fork-join pool, each chunk running on
+// its own forked interpreter; smaller ones are processed in order on the caller.
+// Contract: the callback must not assign to variables declared outside of it (this is checked)
+// and must not mutate objects or arrays other threads can reach (this is not). parallelReduce
+// additionally needs an associative function and an identity as its initial value, since every
+// chunk starts from it.
+public final class ParallelFunctions {
+  private static volatile int threshold = Integer.getInteger("jlox.parallelThreshold", 1024);
+
+  public static final List<NativeFunction> FUNCTIONS =
+      List.of(
+          new BuiltinFunction("parallelMap", 2, ParallelFunctions::map),
+          new BuiltinFunction("parallelFilter", 2, ParallelFunctions::filter),
+          new BuiltinFunction("parallelReduce", 3, ParallelFunctions::reduce),
+          new BuiltinFunction("parallelForEach", 2, ParallelFunctions::forEach));
+
+  private ParallelFunctions() {}
+
+  public static void setThreshold(int size) {
+    threshold = size;
+  }
+
+  private static Object map(Interpreter interpreter, Token callSite, List<Object> args) {
+    LoxArray array = array(args.get(0), callSite);
+    LoxCallable callable = callable(interpreter, args.get(1), 1, callSite);
+    LoxArray result = new LoxArray(array.size());
+    run(
+        interpreter,
+        array.size(),
+        (worker, from, to) -> {
+          for (int i = from; i < to; i++) {
+            result.set(i, callable.call(worker, callSite, List.of(array.get(i))));
+          }
+          return null;
+        },
+        (left, right) -> null);
+    return result;
+  }
+
+  private static Object filter(Interpreter interpreter, Token callSite, List<Object> args) {
+    LoxArray array = array(args.get(0), callSite);
+    LoxCallable callable = callable(interpreter, args.get(1), 1, callSite);
+    List<Object> kept =
+        run(
+            interpreter,
+            array.size(),
+            (worker, from, to) -> {
+              List<Object> chunk = new ArrayList<>();
+              for (int i = from; i < to; i++) {
+                Object element = array.get(i);
+                if (Interpreter.isTruthy(callable.call(worker, callSite, List.of(element)))) {
+                  chunk.add(element);
+                }
+              }
+              return chunk;
+            },
+            (left, right) -> {
+              left.addAll(right);
+              return left;
+            });
+    LoxArray result = new LoxArray(kept.size());
+    for (int i = 0; i < kept.size(); i++) result.set(i, kept.get(i));
+    return result;
+  }
+
+  private static Object reduce(Interpreter interpreter, Token callSite, List<Object> args) {
+    LoxArray array = array(args.get(0), callSite);
+    LoxCallable callable = callable(interpreter, args.get(1), 2, callSite);
+    Object identity = args.get(2);
+    return run(
+        interpreter,
+        array.size(),
+        (worker, from, to) -> {
+          Object accumulator = identity;
+          for (int i = from; i < to; i++) {
+            accumulator = callable.call(worker, callSite, List.of(accumulator, array.get(i)));
+          }
+          return accumulator;
+        },
+        (left, right) -> callable.call(interpreter.fork(), callSite, List.of(left, right)));
+  }
+
+  private static Object forEach(Interpreter interpreter, Token callSite, List<Object> args) {
+    LoxArray array = array(args.get(0), callSite);
+    LoxCallable callable = callable(interpreter, args.get(1), 1, callSite);
+    run(
+        interpreter,
+        array.size(),
+        (worker, from, to) -> {
+          for (int i = from; i < to; i++) {
+            callable.call(worker, callSite, List.of(array.get(i)));
+          }
+          return null;
+        },
+        (left, right) -> null);
+    return null;
+  }
+
+  private static <T> T run(
+      Interpreter interpreter, int size, Chunk<T> chunk, BinaryOperator<T> combine) {
+    if (size < threshold) return chunk.process(interpreter, 0, size);
+    // A few chunks per worker, so that uneven callbacks still balance out
+    int grain = Math.max(1, size / (ForkJoinPool.getCommonPoolParallelism() * 4));
+    // Workers run outside the loop like std.thread threads, and tasks the callbacks start or wait
+    // for need the loop, so the caller gives it up while waiting
+    Split<T> task = new Split<>(interpreter, chunk, combine, 0, size, grain);
+    return interpreter.getScheduler().yielding(() -> ForkJoinPool.commonPool().invoke(task));
+  }
+
+  private static LoxArray array(Object object, Token callSite) {
+    if (object instanceof LoxArray array) return array;
+    throw new RuntimeError(callSite.line(), "Expected an array.");
+  }
+
+  private static LoxCallable callable(
+      Interpreter interpreter, Object object, int arity, Token callSite) {
+    if (!(object instanceof LoxCallable callable) || callable.arity() != arity) {
+      throw new RuntimeError(
+          callSite.line(), "Expected a function taking " + arity + " arguments.");
+    }
+    interpreter.checkNoOuterWrites(callable, callSite);
+    return callable;
+  }
+
+  @FunctionalInterface
+  private interface Chunk<T> {
+    T process(Interpreter worker, int from, int to);
+  }
+
+  @SuppressWarnings("serial")
+  private static final class Split<T> extends RecursiveTask<T> {
+    private final Interpreter interpreter;
+    private final Chunk<T> chunk;
+    private final BinaryOperator<T> combine;
+    private final int from;
+    private final int to;
+    private final int grain;
+
+    Split(
+        Interpreter interpreter,
+        Chunk<T> chunk,
+        BinaryOperator<T> combine,
+        int from,
+        int to,
+        int grain) {
+      this.interpreter = interpreter;
+      this.chunk = chunk;
+      this.combine = combine;
+      this.from = from;
+      this.to = to;
+      this.grain = grain;
+    }
+
+    @Override
+    protected T compute() {
+      if (to - from <= grain) return chunk.process(interpreter.fork(), from, to);
+      int middle = (from + to) >>> 1;
+      Split<T> left = new Split<>(interpreter, chunk, combine, from, middle, grain);
+      left.fork();
+      T right = new Split<>(interpreter, chunk, combine, middle, to, grain).compute();
+      return combine.apply(left.join(), right);
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package ccs.jlox.backend.ffi;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.backend.Indexable;
+import ccs.jlox.backend.Interpreter;
+import ccs.jlox.backend.LoxMap;
+import ccs.jlox.backend.PersistentMap;
+import ccs.jlox.backend.PersistentVector;
+import ccs.jlox.error.RuntimeError;
+import java.util.List;
+
+// std.persistent: immutable vectors and maps. Their update methods (set, push, pop, put, remove)
+// return a new collection sharing most of its structure with the old one. vectorOf and mapOf build
+// a collection from an array, list or std.map in a single pass.
+public final class PersistentModule implements NativeModule {
+  @Override
+  public String getName() {
+    return "std.persistent";
+  }
+
+  @Override
+  public List<NativeFunction> getFunctions() {
+    return List.of(
+        new BuiltinFunction("vector", 0, (interpreter, callSite, args) -> PersistentVector.EMPTY),
+        new BuiltinFunction("vectorOf", 1, PersistentModule::vectorOf),
+        new BuiltinFunction("map", 0, (interpreter, callSite, args) -> PersistentMap.EMPTY),
+        new BuiltinFunction("mapOf", 1, PersistentModule::mapOf));
+  }
+
+  private static Object vectorOf(Interpreter interpreter, Token callSite, List<Object> args) {
+    if (!(args.get(0) instanceof Indexable array)) {
+      throw new RuntimeError(callSite.line(), "Expected an array or a list.");
+    }
+    PersistentVector.Builder builder = new PersistentVector.Builder();
+    for (int i = 0; i < array.size(); i++) builder.add(array.get(i));
+    return builder.build();
+  }
+
+  private static Object mapOf(Interpreter interpreter, Token callSite, List<Object> args) {
+    if (!(args.get(0) instanceof LoxMap map)) {
+      throw new RuntimeError(callSite.line(), "Expected a map.");
+    }
+    PersistentMap.Builder builder = new PersistentMap.Builder();
+    map.forEach(builder::put);
+    return builder.build();
+  }
+}
@@ -14,7 +14,7 @@ public final class PrintFunction implements LoxCallable, NativeFunction {
   @Override
   public Object call(Interpreter interpreter, Token callSite, List<Object> arguments) {
     Object object = arguments.get(0);
-    System.out.println(stringify(object));
+    interpreter.getOut().println(stringify(object));
     return null;
   }
 
@@ -28,7 +28,7 @@ public final class PrintFunction implements LoxCallable, NativeFunction {
     return "print";
   }
 
-  private static String stringify(Object object) {
+  public static String stringify(Object object) {
     if (object == null) return "nil";
     if (object instanceof Double) {
       String text = object.toString();
@@ -0,0 +1,107 @@
+package ccs.jlox.backend.ffi;
+
+// Plain loops, used when the vector module is not available
+final class ScalarKernels implements NumericKernels {
+  @Override
+  public void lanewise(Op op, double[] a, double[] b, double[] out) {
+    lanewise(op, a, b, out, 0);
+  }
+
+  @Override
+  public void lanewise(Op op, double[] a, double b, double[] out) {
+    lanewise(op, a, b, out, 0);
+  }
+
+  @Override
+  public double dot(double[] a, double[] b) {
+    return dot(a, b, 0);
+  }
+
+  @Override
+  public double sum(double[] a) {
+    return sum(a, 0);
+  }
+
+  @Override
+  public double min(double[] a) {
+    return min(a, 0, a[0]);
+  }
+
+  @Override
+  public double max(double[] a) {
+    return max(a, 0, a[0]);
+  }
+
+  @Override
+  public void prefixSum(double[] a, double[] out) {
+    scan(a, out);
+  }
+
+  // The helpers below are shared with the vector kernels, which finish their tails from `from`
+
+  static void scan(double[] a, double[] out) {
+    double total = 0;
+    for (int i = 0; i < a.length; i++) {
+      total += a[i];
+      out[i] = total;
+    }
+  }
+
+  static void lanewise(Op op, double[] a, double[] b, double[] out, int from) {
+    switch (op) {
+      case ADD -> {
+        for (int i = from; i < a.length; i++) out[i] = a[i] + b[i];
+      }
+      case SUB -> {
+        for (int i = from; i < a.length; i++) out[i] = a[i] - b[i];
+      }
+      case MUL -> {
+        for (int i = from; i < a.length; i++) out[i] = a[i] * b[i];
+      }
+      case DIV -> {
+        for (int i = from; i < a.length; i++) out[i] = a[i] / b[i];
+      }
+    }
+  }
+
+  static void lanewise(Op op, double[] a, double b, double[] out, int from) {
+    switch (op) {
+      case ADD -> {
+        for (int i = from; i < a.length; i++) out[i] = a[i] + b;
+      }
+      case SUB -> {
+        for (int i = from; i < a.length; i++) out[i] = a[i] - b;
+      }
+      case MUL -> {
+        for (int i = from; i < a.length; i++) out[i] = a[i] * b;
+      }
+      case DIV -> {
+        for (int i = from; i < a.length; i++) out[i] = a[i] / b;
+      }
+    }
+  }
+
+  static double dot(double[] a, double[] b, int from) {
+    double total = 0;
+    for (int i = from; i < a.length; i++) total += a[i] * b[i];
+    return total;
+  }
+
+  static double sum(double[] a, int from) {
+    double total = 0;
+    for (int i = from; i < a.length; i++) total += a[i];
+    return total;
+  }
+
+  static double min(double[] a, int from, double initial) {
+    double result = initial;
+    for (int i = from; i < a.length; i++) result = Math.min(result, a[i]);
+    return result;
+  }
+
+  static double max(double[] a, int from, double initial) {
+    double result = initial;
+    for (int i = from; i < a.length; i++) result = Math.max(result, a[i]);
+    return result;
+  }
+}
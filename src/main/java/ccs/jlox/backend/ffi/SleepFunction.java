@@ -3,6 +3,7 @@ package ccs.jlox.backend.ffi;
 import ccs.jlox.ast.Token;
 import ccs.jlox.backend.Interpreter;
 import ccs.jlox.backend.LoxCallable;
+import ccs.jlox.backend.Scheduler;
 import java.util.List;
 
 public class SleepFunction implements LoxCallable, NativeFunction {
@@ -14,12 +15,9 @@ public class SleepFunction implements LoxCallable, NativeFunction {
   @Override
   public Object call(Interpreter interpreter, Token callSite, List<Object> arguments) {
     double millis = (double) arguments.get(0);
-    try {
-      Thread.sleep((long) millis);
-      return null;
-    } catch (InterruptedException e) {
-      throw new RuntimeException(e);
-    }
+    // Waits on a timer so the event loop keeps running other tasks meanwhile
+    Scheduler scheduler = interpreter.getScheduler();
+    return scheduler.await(scheduler.timer((long) millis));
   }
 
   @Override
@@ -0,0 +1,213 @@
+package ccs.jlox.backend.ffi;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.backend.DoubleArray;
+import ccs.jlox.backend.Indexable;
+import ccs.jlox.backend.Interpreter;
+import ccs.jlox.backend.LoxArray;
+import ccs.jlox.backend.LoxCallable;
+import ccs.jlox.backend.Rope;
+import ccs.jlox.error.RuntimeError;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// std.sort: sorting, searching and selection over arrays, lists and double arrays. sort,
+// binarySearch, nthElement and topK use the natural order and need elements that are all numbers
+// or all strings; sorting numbers goes through a double[] and strings are compared directly, so
+// neither calls back into Lox. sortBy takes a comparator returning a negative number, zero or a
+// positive number and runs TimSort, which is stable.
+public final class SortModule implements NativeModule {
+  private static final Comparator<Object> NUMBERS = Comparator.comparing(Double.class::cast);
+  private static final Comparator<Object> STRINGS = Comparator.comparing(String.class::cast);
+
+  @Override
+  public String getName() {
+    return "std.sort";
+  }
+
+  @Override
+  public List<NativeFunction> getFunctions() {
+    return List.of(
+        new BuiltinFunction("sort", 1, SortModule::sort),
+        new BuiltinFunction("sortBy", 2, SortModule::sortBy),
+        new BuiltinFunction("binarySearch", 2, SortModule::binarySearch),
+        new BuiltinFunction("nthElement", 2, SortModule::nthElement),
+        new BuiltinFunction("topK", 2, SortModule::topK));
+  }
+
+  private static Object sort(Interpreter interpreter, Token callSite, List<Object> args) {
+    Indexable array = array(args.get(0), callSite);
+    if (array instanceof DoubleArray doubles) {
+      Arrays.sort(doubles.values());
+      return null;
+    }
+    Object[] elements = elements(array, callSite);
+    int size = array.size();
+    if (naturalOrder(elements, size, callSite) == NUMBERS) {
+      double[] numbers = new double[size];
+      for (int i = 0; i < size; i++) numbers[i] = (Double) elements[i];
+      Arrays.sort(numbers);
+      for (int i = 0; i < size; i++) elements[i] = numbers[i];
+    } else {
+      Arrays.sort(elements, 0, size);
+    }
+    return null;
+  }
+
+  // The comparator is called with the same argument list every time, refilled in place
+  private static Object sortBy(Interpreter interpreter, Token callSite, List<Object> args) {
+    Indexable array = array(args.get(0), callSite);
+    if (!(args.get(1) instanceof LoxCallable comparator) || comparator.arity() != 2) {
+      throw new RuntimeError(callSite.line(), "Expected a function taking 2 arguments.");
+    }
+    Object[] pair = new Object[2];
+    List<Object> arguments = Arrays.asList(pair);
+    Comparator<Object> order =
+        (a, b) -> {
+          pair[0] = a;
+          pair[1] = b;
+          if (comparator.call(interpreter, callSite, arguments) instanceof Double result) {
+            return result < 0 ? -1 : result > 0 ? 1 : 0;
+          }
+          throw new RuntimeError(callSite.line(), "Comparator must return a number.");
+        };
+    try {
+      if (array instanceof DoubleArray doubles) {
+        double[] values = doubles.values();
+        Object[] boxed = new Object[values.length];
+        for (int i = 0; i < values.length; i++) boxed[i] = values[i];
+        Arrays.sort(boxed, order);
+        for (int i = 0; i < values.length; i++) values[i] = (Double) boxed[i];
+      } else {
+        Arrays.sort(elements(array, callSite), 0, array.size(), order);
+      }
+    } catch (IllegalArgumentException e) {
+      throw new RuntimeError(callSite.line(), "Comparator does not define a consistent order.");
+    }
+    return null;
+  }
+
+  // Index of the value in a sorted array, or -(insertion point) - 1 when it is missing
+  private static Object binarySearch(Interpreter interpreter, Token callSite, List<Object> args) {
+    Indexable array = array(args.get(0), callSite);
+    Object value = Rope.normalize(args.get(1));
+    if (array instanceof DoubleArray doubles) {
+      return (double) Arrays.binarySearch(doubles.values(), number(value, callSite));
+    }
+    Object[] elements = elements(array, callSite);
+    Comparator<Object> order = naturalOrder(elements, array.size(), callSite);
+    if (order == NUMBERS ? !(value instanceof Double) : !(value instanceof String)) {
+      throw new RuntimeError(
+          callSite.line(), "Can only search for a value of the same type as the elements.");
+    }
+    return (double) Arrays.binarySearch(elements, 0, array.size(), value, order);
+  }
+
+  // Moves the element that would be at index n after sorting there, with no larger element
+  // before it and no smaller element after it, and returns it. Quickselect, O(n) on average.
+  private static Object nthElement(Interpreter interpreter, Token callSite, List<Object> args) {
+    Indexable array = array(args.get(0), callSite);
+    int n = Indexable.checkIndex(array, args.get(1), callSite.line());
+    Object[] elements;
+    Comparator<Object> order;
+    if (array instanceof DoubleArray doubles) {
+      elements = new Object[array.size()];
+      for (int i = 0; i < elements.length; i++) elements[i] = doubles.values()[i];
+      order = NUMBERS;
+    } else {
+      elements = elements(array, callSite);
+      order = naturalOrder(elements, array.size(), callSite);
+    }
+    select(elements, 0, array.size() - 1, n, order);
+    if (array instanceof DoubleArray doubles) {
+      for (int i = 0; i < elements.length; i++) doubles.values()[i] = (Double) elements[i];
+    }
+    return elements[n];
+  }
+
+  // The k largest elements, largest first, as a new array
+  private static Object topK(Interpreter interpreter, Token callSite, List<Object> args) {
+    Indexable array = array(args.get(0), callSite);
+    if (!(args.get(1) instanceof Double count) || count < 0 || count != Math.floor(count)) {
+      throw new RuntimeError(callSite.line(), "Count must be a non negative integer.");
+    }
+    int k = (int) Math.min(count, array.size());
+    Comparator<Object> order =
+        array instanceof DoubleArray
+            ? NUMBERS
+            : naturalOrder(elements(array, callSite), array.size(), callSite);
+    PriorityQueue<Object> smallestFirst = new PriorityQueue<>(Math.max(k, 1), order);
+    for (int i = 0; i < array.size() && k > 0; i++) {
+      Object element = array.get(i);
+      if (smallestFirst.size() < k) {
+        smallestFirst.add(element);
+      } else if (order.compare(element, smallestFirst.peek()) > 0) {
+        smallestFirst.poll();
+        smallestFirst.add(element);
+      }
+    }
+    LoxArray result = new LoxArray(k);
+    for (int i = k - 1; i >= 0; i--) result.set(i, smallestFirst.poll());
+    return result;
+  }
+
+  private static void select(Object[] elements, int from, int to, int n, Comparator<Object> order) {
+    while (from < to) {
+      Object pivot = elements[(from + to) >>> 1];
+      int i = from;
+      int j = to;
+      while (i <= j) {
+        while (order.compare(elements[i], pivot) < 0) i++;
+        while (order.compare(elements[j], pivot) > 0) j--;
+        if (i <= j) {
+          Object swap = elements[i];
+          elements[i++] = elements[j];
+          elements[j--] = swap;
+        }
+      }
+      if (n <= j) {
+        to = j;
+      } else if (n >= i) {
+        from = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+  // Numbers or strings, decided by the elements; an empty array sorts as numbers. Ropes are
+  // replaced by the equal plain strings.
+  private static Comparator<Object> naturalOrder(Object[] elements, int size, Token callSite) {
+    boolean numbers = true;
+    boolean strings = true;
+    for (int i = 0; i < size; i++) {
+      elements[i] = Rope.normalize(elements[i]);
+      numbers &= elements[i] instanceof Double;
+      strings &= elements[i] instanceof String;
+    }
+    if (numbers) return NUMBERS;
+    if (strings) return STRINGS;
+    throw new RuntimeError(
+        callSite.line(), "Can only order arrays of numbers or of strings; use sortBy instead.");
+  }
+
+  private static Indexable array(Object object, Token callSite) {
+    if (object instanceof Indexable array
+        && (array instanceof DoubleArray || array.storage() instanceof Object[])) {
+      return array;
+    }
+    throw new RuntimeError(callSite.line(), "Expected an array, a list or a double array.");
+  }
+
+  private static Object[] elements(Indexable array, Token callSite) {
+    if (array.storage() instanceof Object[] elements) return elements;
+    throw new RuntimeError(callSite.line(), "Expected an array or a list.");
+  }
+
+  private static double number(Object object, Token callSite) {
+    if (object instanceof Double number) return number;
+    throw new RuntimeError(callSite.line(), "Can only search a double array for a number.");
+  }
+}
@@ -0,0 +1,153 @@
+package ccs.jlox.backend.ffi;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.backend.Indexable;
+import ccs.jlox.backend.Interpreter;
+import ccs.jlox.backend.LoxList;
+import ccs.jlox.backend.Rope;
+import ccs.jlox.error.RuntimeError;
+import java.util.ArrayList;
+import java.util.List;
+
+// std.string: string functions that work on ropes without flattening them. substring and the
+// pieces returned by split share the storage of the original string; indexOf and split search
+// the rope chunk by chunk with Knuth-Morris-Pratt; join builds a balanced rope.
+public final class StringModule implements NativeModule {
+  @Override
+  public String getName() {
+    return "std.string";
+  }
+
+  @Override
+  public List<NativeFunction> getFunctions() {
+    return List.of(
+        new BuiltinFunction("len", 1, StringModule::len),
+        new BuiltinFunction("substring", 3, StringModule::substring),
+        new BuiltinFunction("indexOf", 2, StringModule::indexOf),
+        new BuiltinFunction("split", 2, StringModule::split),
+        new BuiltinFunction("join", 2, StringModule::join));
+  }
+
+  private static Object len(Interpreter interpreter, Token callSite, List<Object> args) {
+    return (double) string(args.get(0), callSite).length();
+  }
+
+  // Characters from `from` up to but not including `to`
+  private static Object substring(Interpreter interpreter, Token callSite, List<Object> args) {
+    CharSequence text = string(args.get(0), callSite);
+    int from = position(args.get(1), callSite);
+    int to = position(args.get(2), callSite);
+    if (from > to || to > text.length()) {
+      throw new RuntimeError(callSite.line(), "Substring range is out of bounds.");
+    }
+    return Rope.slice(text, from, to);
+  }
+
+  // Index of the first occurrence, or -1
+  private static Object indexOf(Interpreter interpreter, Token callSite, List<Object> args) {
+    CharSequence text = string(args.get(0), callSite);
+    String needle = string(args.get(1), callSite).toString();
+    if (needle.isEmpty()) return 0.0;
+    List<Integer> matches = find(text, needle, 1);
+    return matches.isEmpty() ? -1.0 : (double) matches.get(0);
+  }
+
+  private static Object split(Interpreter interpreter, Token callSite, List<Object> args) {
+    CharSequence text = string(args.get(0), callSite);
+    String separator = string(args.get(1), callSite).toString();
+    if (separator.isEmpty()) {
+      throw new RuntimeError(callSite.line(), "Separator can't be empty.");
+    }
+    LoxList pieces = new LoxList();
+    int start = 0;
+    for (int match : find(text, separator, Integer.MAX_VALUE)) {
+      pieces.add(Rope.slice(text, start, match));
+      start = match + separator.length();
+    }
+    pieces.add(Rope.slice(text, start, text.length()));
+    return pieces;
+  }
+
+  // join(arrayOrList, separator)
+  private static Object join(Interpreter interpreter, Token callSite, List<Object> args) {
+    if (!(args.get(0) instanceof Indexable pieces)) {
+      throw new RuntimeError(callSite.line(), "Expected an array or a list.");
+    }
+    CharSequence separator = string(args.get(1), callSite);
+    if (pieces.size() == 0) return "";
+    List<CharSequence> parts = new ArrayList<>(pieces.size());
+    for (int i = 0; i < pieces.size(); i++) {
+      if (!Rope.isString(pieces.get(i))) {
+        throw new RuntimeError(callSite.line(), "Can only join strings.");
+      }
+      parts.add((CharSequence) pieces.get(i));
+    }
+    return join(parts, 0, parts.size(), separator);
+  }
+
+  private static CharSequence join(
+      List<CharSequence> parts, int from, int to, CharSequence separator) {
+    if (to - from == 1) return parts.get(from);
+    int middle = (from + to) >>> 1;
+    return Rope.concat(
+        Rope.concat(join(parts, from, middle, separator), separator),
+        join(parts, middle, to, separator));
+  }
+
+  // Starts of the first `limit` non overlapping occurrences of the needle
+  private static List<Integer> find(CharSequence text, String needle, int limit) {
+    Matcher matcher = new Matcher(needle, limit);
+    Rope.chunks(text, 0, text.length(), matcher);
+    return matcher.matches;
+  }
+
+  private static final class Matcher implements Rope.ChunkConsumer {
+    private final String needle;
+    private final int limit;
+    // failure[i] is the length of the longest proper border of needle[0..i]
+    private final int[] failure;
+    private final List<Integer> matches = new ArrayList<>();
+    private int matched;
+    private int position;
+
+    private Matcher(String needle, int limit) {
+      this.needle = needle;
+      this.limit = limit;
+      this.failure = new int[needle.length()];
+      for (int i = 1, border = 0; i < needle.length(); i++) {
+        while (border > 0 && needle.charAt(i) != needle.charAt(border)) {
+          border = failure[border - 1];
+        }
+        if (needle.charAt(i) == needle.charAt(border)) border++;
+        failure[i] = border;
+      }
+    }
+
+    @Override
+    public boolean accept(String chunk, int from, int to) {
+      for (int i = from; i < to; i++, position++) {
+        char c = chunk.charAt(i);
+        while (matched > 0 && needle.charAt(matched) != c) matched = failure[matched - 1];
+        if (needle.charAt(matched) == c) matched++;
+        if (matched == needle.length()) {
+          matches.add(position + 1 - needle.length());
+          if (matches.size() == limit) return false;
+          matched = 0;
+        }
+      }
+      return true;
+    }
+  }
+
+  private static CharSequence string(Object object, Token callSite) {
+    if (Rope.isString(object)) return (CharSequence) object;
+    throw new RuntimeError(callSite.line(), "Expected a string.");
+  }
+
+  private static int position(Object object, Token callSite) {
+    if (object instanceof Double number && number >= 0 && number == Math.floor(number)) {
+      return (int) Math.min(number, Integer.MAX_VALUE);
+    }
+    throw new RuntimeError(callSite.line(), "Position must be a non negative integer.");
+  }
+}
@@ -0,0 +1,70 @@
+package ccs.jlox.backend.ffi;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.backend.Interpreter;
+import ccs.jlox.backend.LoxArray;
+import ccs.jlox.backend.LoxCallable;
+import ccs.jlox.backend.LoxFuture;
+import ccs.jlox.error.RuntimeError;
+import java.util.ArrayList;
+import java.util.List;
+
+// std.task: timers and future combinators for the event loop. None of these block; the returned
+// futures are meant to be awaited.
+public final class TaskModule implements NativeModule {
+  @Override
+  public String getName() {
+    return "std.task";
+  }
+
+  @Override
+  public List<NativeFunction> getFunctions() {
+    return List.of(
+        new BuiltinFunction("timer", 1, TaskModule::timer),
+        new BuiltinFunction("delay", 2, TaskModule::delay),
+        new BuiltinFunction("all", 1, TaskModule::all),
+        new BuiltinFunction("isDone", 1, TaskModule::isDone));
+  }
+
+  private static Object timer(Interpreter interpreter, Token callSite, List<Object> args) {
+    return interpreter.getScheduler().timer(millis(args.get(0), callSite));
+  }
+
+  // Calls a function without arguments on the loop after the given delay
+  private static Object delay(Interpreter interpreter, Token callSite, List<Object> args) {
+    long millis = millis(args.get(0), callSite);
+    if (!(args.get(1) instanceof LoxCallable callable) || callable.arity() != 0) {
+      throw new RuntimeError(callSite.line(), "Expected a function taking 0 arguments.");
+    }
+    Interpreter task = interpreter.fork();
+    return interpreter
+        .getScheduler()
+        .startAfter(callSite.line(), millis, () -> callable.call(task, callSite, List.of()));
+  }
+
+  private static Object all(Interpreter interpreter, Token callSite, List<Object> args) {
+    if (!(args.get(0) instanceof LoxArray array)) {
+      throw new RuntimeError(callSite.line(), "Expected an array of futures.");
+    }
+    List<LoxFuture> futures = new ArrayList<>(array.size());
+    for (int i = 0; i < array.size(); i++) {
+      if (!(array.get(i) instanceof LoxFuture future)) {
+        throw new RuntimeError(callSite.line(), "Expected an array of futures.");
+      }
+      futures.add(future);
+    }
+    return interpreter.getScheduler().all(futures);
+  }
+
+  private static Object isDone(Interpreter interpreter, Token callSite, List<Object> args) {
+    if (!(args.get(0) instanceof LoxFuture future)) {
+      throw new RuntimeError(callSite.line(), "Expected a future.");
+    }
+    return future.isDone();
+  }
+
+  private static long millis(Object value, Token callSite) {
+    if (value instanceof Double millis && millis >= 0) return millis.longValue();
+    throw new RuntimeError(callSite.line(), "Delay must be a non-negative number.");
+  }
+}
@@ -0,0 +1,234 @@
+package ccs.jlox.backend.ffi;
+
+import ccs.jlox.ast.Token;
+import ccs.jlox.backend.Interpreter;
+import ccs.jlox.backend.LoxCallable;
+import ccs.jlox.backend.Scheduler;
+import ccs.jlox.error.RuntimeError;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// std.thread: runs Lox callables concurrently. Each spawned callable gets its own interpreter
+// sharing the modules, errors and output of the one that spawned it. An error in a thread, Java
+// ones like a stack overflow included, is reported like any other runtime error and join then
+// returns nil. The program does not exit until every spawned thread has finished, joined or not.
+public final class ThreadModule implements NativeModule {
+  private static final ExecutorService EXECUTOR = Scheduler.newTaskExecutor("lox-thread");
+
+  @Override
+  public String getName() {
+    return "std.thread";
+  }
+
+  @Override
+  public List<NativeFunction> getFunctions() {
+    return List.of(
+        new BuiltinFunction("spawn", 1, ThreadModule::spawn),
+        new BuiltinFunction("join", 1, ThreadModule::join),
+        new BuiltinFunction("mutex", 0, (interpreter, callSite, args) -> new Mutex()),
+        new BuiltinFunction("lock", 1, ThreadModule::lock),
+        new BuiltinFunction("unlock", 1, ThreadModule::unlock),
+        new BuiltinFunction("withLock", 2, ThreadModule::withLock),
+        new BuiltinFunction("condition", 1, ThreadModule::condition),
+        new BuiltinFunction("wait", 1, ThreadModule::await),
+        new BuiltinFunction("signal", 1, ThreadModule::signal),
+        new BuiltinFunction("signalAll", 1, ThreadModule::signalAll),
+        new BuiltinFunction("atomic", 1, (interpreter, callSite, args) -> new Atomic(args.get(0))),
+        new BuiltinFunction("load", 1, ThreadModule::load),
+        new BuiltinFunction("store", 2, ThreadModule::store),
+        new BuiltinFunction("compareAndSet", 3, ThreadModule::compareAndSet),
+        new BuiltinFunction("addAndGet", 2, ThreadModule::addAndGet));
+  }
+
+  private static Object spawn(Interpreter interpreter, Token callSite, List<Object> args) {
+    LoxCallable callable = callable(args.get(0), 0, callSite);
+    Interpreter child = interpreter.fork();
+    CompletableFuture<Object> result =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return callable.call(child, callSite, List.of());
+              } catch (RuntimeError error) {
+                child.reportError(error);
+              } catch (StackOverflowError error) {
+                child.reportError(new RuntimeError(callSite.line(), "Stack overflow."));
+              } catch (Throwable error) {
+                child.reportError(
+                    new RuntimeError(callSite.line(), "Thread failed: " + error + "."));
+              }
+              return null;
+            },
+            EXECUTOR);
+    interpreter.getScheduler().watch(result);
+    return new LoxThread(result);
+  }
+
+  private static Object join(Interpreter interpreter, Token callSite, List<Object> args) {
+    if (!(args.get(0) instanceof LoxThread thread)) {
+      throw new RuntimeError(callSite.line(), "Can only join threads.");
+    }
+    return interpreter.getScheduler().yielding(thread.result()::join);
+  }
+
+  private static Object lock(Interpreter interpreter, Token callSite, List<Object> args) {
+    ReentrantLock lock = mutex(args.get(0), callSite).lock();
+    interpreter.getScheduler().yielding(() -> acquire(lock));
+    return null;
+  }
+
+  private static Object unlock(Interpreter interpreter, Token callSite, List<Object> args) {
+    ReentrantLock lock = mutex(args.get(0), callSite).lock();
+    checkHeld(lock, callSite);
+    lock.unlock();
+    return null;
+  }
+
+  private static Object withLock(Interpreter interpreter, Token callSite, List<Object> args) {
+    ReentrantLock lock = mutex(args.get(0), callSite).lock();
+    LoxCallable callable = callable(args.get(1), 0, callSite);
+    interpreter.getScheduler().yielding(() -> acquire(lock));
+    try {
+      return callable.call(interpreter, callSite, List.of());
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static Object condition(Interpreter interpreter, Token callSite, List<Object> args) {
+    ReentrantLock lock = mutex(args.get(0), callSite).lock();
+    return new LoxCondition(lock, lock.newCondition());
+  }
+
+  private static Object await(Interpreter interpreter, Token callSite, List<Object> args) {
+    LoxCondition condition = condition(args.get(0), callSite);
+    checkHeld(condition.lock(), callSite);
+    return interpreter
+        .getScheduler()
+        .yielding(
+            () -> {
+              condition.condition().awaitUninterruptibly();
+              return null;
+            });
+  }
+
+  private static Object signal(Interpreter interpreter, Token callSite, List<Object> args) {
+    LoxCondition condition = condition(args.get(0), callSite);
+    checkHeld(condition.lock(), callSite);
+    condition.condition().signal();
+    return null;
+  }
+
+  private static Object signalAll(Interpreter interpreter, Token callSite, List<Object> args) {
+    LoxCondition condition = condition(args.get(0), callSite);
+    checkHeld(condition.lock(), callSite);
+    condition.condition().signalAll();
+    return null;
+  }
+
+  private static Object load(Interpreter interpreter, Token callSite, List<Object> args) {
+    return atomic(args.get(0), callSite).value().get();
+  }
+
+  private static Object store(Interpreter interpreter, Token callSite, List<Object> args) {
+    atomic(args.get(0), callSite).value().set(args.get(1));
+    return null;
+  }
+
+  // Compares by value like ==, so numbers and strings work even though they are boxed
+  private static Object compareAndSet(Interpreter interpreter, Token callSite, List<Object> args) {
+    AtomicReference<Object> value = atomic(args.get(0), callSite).value();
+    while (true) {
+      Object current = value.get();
+      if (!Objects.equals(current, args.get(1))) return false;
+      if (value.compareAndSet(current, args.get(2))) return true;
+    }
+  }
+
+  private static Object addAndGet(Interpreter interpreter, Token callSite, List<Object> args) {
+    AtomicReference<Object> value = atomic(args.get(0), callSite).value();
+    if (!(args.get(1) instanceof Double delta)) {
+      throw new RuntimeError(callSite.line(), "Operand must be a number.");
+    }
+    return value.accumulateAndGet(
+        delta,
+        (current, add) -> {
+          if (!(current instanceof Double number)) {
+            throw new RuntimeError(callSite.line(), "Atomic value must be a number.");
+          }
+          return number + (Double) add;
+        });
+  }
+
+  // Blocking lock acquisition, for use with Scheduler.yielding
+  private static Object acquire(ReentrantLock lock) {
+    lock.lock();
+    return null;
+  }
+
+  private static LoxCallable callable(Object object, int arity, Token callSite) {
+    if (object instanceof LoxCallable callable && callable.arity() == arity) return callable;
+    throw new RuntimeError(callSite.line(), "Expected a function taking " + arity + " arguments.");
+  }
+
+  private static Mutex mutex(Object object, Token callSite) {
+    if (object instanceof Mutex mutex) return mutex;
+    throw new RuntimeError(callSite.line(), "Expected a mutex.");
+  }
+
+  private static LoxCondition condition(Object object, Token callSite) {
+    if (object instanceof LoxCondition condition) return condition;
+    throw new RuntimeError(callSite.line(), "Expected a condition.");
+  }
+
+  private static Atomic atomic(Object object, Token callSite) {
+    if (object instanceof Atomic atomic) return atomic;
+    throw new RuntimeError(callSite.line(), "Expected an atomic.");
+  }
+
+  private static void checkHeld(ReentrantLock lock, Token callSite) {
+    if (!lock.isHeldByCurrentThread()) {
+      throw new RuntimeError(callSite.line(), "Mutex is not held by this thread.");
+    }
+  }
+
+  private record LoxThread(CompletableFuture<Object> result) {
+    @Override
+    public String toString() {
+      return "<thread>";
+    }
+  }
+
+  private record Mutex(ReentrantLock lock) {
+    Mutex() {
+      this(new ReentrantLock());
+    }
+
+    @Override
+    public String toString() {
+      return "<mutex>";
+    }
+  }
+
+  private record LoxCondition(ReentrantLock lock, Condition condition) {
+    @Override
+    public String toString() {
+      return "<condition>";
+    }
+  }
+
+  private record Atomic(AtomicReference<Object> value) {
+    Atomic(Object initial) {
+      this(new AtomicReference<>(initial));
+    }
+
+    @Override
+    public String toString() {
+      return "<atomic>";
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package ccs.jlox.backend.ffi;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// SIMD loops over the widest vectors the CPU has, finishing the tail with the scalar loops. Sums
+// are accumulated per lane, so their rounding can differ slightly from the scalar order.
+// Prefix sums carry a dependency from one element to the next and stay scalar.
+final class VectorKernels implements NumericKernels {
+  private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+  @Override
+  public void lanewise(Op op, double[] a, double[] b, double[] out) {
+    VectorOperators.Binary operator = operator(op);
+    int bound = SPECIES.loopBound(a.length);
+    int i = 0;
+    for (; i < bound; i += SPECIES.length()) {
+      DoubleVector left = DoubleVector.fromArray(SPECIES, a, i);
+      DoubleVector right = DoubleVector.fromArray(SPECIES, b, i);
+      left.lanewise(operator, right).intoArray(out, i);
+    }
+    ScalarKernels.lanewise(op, a, b, out, i);
+  }
+
+  @Override
+  public void lanewise(Op op, double[] a, double b, double[] out) {
+    VectorOperators.Binary operator = operator(op);
+    int bound = SPECIES.loopBound(a.length);
+    int i = 0;
+    for (; i < bound; i += SPECIES.length()) {
+      DoubleVector.fromArray(SPECIES, a, i).lanewise(operator, b).intoArray(out, i);
+    }
+    ScalarKernels.lanewise(op, a, b, out, i);
+  }
+
+  @Override
+  public double dot(double[] a, double[] b) {
+    DoubleVector total = DoubleVector.zero(SPECIES);
+    int bound = SPECIES.loopBound(a.length);
+    int i = 0;
+    for (; i < bound; i += SPECIES.length()) {
+      DoubleVector left = DoubleVector.fromArray(SPECIES, a, i);
+      total = left.fma(DoubleVector.fromArray(SPECIES, b, i), total);
+    }
+    return total.reduceLanes(VectorOperators.ADD) + ScalarKernels.dot(a, b, i);
+  }
+
+  @Override
+  public double sum(double[] a) {
+    DoubleVector total = DoubleVector.zero(SPECIES);
+    int bound = SPECIES.loopBound(a.length);
+    int i = 0;
+    for (; i < bound; i += SPECIES.length()) {
+      total = total.add(DoubleVector.fromArray(SPECIES, a, i));
+    }
+    return total.reduceLanes(VectorOperators.ADD) + ScalarKernels.sum(a, i);
+  }
+
+  @Override
+  public double min(double[] a) {
+    int bound = SPECIES.loopBound(a.length);
+    if (bound == 0) return ScalarKernels.min(a, 0, a[0]);
+    DoubleVector result = DoubleVector.fromArray(SPECIES, a, 0);
+    int i = SPECIES.length();
+    for (; i < bound; i += SPECIES.length()) {
+      result = result.min(DoubleVector.fromArray(SPECIES, a, i));
+    }
+    return ScalarKernels.min(a, i, result.reduceLanes(VectorOperators.MIN));
+  }
+
+  @Override
+  public double max(double[] a) {
+    int bound = SPECIES.loopBound(a.length);
+    if (bound == 0) return ScalarKernels.max(a, 0, a[0]);
+    DoubleVector result = DoubleVector.fromArray(SPECIES, a, 0);
+    int i = SPECIES.length();
+    for (; i < bound; i += SPECIES.length()) {
+      result = result.max(DoubleVector.fromArray(SPECIES, a, i));
+    }
+    return ScalarKernels.max(a, i, result.reduceLanes(VectorOperators.MAX));
+  }
+
+  @Override
+  public void prefixSum(double[] a, double[] out) {
+    ScalarKernels.scan(a, out);
+  }
+
+  private static VectorOperators.Binary operator(Op op) {
+    return switch (op) {
+      case ADD -> VectorOperators.ADD;
+      case SUB -> VectorOperators.SUB;
+      case MUL -> VectorOperators.MUL;
+      case DIV -> VectorOperators.DIV;
+    };
+  }
+}
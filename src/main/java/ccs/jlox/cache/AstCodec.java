@@ -0,0 +1,468 @@
+package ccs.jlox.cache;
+
+import ccs.jlox.CompilationUnit;
+import ccs.jlox.ast.Expr;
+import ccs.jlox.ast.Memo;
+import ccs.jlox.ast.Stmt;
+import ccs.jlox.ast.Symbol;
+import ccs.jlox.ast.Token;
+import ccs.jlox.ast.TokenType;
+import ccs.jlox.interm.VariableLocation;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Binary encoding of a resolved compilation unit. Strings are stored once in a table and
+// referenced by index. Resolved locals are written inline, right after the node they belong to,
+// since the identity hash codes used as keys do not survive a round trip.
+final class AstCodec {
+  private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+  private static final int NULL = 0;
+  private static final int BOOLEAN = 1;
+  private static final int NUMBER = 2;
+  private static final int STRING = 3;
+
+  private AstCodec() {}
+
+  static byte[] encode(ModuleCache.Entry entry) throws IOException {
+    Writer writer = new Writer(entry.unit().locals());
+    writer.writeStmts(entry.unit().statements());
+    writer.body.writeInt(entry.imports().size());
+    for (String fullyQualifiedName : entry.imports()) {
+      writer.writeString(fullyQualifiedName);
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(writer.strings.size());
+    for (String string : writer.strings) {
+      out.writeUTF(string);
+    }
+    writer.bodyBytes.writeTo(out);
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  static ModuleCache.Entry decode(DataInputStream in) throws IOException {
+    int stringCount = in.readInt();
+    String[] strings = new String[stringCount];
+    for (int i = 0; i < stringCount; i++) {
+      strings[i] = in.readUTF();
+    }
+
+    Reader reader = new Reader(in, strings);
+    List<Stmt> stmts = reader.readStmts();
+    int importCount = in.readInt();
+    List<String> imports = new ArrayList<>(importCount);
+    for (int i = 0; i < importCount; i++) {
+      imports.add(reader.readString());
+    }
+    return new ModuleCache.Entry(new CompilationUnit(stmts, reader.locals), imports);
+  }
+
+  private static final class Writer {
+    private final Map<Integer, VariableLocation> locals;
+    private final Map<String, Integer> stringIndexes = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private final ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+    private final DataOutputStream body = new DataOutputStream(bodyBytes);
+
+    Writer(Map<Integer, VariableLocation> locals) {
+      this.locals = locals;
+    }
+
+    void writeStmts(List<Stmt> stmts) throws IOException {
+      body.writeInt(stmts.size());
+      for (Stmt stmt : stmts) {
+        writeStmt(stmt);
+      }
+    }
+
+    void writeStmt(Stmt stmt) throws IOException {
+      if (stmt == null) {
+        body.writeByte(0);
+        return;
+      }
+      switch (stmt) {
+        case Stmt.Expression exprStmt -> {
+          body.writeByte(1);
+          writeExpr(exprStmt.expr());
+        }
+        case Stmt.If ifStmt -> {
+          body.writeByte(2);
+          writeExpr(ifStmt.condition());
+          writeStmt(ifStmt.thenBranch());
+          writeStmt(ifStmt.elseBranch());
+        }
+        case Stmt.While whileStmt -> {
+          body.writeByte(3);
+          writeExpr(whileStmt.condition());
+          writeStmt(whileStmt.body());
+        }
+        case Stmt.Var varStmt -> {
+          body.writeByte(4);
+          writeToken(varStmt.name());
+          writeExpr(varStmt.initializer());
+        }
+        case Stmt.Function functionStmt -> {
+          body.writeByte(5);
+          writeFunctionStmt(functionStmt);
+        }
+        case Stmt.Class classStmt -> {
+          body.writeByte(6);
+          writeToken(classStmt.name());
+          writeExpr(classStmt.superclass());
+          body.writeInt(classStmt.methods().size());
+          for (Stmt.Function method : classStmt.methods()) {
+            writeFunctionStmt(method);
+          }
+        }
+        case Stmt.Return returnStmt -> {
+          body.writeByte(7);
+          writeToken(returnStmt.keyword());
+          writeExpr(returnStmt.value());
+        }
+        case Stmt.Block blockStmt -> {
+          body.writeByte(8);
+          writeStmts(blockStmt.statements());
+        }
+        case Stmt.Import importStmt -> {
+          body.writeByte(9);
+          writeTokens(importStmt.path());
+          writeToken(importStmt.name());
+        }
+        case Stmt.Debug debugStmt -> {
+          body.writeByte(10);
+          body.writeInt(debugStmt.line());
+        }
+        case Stmt.Break breakStmt -> {
+          body.writeByte(11);
+          body.writeInt(breakStmt.line());
+        }
+        case Stmt.Deferred deferredStmt -> throw new IOException("Cannot encode deferred bodies");
+      }
+    }
+
+    void writeFunctionStmt(Stmt.Function functionStmt) throws IOException {
+      writeToken(functionStmt.name());
+      writeFunction(functionStmt.function());
+      body.writeBoolean(functionStmt.memo().isRequested());
+      body.writeBoolean(functionStmt.memo().isPure());
+    }
+
+    void writeFunction(Expr.Function functionExpr) throws IOException {
+      writeTokens(functionExpr.params());
+      writeStmts(functionExpr.body());
+      body.writeBoolean(functionExpr.async());
+    }
+
+    void writeExpr(Expr expr) throws IOException {
+      if (expr == null) {
+        body.writeByte(0);
+        return;
+      }
+      switch (expr) {
+        case Expr.Binary binary -> {
+          body.writeByte(1);
+          writeExpr(binary.left());
+          writeToken(binary.operator());
+          writeExpr(binary.right());
+        }
+        case Expr.Ternary ternary -> {
+          body.writeByte(2);
+          writeExpr(ternary.condition());
+          writeExpr(ternary.left());
+          writeToken(ternary.colon());
+          writeExpr(ternary.right());
+        }
+        case Expr.Call call -> {
+          body.writeByte(3);
+          writeExpr(call.callee());
+          writeToken(call.paren());
+          body.writeInt(call.arguments().size());
+          for (Expr argument : call.arguments()) {
+            writeExpr(argument);
+          }
+        }
+        case Expr.Get get -> {
+          body.writeByte(4);
+          writeExpr(get.object());
+          writeToken(get.name());
+        }
+        case Expr.This thisExpr -> {
+          body.writeByte(5);
+          writeToken(thisExpr.keyword());
+          writeLocation(thisExpr);
+        }
+        case Expr.Super superExpr -> {
+          body.writeByte(6);
+          writeToken(superExpr.keyword());
+          writeToken(superExpr.method());
+          writeLocation(superExpr);
+        }
+        case Expr.Grouping grouping -> {
+          body.writeByte(7);
+          writeExpr(grouping.expr());
+        }
+        case Expr.Literal literal -> {
+          body.writeByte(8);
+          writeValue(literal.value());
+        }
+        case Expr.Logical logical -> {
+          body.writeByte(9);
+          writeExpr(logical.left());
+          writeToken(logical.operator());
+          writeExpr(logical.right());
+        }
+        case Expr.Unary unary -> {
+          body.writeByte(10);
+          writeToken(unary.operator());
+          writeExpr(unary.right());
+        }
+        case Expr.Variable variable -> {
+          body.writeByte(11);
+          writeToken(variable.name());
+          writeLocation(variable);
+        }
+        case Expr.Assignment assignment -> {
+          body.writeByte(12);
+          writeExpr(assignment.variable());
+          writeToken(assignment.equals());
+          writeExpr(assignment.value());
+          writeLocation(assignment);
+        }
+        case Expr.ArrayCreation arrayCreation -> {
+          body.writeByte(13);
+          writeExpr(arrayCreation.size());
+          writeToken(arrayCreation.rightBracket());
+        }
+        case Expr.ArrayIndex arrayIndex -> {
+          body.writeByte(14);
+          writeExpr(arrayIndex.array());
+          writeToken(arrayIndex.rightParen());
+          writeExpr(arrayIndex.idx());
+        }
+        case Expr.Function function -> {
+          body.writeByte(15);
+          writeFunction(function);
+        }
+        case Expr.Await await -> {
+          body.writeByte(16);
+          writeToken(await.keyword());
+          writeExpr(await.value());
+        }
+        case Expr.Interpolation interpolation -> {
+          body.writeByte(17);
+          body.writeInt(interpolation.segments().size());
+          for (String segment : interpolation.segments()) {
+            writeString(segment);
+          }
+          for (Expr value : interpolation.values()) {
+            writeExpr(value);
+          }
+        }
+        case Expr.Flat flat -> throw new IOException("Cannot encode flattened expressions");
+      }
+    }
+
+    void writeLocation(Expr expr) throws IOException {
+      VariableLocation location = locals.get(System.identityHashCode(expr));
+      if (location == null) {
+        body.writeBoolean(false);
+      } else {
+        body.writeBoolean(true);
+        body.writeInt(location.depth());
+        body.writeInt(location.slot());
+      }
+    }
+
+    void writeTokens(List<Token> tokens) throws IOException {
+      body.writeInt(tokens.size());
+      for (Token token : tokens) {
+        writeToken(token);
+      }
+    }
+
+    void writeToken(Token token) throws IOException {
+      body.writeByte(token.type().ordinal());
+      writeString(token.lexeme());
+      // Symbols are process local and get interned again on decode
+      writeValue(token.type() == TokenType.IDENTIFIER ? null : token.literal());
+      body.writeInt(token.line());
+    }
+
+    void writeValue(Object value) throws IOException {
+      if (value == null) {
+        body.writeByte(NULL);
+      } else if (value instanceof Boolean bool) {
+        body.writeByte(BOOLEAN);
+        body.writeBoolean(bool);
+      } else if (value instanceof Double number) {
+        body.writeByte(NUMBER);
+        body.writeDouble(number);
+      } else if (value instanceof String string) {
+        body.writeByte(STRING);
+        writeString(string);
+      } else {
+        throw new IOException("Cannot encode literal of type " + value.getClass().getName());
+      }
+    }
+
+    void writeString(String string) throws IOException {
+      Integer index = stringIndexes.get(string);
+      if (index == null) {
+        index = strings.size();
+        strings.add(string);
+        stringIndexes.put(string, index);
+      }
+      body.writeInt(index);
+    }
+  }
+
+  private static final class Reader {
+    private final DataInputStream in;
+    private final String[] strings;
+    private final Map<Integer, VariableLocation> locals = new HashMap<>();
+
+    Reader(DataInputStream in, String[] strings) {
+      this.in = in;
+      this.strings = strings;
+    }
+
+    List<Stmt> readStmts() throws IOException {
+      int size = in.readInt();
+      List<Stmt> stmts = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        stmts.add(readStmt());
+      }
+      return stmts;
+    }
+
+    Stmt readStmt() throws IOException {
+      int tag = in.readByte();
+      return switch (tag) {
+        case 0 -> null;
+        case 1 -> new Stmt.Expression(readExpr());
+        case 2 -> new Stmt.If(readExpr(), readStmt(), readStmt());
+        case 3 -> new Stmt.While(readExpr(), readStmt());
+        case 4 -> new Stmt.Var(readToken(), readExpr());
+        case 5 -> readFunctionStmt();
+        case 6 -> {
+          Token name = readToken();
+          Expr.Variable superclass = (Expr.Variable) readExpr();
+          int methodCount = in.readInt();
+          List<Stmt.Function> methods = new ArrayList<>(methodCount);
+          for (int i = 0; i < methodCount; i++) {
+            methods.add(readFunctionStmt());
+          }
+          yield new Stmt.Class(name, superclass, methods);
+        }
+        case 7 -> new Stmt.Return(readToken(), readExpr());
+        case 8 -> new Stmt.Block(readStmts());
+        case 9 -> new Stmt.Import(readTokens(), readToken());
+        case 10 -> new Stmt.Debug(in.readInt());
+        case 11 -> new Stmt.Break(in.readInt());
+        default -> throw new IOException("Unknown statement tag " + tag);
+      };
+    }
+
+    Stmt.Function readFunctionStmt() throws IOException {
+      return new Stmt.Function(
+          readToken(), readFunction(), new Memo(in.readBoolean(), in.readBoolean()));
+    }
+
+    Expr.Function readFunction() throws IOException {
+      return new Expr.Function(readTokens(), readStmts(), in.readBoolean());
+    }
+
+    Expr readExpr() throws IOException {
+      int tag = in.readByte();
+      return switch (tag) {
+        case 0 -> null;
+        case 1 -> new Expr.Binary(readExpr(), readToken(), readExpr());
+        case 2 -> new Expr.Ternary(readExpr(), readExpr(), readToken(), readExpr());
+        case 3 -> {
+          Expr callee = readExpr();
+          Token paren = readToken();
+          int argumentCount = in.readInt();
+          List<Expr> arguments = new ArrayList<>(argumentCount);
+          for (int i = 0; i < argumentCount; i++) {
+            arguments.add(readExpr());
+          }
+          yield new Expr.Call(callee, paren, arguments);
+        }
+        case 4 -> new Expr.Get(readExpr(), readToken());
+        case 5 -> readLocation(new Expr.This(readToken()));
+        case 6 -> readLocation(new Expr.Super(readToken(), readToken()));
+        case 7 -> new Expr.Grouping(readExpr());
+        case 8 -> new Expr.Literal(readValue());
+        case 9 -> new Expr.Logical(readExpr(), readToken(), readExpr());
+        case 10 -> new Expr.Unary(readToken(), readExpr());
+        case 11 -> readLocation(new Expr.Variable(readToken()));
+        case 12 -> readLocation(new Expr.Assignment(readExpr(), readToken(), readExpr()));
+        case 13 -> new Expr.ArrayCreation(readExpr(), readToken());
+        case 14 -> new Expr.ArrayIndex(readExpr(), readToken(), readExpr());
+        case 15 -> readFunction();
+        case 16 -> new Expr.Await(readToken(), readExpr());
+        case 17 -> {
+          int segmentCount = in.readInt();
+          List<String> segments = new ArrayList<>(segmentCount);
+          for (int i = 0; i < segmentCount; i++) {
+            segments.add(readString());
+          }
+          List<Expr> values = new ArrayList<>(segmentCount - 1);
+          for (int i = 0; i < segmentCount - 1; i++) {
+            values.add(readExpr());
+          }
+          yield new Expr.Interpolation(segments, values);
+        }
+        default -> throw new IOException("Unknown expression tag " + tag);
+      };
+    }
+
+    Expr readLocation(Expr expr) throws IOException {
+      if (in.readBoolean()) {
+        locals.put(System.identityHashCode(expr), new VariableLocation(in.readInt(), in.readInt()));
+      }
+      return expr;
+    }
+
+    List<Token> readTokens() throws IOException {
+      int size = in.readInt();
+      List<Token> tokens = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        tokens.add(readToken());
+      }
+      return tokens;
+    }
+
+    Token readToken() throws IOException {
+      TokenType type = TOKEN_TYPES[in.readByte()];
+      String lexeme = readString();
+      Object literal = readValue();
+      if (type == TokenType.IDENTIFIER) literal = Symbol.of(lexeme);
+      return new Token(type, lexeme, literal, in.readInt());
+    }
+
+    Object readValue() throws IOException {
+      int tag = in.readByte();
+      return switch (tag) {
+        case NULL -> null;
+        case BOOLEAN -> in.readBoolean();
+        case NUMBER -> in.readDouble();
+        case STRING -> readString();
+        default -> throw new IOException("Unknown literal tag " + tag);
+      };
+    }
+
+    String readString() throws IOException {
+      return strings[in.readInt()];
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package ccs.jlox.cache;
+
+import ccs.jlox.CompilationUnit;
+import ccs.jlox.frontend.SourceText;
+import ccs.jlox.interm.Flattener;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Caches compiled modules keyed by a hash of their source. A module is scanned, parsed and
+// resolved on its own (imports are only referenced by name), so the hash of its own source is
+// enough to invalidate it: when a dependency changes, only that dependency gets a new key.
+// Bump FORMAT_VERSION whenever the AST or the encoding changes.
+// Files hold the tree form of a module. Memory holds the form it runs in, so a flattened module is
+// flattened once per process and does not keep its tree alive next to the flat copy.
+public final class ModuleCache {
+  private static final int FORMAT_VERSION = 4;
+  private static final int MAGIC = 0x4c4f5843; // "LOXC"
+  private static final String CACHE_DIR_PROPERTY = "jlox.cacheDir";
+
+  private static final Map<String, Entry> MEMORY = new ConcurrentHashMap<>();
+  private static volatile Path directory =
+      Optional.ofNullable(System.getProperty(CACHE_DIR_PROPERTY)).map(Path::of).orElse(null);
+
+  private ModuleCache() {}
+
+  public static void setDirectory(Path cacheDirectory) {
+    directory = cacheDirectory;
+  }
+
+  public static void clearMemory() {
+    MEMORY.clear();
+  }
+
+  public static Optional<Entry> get(SourceText source, boolean flat) {
+    String key = key(source);
+    Entry entry = MEMORY.get(memoryKey(key, flat));
+    if (entry == null) {
+      entry = readFromDisk(key);
+      if (entry == null) return Optional.empty();
+      if (flat) entry = flatten(entry);
+      MEMORY.put(memoryKey(key, flat), entry);
+    }
+    return Optional.of(entry);
+  }
+
+  // Takes the tree form and returns the entry in the form to run
+  public static Entry put(SourceText source, Entry entry, boolean flat) {
+    String key = key(source);
+    writeToDisk(key, entry);
+    Entry loaded = flat ? flatten(entry) : entry;
+    MEMORY.put(memoryKey(key, flat), loaded);
+    return loaded;
+  }
+
+  private static Entry flatten(Entry entry) {
+    return new Entry(Flattener.flatten(entry.unit()), entry.imports());
+  }
+
+  private static String memoryKey(String key, boolean flat) {
+    return flat ? key + ".flat" : key;
+  }
+
+  private static Entry readFromDisk(String key) {
+    Path cacheDirectory = directory;
+    if (cacheDirectory == null) return null;
+
+    Path file = cacheDirectory.resolve(key + ".loxc");
+    if (!Files.exists(file)) return null;
+
+    try (DataInputStream in =
+        new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return null;
+      return AstCodec.decode(in);
+    } catch (IOException | RuntimeException e) {
+      // A truncated or stale file is just a cache miss
+      return null;
+    }
+  }
+
+  private static void writeToDisk(String key, Entry entry) {
+    Path cacheDirectory = directory;
+    if (cacheDirectory == null) return;
+
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.write(AstCodec.encode(entry));
+
+      Files.createDirectories(cacheDirectory);
+      Path tmp = Files.createTempFile(cacheDirectory, key, ".tmp");
+      Files.write(tmp, bytes.toByteArray());
+      Files.move(
+          tmp,
+          cacheDirectory.resolve(key + ".loxc"),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      // The cache is best effort; the module is simply compiled again next time
+    }
+  }
+
+  private static String key(SourceText source) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update((byte) FORMAT_VERSION);
+      source.digest(digest);
+      return HexFormat.of().formatHex(digest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public record Entry(CompilationUnit unit, List<String> imports) {}
+}
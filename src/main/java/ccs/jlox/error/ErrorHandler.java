@@ -5,9 +5,10 @@ import ccs.jlox.ast.TokenType;
 import java.util.ArrayList;
 import java.util.List;
 
+// Shared by the tasks compiling a program and by any threads it runs on, so access is synchronized
 public final class ErrorHandler {
-  private List<CompileError> compileErrors = new ArrayList<>();
-  private List<RuntimeError> runtimeErrors = new ArrayList<>();
+  private final List<CompileError> compileErrors = new ArrayList<>();
+  private final List<RuntimeError> runtimeErrors = new ArrayList<>();
 
   public static String errorRepresentation(CompileError compileError) {
     return String.format(
@@ -32,11 +33,11 @@ public final class ErrorHandler {
         "[line %d] Error: %s%n", runtimeError.getLine(), runtimeError.getMessage());
   }
 
-  public void runtimeError(RuntimeError error) {
+  public synchronized void runtimeError(RuntimeError error) {
     runtimeErrors.add(error);
   }
 
-  public void error(Token token, String message) {
+  public synchronized void error(Token token, String message) {
     if (token.type() == TokenType.EOF) {
       compileErrors.add(new CompileError(token.line(), " at end", message));
     } else {
@@ -44,28 +45,32 @@ public final class ErrorHandler {
     }
   }
 
-  public void error(int line, String message) {
+  public synchronized void error(int line, String message) {
     compileErrors.add(new CompileError(line, "", message));
   }
 
-  public boolean hadCompileError() {
+  public synchronized void addCompileErrors(List<CompileError> errors) {
+    compileErrors.addAll(errors);
+  }
+
+  public synchronized boolean hadCompileError() {
     return !compileErrors.isEmpty();
   }
 
-  public void reset() {
-    compileErrors = new ArrayList<>();
-    runtimeErrors = new ArrayList<>();
+  public synchronized void reset() {
+    compileErrors.clear();
+    runtimeErrors.clear();
   }
 
-  public boolean hadRuntimeError() {
+  public synchronized boolean hadRuntimeError() {
     return !runtimeErrors.isEmpty();
   }
 
-  public List<CompileError> getCompileErrors() {
+  public synchronized List<CompileError> getCompileErrors() {
     return List.copyOf(compileErrors);
   }
 
-  public List<RuntimeError> getRuntimeErrors() {
+  public synchronized List<RuntimeError> getRuntimeErrors() {
     return List.copyOf(runtimeErrors);
   }
 }
@@ -2,6 +2,9 @@ package ccs.jlox.frontend;
 
 import static ccs.jlox.ast.TokenType.AND;
 import static ccs.jlox.ast.TokenType.AS;
+import static ccs.jlox.ast.TokenType.ASYNC;
+import static ccs.jlox.ast.TokenType.AT;
+import static ccs.jlox.ast.TokenType.AWAIT;
 import static ccs.jlox.ast.TokenType.BACKSLASH;
 import static ccs.jlox.ast.TokenType.BANG;
 import static ccs.jlox.ast.TokenType.BANG_EQUAL;
@@ -23,6 +26,7 @@ import static ccs.jlox.ast.TokenType.GREATER_EQUAL;
 import static ccs.jlox.ast.TokenType.IDENTIFIER;
 import static ccs.jlox.ast.TokenType.IF;
 import static ccs.jlox.ast.TokenType.IMPORT;
+import static ccs.jlox.ast.TokenType.INTERPOLATION;
 import static ccs.jlox.ast.TokenType.LEFT_BRACE;
 import static ccs.jlox.ast.TokenType.LEFT_PAREN;
 import static ccs.jlox.ast.TokenType.LEFT_SQUARE_BRACKET;
@@ -52,25 +56,49 @@ import static ccs.jlox.ast.TokenType.TRUE;
 import static ccs.jlox.ast.TokenType.VAR;
 import static ccs.jlox.ast.TokenType.WHILE;
 
-import ccs.jlox.Lox;
+import ccs.jlox.ast.DeferredBody;
 import ccs.jlox.ast.Expr;
+import ccs.jlox.ast.Memo;
 import ccs.jlox.ast.Stmt;
 import ccs.jlox.ast.Token;
 import ccs.jlox.ast.TokenType;
+import ccs.jlox.error.CompileError;
 import ccs.jlox.error.ErrorHandler;
+import ccs.jlox.error.RuntimeError;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.EnumSet;
 import java.util.List;
 
 public final class Parser {
-  private static final ErrorHandler ERROR_HANDLER = Lox.getErrorHandler();
+  private final TokenBuffer tokens;
+  private final ErrorHandler errorHandler;
+  private final boolean deferFunctionBodies;
+  // Tokens from `end` on read as EOF, so a parser can work on a slice of the buffer
+  private final int end;
+  private int current;
 
-  private final List<Token> tokens;
-  private int current = 0;
+  public Parser(TokenBuffer tokens, ErrorHandler errorHandler) {
+    this(tokens, errorHandler, false);
+  }
+
+  public Parser(TokenBuffer tokens, ErrorHandler errorHandler, boolean deferFunctionBodies) {
+    this(tokens, 0, tokens.size() - 1, errorHandler, deferFunctionBodies);
+  }
 
-  public Parser(List<Token> tokens) {
+  private Parser(
+      TokenBuffer tokens,
+      int start,
+      int end,
+      ErrorHandler errorHandler,
+      boolean deferFunctionBodies) {
     this.tokens = tokens;
+    this.current = start;
+    this.end = end;
+    this.errorHandler = errorHandler;
+    this.deferFunctionBodies = deferFunctionBodies;
   }
 
   public List<Stmt> parse() {
@@ -87,7 +115,12 @@ public final class Parser {
     try {
       if (match(CLASS)) return classDeclaration();
       if (match(VAR)) return varDeclaration();
-      if (match(FUN)) return funDeclaration("function");
+      if (match(AT)) return annotatedDeclaration();
+      if (match(FUN)) return funDeclaration("function", false, false);
+      if (match(ASYNC)) {
+        expect(FUN, "Expect 'fun' after 'async'.");
+        return funDeclaration("function", true, false);
+      }
       return statement();
     } catch (ParseError error) {
       synchronize();
@@ -100,16 +133,16 @@ public final class Parser {
 
     Expr.Variable superclass = null;
     if (match(LESS)) {
-      consume(IDENTIFIER, "Expect superclass name.");
+      expect(IDENTIFIER, "Expect superclass name.");
       superclass = new Expr.Variable(previous());
     }
 
-    consume(LEFT_BRACE, "Expect '{' before class body.");
+    expect(LEFT_BRACE, "Expect '{' before class body.");
     List<Stmt.Function> methods = new ArrayList<>();
     while (!check(RIGHT_BRACE) && !isAtEnd()) {
-      methods.add(funDeclaration("method"));
+      methods.add(funDeclaration("method", match(ASYNC), false));
     }
-    consume(RIGHT_BRACE, "Expect '}' after class body.");
+    expect(RIGHT_BRACE, "Expect '}' after class body.");
     return new Stmt.Class(name, superclass, methods);
   }
 
@@ -121,19 +154,30 @@ public final class Parser {
       initializer = expression();
     }
 
-    consume(SEMICOLON, "Expect ';' after variable declaration.");
+    expect(SEMICOLON, "Expect ';' after variable declaration.");
     return new Stmt.Var(name, initializer);
   }
 
-  private Stmt.Function funDeclaration(String kind) {
+  // @memo is the only annotation so far
+  private Stmt annotatedDeclaration() {
+    Token annotation = consume(IDENTIFIER, "Expect annotation name after '@'.");
+    if (!annotation.lexeme().equals("memo")) {
+      throw error(annotation, "Unknown annotation '" + annotation.lexeme() + "'.");
+    }
+    expect(FUN, "Expect 'fun' after annotation.");
+    return funDeclaration("function", false, true);
+  }
+
+  private Stmt.Function funDeclaration(String kind, boolean async, boolean memo) {
     Token name = consume(IDENTIFIER, "Expect " + kind + " name.");
 
-    consume(LEFT_PAREN, "Expect '(' after " + kind + " name.");
+    expect(LEFT_PAREN, "Expect '(' after " + kind + " name.");
     List<Token> parameters = functionParameters();
-    consume(RIGHT_PAREN, "Expect ')' after parameters.");
+    expect(RIGHT_PAREN, "Expect ')' after parameters.");
 
-    List<Stmt> body = functionBody(kind);
-    return new Stmt.Function(name, new Expr.Function(parameters, body));
+    // Memoized bodies are parsed right away since purity is decided at compile time
+    List<Stmt> body = functionBody(kind, !memo);
+    return new Stmt.Function(name, new Expr.Function(parameters, body, async), new Memo(memo));
   }
 
   private Stmt statement() {
@@ -149,7 +193,7 @@ public final class Parser {
   }
 
   private Stmt forStatement() {
-    consume(LEFT_PAREN, "Expect '(' after 'for'.");
+    expect(LEFT_PAREN, "Expect '(' after 'for'.");
 
     Stmt initializer;
     if (match(SEMICOLON)) {
@@ -164,13 +208,13 @@ public final class Parser {
     if (!check(SEMICOLON)) {
       condition = expression();
     }
-    consume(SEMICOLON, "Expect ';' after loop condition.");
+    expect(SEMICOLON, "Expect ';' after loop condition.");
 
     Expr increment = null;
     if (!check(RIGHT_PAREN)) {
       increment = expression();
     }
-    consume(RIGHT_PAREN, "Expect ')' after for clauses.");
+    expect(RIGHT_PAREN, "Expect ')' after for clauses.");
 
     Stmt body = statement();
     if (increment != null) {
@@ -188,9 +232,9 @@ public final class Parser {
   }
 
   private Stmt ifStatement() {
-    consume(LEFT_PAREN, "Expect '(' after 'if'.");
+    expect(LEFT_PAREN, "Expect '(' after 'if'.");
     Expr condition = expression();
-    consume(RIGHT_PAREN, "Expect ')' after if condition.");
+    expect(RIGHT_PAREN, "Expect ')' after if condition.");
     Stmt thenBranch = statement();
     Stmt elseBranch = null;
     if (match(ELSE)) {
@@ -205,14 +249,14 @@ public final class Parser {
     if (!check(SEMICOLON)) {
       value = expression();
     }
-    consume(SEMICOLON, "Expect ';' after return value.");
+    expect(SEMICOLON, "Expect ';' after return value.");
     return new Stmt.Return(keyword, value);
   }
 
   private Stmt whileStatement() {
-    consume(LEFT_PAREN, "Expect '(' after 'while'.");
+    expect(LEFT_PAREN, "Expect '(' after 'while'.");
     Expr condition = expression();
-    consume(RIGHT_PAREN, "Expect ')' after condition.");
+    expect(RIGHT_PAREN, "Expect ')' after condition.");
     Stmt body = statement();
     return new Stmt.While(condition, body);
   }
@@ -222,7 +266,7 @@ public final class Parser {
     while (!check(RIGHT_BRACE) && !isAtEnd()) {
       statements.add(declaration());
     }
-    consume(RIGHT_BRACE, "Expect '}' after block.");
+    expect(RIGHT_BRACE, "Expect '}' after block.");
     return new Stmt.Block(statements);
   }
 
@@ -236,29 +280,29 @@ public final class Parser {
       path.add(consume(IDENTIFIER, "Expected identifier."));
     }
 
-    consume(AS, "Expected 'as' qualifier.");
+    expect(AS, "Expected 'as' qualifier.");
     Token moduleName = consume(IDENTIFIER, "Expected module qualifier.");
 
-    consume(SEMICOLON, "Expect ';' after import statement.");
+    expect(SEMICOLON, "Expect ';' after import statement.");
 
     return new Stmt.Import(path, moduleName);
   }
 
   private Stmt debugStatement() {
     Stmt.Debug debug = new Stmt.Debug(previous().line());
-    consume(SEMICOLON, "Expect ';' after value.");
+    expect(SEMICOLON, "Expect ';' after value.");
     return debug;
   }
 
   private Stmt breakStatement() {
     Stmt.Break breakStmt = new Stmt.Break(previous().line());
-    consume(SEMICOLON, "Expect ';' after break statement.");
+    expect(SEMICOLON, "Expect ';' after break statement.");
     return breakStmt;
   }
 
   private Stmt expressionStatement() {
     Expr expr = expression();
-    consume(SEMICOLON, "Expect ';' after value.");
+    expect(SEMICOLON, "Expect ';' after value.");
     return new Stmt.Expression(expr);
   }
 
@@ -387,6 +431,10 @@ public final class Parser {
       Expr right = unary();
       return new Expr.Unary(operator, right);
     }
+    if (match(AWAIT)) {
+      Token keyword = previous();
+      return new Expr.Await(keyword, unary());
+    }
     return call();
   }
 
@@ -428,12 +476,13 @@ public final class Parser {
     if (match(TRUE)) return new Expr.Literal(true);
     if (match(NIL)) return new Expr.Literal(null);
     if (match(NUMBER, STRING)) {
-      return new Expr.Literal(previous().literal());
+      return new Expr.Literal(previousLiteral());
     }
+    if (match(INTERPOLATION)) return interpolation();
     if (match(THIS)) return new Expr.This(previous());
     if (match(SUPER)) {
       Token keyword = previous();
-      consume(DOT, "Expect '.' after 'super'.");
+      expect(DOT, "Expect '.' after 'super'.");
       Token method = consume(IDENTIFIER, "Expect superclass method name.");
       return new Expr.Super(keyword, method);
     }
@@ -442,33 +491,54 @@ public final class Parser {
     }
     if (match(LEFT_PAREN)) {
       Expr expr = expression();
-      consume(RIGHT_PAREN, "Expect ')' after expression.");
+      expect(RIGHT_PAREN, "Expect ')' after expression.");
       return new Expr.Grouping(expr);
     }
     if (match(LEFT_SQUARE_BRACKET)) {
       Expr size = expression();
       Token rightBracket =
           consume(RIGHT_SQUARE_BRACKET, "Expect closing square bracket in array creation.");
-      consume(LEFT_BRACE, "Expect opening brace in array creation.");
-      consume(RIGHT_BRACE, "Expect closing brace in array creation.");
+      expect(LEFT_BRACE, "Expect opening brace in array creation.");
+      expect(RIGHT_BRACE, "Expect closing brace in array creation.");
       return new Expr.ArrayCreation(size, rightBracket);
     }
-    if (match(BACKSLASH)) return lambda();
+    if (match(BACKSLASH)) return lambda(false);
+    if (match(ASYNC)) {
+      expect(BACKSLASH, "Expect '\\' after 'async'.");
+      return lambda(true);
+    }
 
     throw error(peek(), "Expect expression.");
   }
 
-  private Expr lambda() {
+  // The scanner splits "a${x}b${y}c" into INTERPOLATION(a) x INTERPOLATION(b) y STRING(c)
+  private Expr interpolation() {
+    List<String> segments = new ArrayList<>();
+    List<Expr> values = new ArrayList<>();
+    segments.add(tokens.interpolationValue(current - 1));
+    while (true) {
+      values.add(expression());
+      if (match(INTERPOLATION)) {
+        segments.add(tokens.interpolationValue(current - 1));
+      } else {
+        expect(STRING, "Expect end of string after interpolated expression.");
+        segments.add(tokens.stringValue(current - 1));
+        return new Expr.Interpolation(segments, values);
+      }
+    }
+  }
+
+  private Expr lambda(boolean async) {
     // XXX: Is this error message still correct for anonymous functions?
     Token arrow = previous();
     List<Token> parameters = functionParameters();
 
     if (check(LEFT_BRACE)) {
-      List<Stmt> body = functionBody("anonymous_fn");
-      return new Expr.Function(parameters, body);
+      List<Stmt> body = functionBody("anonymous_fn", true);
+      return new Expr.Function(parameters, body, async);
     } else {
       Expr expr = expression();
-      return new Expr.Function(parameters, List.of(new Stmt.Return(arrow, expr)));
+      return new Expr.Function(parameters, List.of(new Stmt.Return(arrow, expr)), async);
     }
   }
 
@@ -485,16 +555,59 @@ public final class Parser {
     return parameters;
   }
 
-  private List<Stmt> functionBody(String kind) {
-    consume(LEFT_BRACE, "Expect '{' before " + kind + " body.");
+  private List<Stmt> functionBody(String kind, boolean deferrable) {
+    expect(LEFT_BRACE, "Expect '{' before " + kind + " body.");
+    if (deferFunctionBodies && deferrable) return deferredFunctionBody();
     List<Stmt> body = new ArrayList<>();
     while (!check(RIGHT_BRACE) && !isAtEnd()) {
       body.add(declaration());
     }
-    consume(RIGHT_BRACE, "Expect '}' after block.");
+    expect(RIGHT_BRACE, "Expect '}' after block.");
     return body;
   }
 
+  // Remembers where the body starts and ends. The body is also parsed right away, nested bodies
+  // included, so its syntax errors are reported now; the resolver checks and drops that draft.
+  private List<Stmt> deferredFunctionBody() {
+    int start = current;
+    Deque<TokenType> openBrackets = new ArrayDeque<>();
+    while (!(check(RIGHT_BRACE) && openBrackets.isEmpty())) {
+      if (isAtEnd()) throw error(peek(), "Expect '}' after block.");
+      advance();
+      TokenType type = previousType();
+      switch (type) {
+        case LEFT_PAREN -> openBrackets.push(RIGHT_PAREN);
+        case LEFT_SQUARE_BRACKET -> openBrackets.push(RIGHT_SQUARE_BRACKET);
+        case LEFT_BRACE -> openBrackets.push(RIGHT_BRACE);
+        case RIGHT_PAREN, RIGHT_SQUARE_BRACKET, RIGHT_BRACE -> {
+          if (openBrackets.isEmpty() || openBrackets.pop() != type) {
+            throw error(previous(), "Unmatched '" + type.fixedLexeme() + "'.");
+          }
+        }
+        default -> {
+          // NO-OP
+        }
+      }
+    }
+    int end = current;
+    expect(RIGHT_BRACE, "Expect '}' after block.");
+
+    TokenBuffer bodyTokens = tokens;
+    List<Stmt> draft = new Parser(tokens, start, end, errorHandler, false).parse();
+    return List.of(
+        new Stmt.Deferred(new DeferredBody(() -> parseBody(bodyTokens, start, end), draft)));
+  }
+
+  private static List<Stmt> parseBody(TokenBuffer tokens, int start, int end) {
+    ErrorHandler bodyErrorHandler = new ErrorHandler();
+    List<Stmt> statements = new Parser(tokens, start, end, bodyErrorHandler, true).parse();
+    if (bodyErrorHandler.hadCompileError()) {
+      CompileError error = bodyErrorHandler.getCompileErrors().get(0);
+      throw new RuntimeError(error.line(), error.message());
+    }
+    return statements;
+  }
+
   // Helper functions
 
   private boolean match(TokenType... types) {
@@ -509,35 +622,54 @@ public final class Parser {
 
   private boolean check(TokenType type) {
     if (isAtEnd()) return false;
-    return peek().type() == type;
+    return tokens.type(current) == type;
   }
 
-  private Token advance() {
+  private void advance() {
     if (!isAtEnd()) current++;
-    return previous();
   }
 
   private boolean isAtEnd() {
-    return peek().type() == EOF;
+    return current >= end || tokens.type(current) == EOF;
   }
 
   private Token peek() {
-    return tokens.get(current);
+    return tokens.token(current);
   }
 
   private Token previous() {
-    return tokens.get(current - 1);
+    return tokens.token(current - 1);
+  }
+
+  private TokenType previousType() {
+    return tokens.type(current - 1);
+  }
+
+  private Object previousLiteral() {
+    return switch (previousType()) {
+      case STRING -> tokens.stringValue(current - 1);
+      case NUMBER -> tokens.numberValue(current - 1);
+      default -> null;
+    };
   }
 
   // Error handling
 
   private Token consume(TokenType type, String message) {
-    if (check(type)) return advance();
+    expect(type, message);
+    return previous();
+  }
+
+  private void expect(TokenType type, String message) {
+    if (check(type)) {
+      advance();
+      return;
+    }
     throw error(peek(), message);
   }
 
   private ParseError error(Token token, String message) {
-    ERROR_HANDLER.error(token, message);
+    errorHandler.error(token, message);
     return new ParseError();
   }
 
@@ -545,8 +677,11 @@ public final class Parser {
   private void synchronize() {
     advance();
     while (!isAtEnd()) {
-      if (previous().type() == SEMICOLON) return;
-      if (EnumSet.of(CLASS, FUN, VAR, FOR, IF, WHILE, RETURN).contains(peek().type())) return;
+      if (previousType() == SEMICOLON) return;
+      if (EnumSet.of(CLASS, AT, FUN, ASYNC, VAR, FOR, IF, WHILE, RETURN)
+          .contains(tokens.type(current))) {
+        return;
+      }
       advance();
     }
   }
@@ -3,6 +3,9 @@ package ccs.jlox.frontend;
 import static ccs.jlox.ast.TokenType.AND;
 import static ccs.jlox.ast.TokenType.ARROW;
 import static ccs.jlox.ast.TokenType.AS;
+import static ccs.jlox.ast.TokenType.ASYNC;
+import static ccs.jlox.ast.TokenType.AT;
+import static ccs.jlox.ast.TokenType.AWAIT;
 import static ccs.jlox.ast.TokenType.BACKSLASH;
 import static ccs.jlox.ast.TokenType.BANG;
 import static ccs.jlox.ast.TokenType.BANG_EQUAL;
@@ -24,6 +27,7 @@ import static ccs.jlox.ast.TokenType.GREATER_EQUAL;
 import static ccs.jlox.ast.TokenType.IDENTIFIER;
 import static ccs.jlox.ast.TokenType.IF;
 import static ccs.jlox.ast.TokenType.IMPORT;
+import static ccs.jlox.ast.TokenType.INTERPOLATION;
 import static ccs.jlox.ast.TokenType.LEFT_BRACE;
 import static ccs.jlox.ast.TokenType.LEFT_PAREN;
 import static ccs.jlox.ast.TokenType.LEFT_SQUARE_BRACKET;
@@ -53,59 +57,41 @@ import static ccs.jlox.ast.TokenType.TRUE;
 import static ccs.jlox.ast.TokenType.VAR;
 import static ccs.jlox.ast.TokenType.WHILE;
 
-import ccs.jlox.Lox;
-import ccs.jlox.ast.Token;
 import ccs.jlox.ast.TokenType;
 import ccs.jlox.error.ErrorHandler;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 public final class Scanner {
-  private static final ErrorHandler ERROR_HANDLER = Lox.getErrorHandler();
-
-  private static final Map<String, TokenType> KEYWORDS = new HashMap<>();
-
-  static {
-    KEYWORDS.put("and", AND);
-    KEYWORDS.put("as", AS);
-    KEYWORDS.put("break", BREAK);
-    KEYWORDS.put("class", CLASS);
-    KEYWORDS.put("debug", DEBUG);
-    KEYWORDS.put("else", ELSE);
-    KEYWORDS.put("false", FALSE);
-    KEYWORDS.put("for", FOR);
-    KEYWORDS.put("fun", FUN);
-    KEYWORDS.put("if", IF);
-    KEYWORDS.put("import", IMPORT);
-    KEYWORDS.put("nil", NIL);
-    KEYWORDS.put("or", OR);
-    KEYWORDS.put("return", RETURN);
-    KEYWORDS.put("super", SUPER);
-    KEYWORDS.put("this", THIS);
-    KEYWORDS.put("true", TRUE);
-    KEYWORDS.put("var", VAR);
-    KEYWORDS.put("while", WHILE);
-  }
-
-  private final String source;
-  private final List<Token> tokens = new ArrayList<>();
+  private final SourceText source;
+  private final ErrorHandler errorHandler;
+  private final TokenBuffer tokens;
   private int start = 0;
   private int current = 0;
   private int line = 1;
+  // One entry per ${ being scanned: the number of braces opened inside it and not yet closed
+  private final Deque<Integer> interpolations = new ArrayDeque<>();
+
+  public Scanner(String source, ErrorHandler errorHandler) {
+    this(SourceText.of(source), errorHandler);
+  }
 
-  public Scanner(String source) {
+  public Scanner(SourceText source, ErrorHandler errorHandler) {
     this.source = source;
+    this.errorHandler = errorHandler;
+    this.tokens = new TokenBuffer(source);
   }
 
-  public List<Token> scanTokens() {
+  public TokenBuffer scanTokens() {
     while (!isAtEnd()) {
       // We are at the beginning of the next lexeme.
       start = current;
       scanToken();
     }
-    tokens.add(new Token(EOF, "", null, line));
+    if (!interpolations.isEmpty()) {
+      errorHandler.error(line, "Unterminated string interpolation.");
+    }
+    tokens.add(EOF, current, 0, line);
     return tokens;
   }
 
@@ -116,8 +102,8 @@ public final class Scanner {
       case ')' -> addToken(RIGHT_PAREN);
       case '[' -> addToken(LEFT_SQUARE_BRACKET);
       case ']' -> addToken(RIGHT_SQUARE_BRACKET);
-      case '{' -> addToken(LEFT_BRACE);
-      case '}' -> addToken(RIGHT_BRACE);
+      case '{' -> leftBrace();
+      case '}' -> rightBrace();
       case ',' -> addToken(COMMA);
       case '.' -> addToken(DOT);
       case '+' -> addToken(match('=') ? PLUS_EQUAL : PLUS);
@@ -126,6 +112,7 @@ public final class Scanner {
       case ';' -> addToken(SEMICOLON);
       case '?' -> addToken(QUESTION_MARK);
       case ':' -> addToken(COLON);
+      case '@' -> addToken(AT);
       case '!' -> addToken(match('=') ? BANG_EQUAL : BANG);
       case '=' -> addToken(match('=') ? EQUAL_EQUAL : EQUAL);
       case '<' -> addToken(match('=') ? LESS_EQUAL : LESS);
@@ -173,15 +160,55 @@ public final class Scanner {
     } else if (isAlpha(c)) {
       identifier();
     } else {
-      ERROR_HANDLER.error(line, "Unexpected character.");
+      errorHandler.error(line, "Unexpected character.");
     }
   }
 
   private void identifier() {
     while (isAlphaNumeric(peek())) advance();
-    String text = source.substring(start, current);
-    TokenType type = KEYWORDS.getOrDefault(text, IDENTIFIER);
-    addToken(type);
+    addToken(identifierType());
+  }
+
+  private TokenType identifierType() {
+    return switch (source.charAt(start)) {
+      case 'a' -> switch (current - start > 1 ? source.charAt(start + 1) : '\0') {
+        case 'n' -> keyword(2, "d", AND);
+        case 's' -> current - start == 2 ? AS : keyword(2, "ync", ASYNC);
+        case 'w' -> keyword(2, "ait", AWAIT);
+        default -> IDENTIFIER;
+      };
+      case 'b' -> keyword(1, "reak", BREAK);
+      case 'c' -> keyword(1, "lass", CLASS);
+      case 'd' -> keyword(1, "ebug", DEBUG);
+      case 'e' -> keyword(1, "lse", ELSE);
+      case 'f' -> switch (current - start > 1 ? source.charAt(start + 1) : '\0') {
+        case 'a' -> keyword(2, "lse", FALSE);
+        case 'o' -> keyword(2, "r", FOR);
+        case 'u' -> keyword(2, "n", FUN);
+        default -> IDENTIFIER;
+      };
+      case 'i' -> current - start == 2 ? keyword(1, "f", IF) : keyword(1, "mport", IMPORT);
+      case 'n' -> keyword(1, "il", NIL);
+      case 'o' -> keyword(1, "r", OR);
+      case 'r' -> keyword(1, "eturn", RETURN);
+      case 's' -> keyword(1, "uper", SUPER);
+      case 't' -> switch (current - start > 1 ? source.charAt(start + 1) : '\0') {
+        case 'h' -> keyword(2, "is", THIS);
+        case 'r' -> keyword(2, "ue", TRUE);
+        default -> IDENTIFIER;
+      };
+      case 'v' -> keyword(1, "ar", VAR);
+      case 'w' -> keyword(1, "hile", WHILE);
+      default -> IDENTIFIER;
+    };
+  }
+
+  private TokenType keyword(int offset, String rest, TokenType type) {
+    if (current - start != offset + rest.length()) return IDENTIFIER;
+    for (int i = 0; i < rest.length(); i++) {
+      if (source.charAt(start + offset + i) != rest.charAt(i)) return IDENTIFIER;
+    }
+    return type;
   }
 
   private void comment() {
@@ -201,21 +228,46 @@ public final class Scanner {
     }
   }
 
+  private void leftBrace() {
+    if (!interpolations.isEmpty()) interpolations.push(interpolations.pop() + 1);
+    addToken(LEFT_BRACE);
+  }
+
+  // The brace closing a ${ resumes the string it was in
+  private void rightBrace() {
+    if (!interpolations.isEmpty()) {
+      int open = interpolations.pop();
+      if (open == 0) {
+        string();
+        return;
+      }
+      interpolations.push(open - 1);
+    }
+    addToken(RIGHT_BRACE);
+  }
+
+  // Scans up to the closing quote, or up to a ${ where the embedded expression's tokens follow
   private void string() {
-    while (peek() != '"' && !isAtEnd()) {
+    while (peek() != '"' && !(peek() == '$' && peekNext() == '{') && !isAtEnd()) {
       if (peek() == '\n') line++;
       advance();
     }
 
     if (isAtEnd()) {
-      ERROR_HANDLER.error(line, "Unterminated string.");
+      errorHandler.error(line, "Unterminated string.");
       return;
     }
 
-    advance();
+    if (peek() == '$') {
+      advance();
+      advance();
+      interpolations.push(0);
+      addToken(INTERPOLATION);
+      return;
+    }
 
-    String value = source.substring(start + 1, current - 1);
-    addToken(STRING, value);
+    advance();
+    addToken(STRING);
   }
 
   private char peek() {
@@ -260,16 +312,11 @@ public final class Scanner {
       advance();
       while (isDigit(peek())) advance();
     }
-    addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+    addToken(NUMBER);
   }
 
   private void addToken(TokenType type) {
-    addToken(type, null);
-  }
-
-  private void addToken(TokenType type, Object literal) {
-    String text = source.substring(start, current);
-    tokens.add(new Token(type, text, literal, line));
+    tokens.add(type, start, current - start, line);
   }
 
   private boolean isAtEnd() {
@@ -0,0 +1,90 @@
+package ccs.jlox.frontend;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+// Source code the scanner reads character by character. Files are memory mapped and read as
+// bytes: everything outside string literals and comments is ASCII, so UTF-8 only has to be
+// decoded when the value of a string literal is needed.
+public abstract sealed class SourceText {
+  public static SourceText of(String source) {
+    return new StringSource(source);
+  }
+
+  public static SourceText map(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return new MappedSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  public abstract int length();
+
+  public abstract char charAt(int index);
+
+  public abstract String substring(int start, int end);
+
+  public abstract void digest(MessageDigest digest);
+
+  private static final class StringSource extends SourceText {
+    private final String source;
+
+    StringSource(String source) {
+      this.source = source;
+    }
+
+    @Override
+    public int length() {
+      return source.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+      return source.charAt(index);
+    }
+
+    @Override
+    public String substring(int start, int end) {
+      return source.substring(start, end);
+    }
+
+    @Override
+    public void digest(MessageDigest digest) {
+      digest.update(source.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private static final class MappedSource extends SourceText {
+    private final ByteBuffer bytes;
+
+    MappedSource(ByteBuffer bytes) {
+      this.bytes = bytes;
+    }
+
+    @Override
+    public int length() {
+      return bytes.limit();
+    }
+
+    @Override
+    public char charAt(int index) {
+      return (char) (bytes.get(index) & 0xff);
+    }
+
+    @Override
+    public String substring(int start, int end) {
+      byte[] slice = new byte[end - start];
+      bytes.get(start, slice);
+      return new String(slice, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void digest(MessageDigest digest) {
+      digest.update(bytes.duplicate().rewind());
+    }
+  }
+}
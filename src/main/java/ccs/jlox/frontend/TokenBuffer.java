@@ -0,0 +1,151 @@
+package ccs.jlox.frontend;
+
+import static ccs.jlox.ast.TokenType.IDENTIFIER;
+
+import ccs.jlox.ast.Symbol;
+import ccs.jlox.ast.Token;
+import ccs.jlox.ast.TokenType;
+import java.util.Arrays;
+
+// Tokens stored as parallel arrays of offsets into the source. Lexemes, literal values and
+// Token records are only created when the parser asks for them.
+public final class TokenBuffer {
+  private static final TokenType[] TOKEN_TYPES = TokenType.values();
+  private static final int INITIAL_CAPACITY = 256;
+
+  private final SourceText source;
+  private final IdentifierTable identifiers = new IdentifierTable();
+  private byte[] types = new byte[INITIAL_CAPACITY];
+  private int[] starts = new int[INITIAL_CAPACITY];
+  private int[] lengths = new int[INITIAL_CAPACITY];
+  private int[] lines = new int[INITIAL_CAPACITY];
+  private int size = 0;
+
+  TokenBuffer(SourceText source) {
+    this.source = source;
+  }
+
+  void add(TokenType type, int start, int length, int line) {
+    if (size == types.length) {
+      int capacity = size * 2;
+      types = Arrays.copyOf(types, capacity);
+      starts = Arrays.copyOf(starts, capacity);
+      lengths = Arrays.copyOf(lengths, capacity);
+      lines = Arrays.copyOf(lines, capacity);
+    }
+    types[size] = (byte) type.ordinal();
+    starts[size] = start;
+    lengths[size] = length;
+    lines[size] = line;
+    size++;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public TokenType type(int index) {
+    return TOKEN_TYPES[types[index]];
+  }
+
+  public int line(int index) {
+    return lines[index];
+  }
+
+  public String lexeme(int index) {
+    TokenType type = type(index);
+    String fixed = type.fixedLexeme();
+    if (fixed != null) return fixed;
+    if (type == IDENTIFIER) return symbol(index).name();
+    return source.substring(starts[index], starts[index] + lengths[index]);
+  }
+
+  public Symbol symbol(int index) {
+    return identifiers.intern(source, starts[index], lengths[index]);
+  }
+
+  // Without the surrounding quotes
+  public String stringValue(int index) {
+    return source.substring(starts[index] + 1, starts[index] + lengths[index] - 1);
+  }
+
+  // Without the opening quote or brace and the closing ${
+  public String interpolationValue(int index) {
+    return source.substring(starts[index] + 1, starts[index] + lengths[index] - 2);
+  }
+
+  public double numberValue(int index) {
+    int start = starts[index];
+    int end = start + lengths[index];
+    // Integers that fit in a long are exact without going through a String
+    if (lengths[index] <= 15) {
+      long value = 0;
+      int i = start;
+      while (i < end && source.charAt(i) != '.') {
+        value = value * 10 + (source.charAt(i) - '0');
+        i++;
+      }
+      if (i == end) return value;
+    }
+    return Double.parseDouble(source.substring(start, end));
+  }
+
+  public Token token(int index) {
+    Object literal =
+        switch (type(index)) {
+          case STRING -> stringValue(index);
+          case INTERPOLATION -> interpolationValue(index);
+          case NUMBER -> numberValue(index);
+          case IDENTIFIER -> symbol(index);
+          default -> null;
+        };
+    return new Token(type(index), lexeme(index), literal, lines[index]);
+  }
+
+  // Open addressing table that hashes identifiers straight from the source, so the global symbol
+  // table is only consulted the first time a name is seen in this file. Deferred function bodies of
+  // the same file can be parsed at once from several threads, so interning is synchronized.
+  private static final class IdentifierTable {
+    private Symbol[] symbols = new Symbol[64];
+    private int count = 0;
+
+    synchronized Symbol intern(SourceText source, int start, int length) {
+      int hash = 0;
+      for (int i = 0; i < length; i++) {
+        hash = 31 * hash + source.charAt(start + i);
+      }
+
+      int mask = symbols.length - 1;
+      int slot = hash & mask;
+      while (symbols[slot] != null) {
+        if (matches(symbols[slot].name(), source, start, length)) return symbols[slot];
+        slot = (slot + 1) & mask;
+      }
+
+      Symbol symbol = Symbol.of(source.substring(start, start + length));
+      symbols[slot] = symbol;
+      if (++count * 2 > symbols.length) grow();
+      return symbol;
+    }
+
+    private static boolean matches(String name, SourceText source, int start, int length) {
+      if (name.length() != length) return false;
+      for (int i = 0; i < length; i++) {
+        if (name.charAt(i) != source.charAt(start + i)) return false;
+      }
+      return true;
+    }
+
+    private void grow() {
+      Symbol[] old = symbols;
+      symbols = new Symbol[old.length * 2];
+      int mask = symbols.length - 1;
+      for (Symbol symbol : old) {
+        if (symbol == null) continue;
+        int slot = symbol.name().hashCode() & mask;
+        while (symbols[slot] != null) slot = (slot + 1) & mask;
+        symbols[slot] = symbol;
+      }
+    }
+  }
+}
@@ -0,0 +1,187 @@
+package ccs.jlox.interm;
+
+import ccs.jlox.CompilationUnit;
+import ccs.jlox.ast.Expr;
+import ccs.jlox.ast.FlatCode;
+import ccs.jlox.ast.Stmt;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Rewrites a resolved compilation unit so that every maximal tree of literals, variables and
+// operators becomes a single Expr.Flat backed by one FlatCode for the whole unit. Variable
+// locations are inlined into the flat nodes, so the new locals only hold the tree nodes that the
+// interpreter still looks up by identity: assignments, this, super and superclasses.
+// The input unit is left untouched since it might be shared through the module cache.
+public final class Flattener {
+  private final Map<Integer, VariableLocation> originalLocals;
+  private final Map<Integer, VariableLocation> locals;
+  private final FlatCode code = new FlatCode();
+
+  private Flattener(Map<Integer, VariableLocation> locals) {
+    this.originalLocals = locals;
+    this.locals = new HashMap<>();
+  }
+
+  public static CompilationUnit flatten(CompilationUnit unit) {
+    Flattener flattener = new Flattener(unit.locals());
+    List<Stmt> statements = flattener.flattenStmts(unit.statements());
+    flattener.code.seal();
+    return new CompilationUnit(statements, flattener.locals);
+  }
+
+  private List<Stmt> flattenStmts(List<Stmt> statements) {
+    return statements.stream().map(this::flatten).toList();
+  }
+
+  private Stmt flatten(Stmt stmt) {
+    return switch (stmt) {
+      case Stmt.Expression exprStmt -> new Stmt.Expression(flatten(exprStmt.expr()));
+      case Stmt.If ifStmt -> new Stmt.If(
+          flatten(ifStmt.condition()),
+          flatten(ifStmt.thenBranch()),
+          ifStmt.elseBranch() == null ? null : flatten(ifStmt.elseBranch()));
+      case Stmt.While whileStmt -> new Stmt.While(
+          flatten(whileStmt.condition()), flatten(whileStmt.body()));
+      case Stmt.Var varStmt -> new Stmt.Var(
+          varStmt.name(), varStmt.initializer() == null ? null : flatten(varStmt.initializer()));
+      case Stmt.Function functionStmt -> flattenFunctionStmt(functionStmt);
+      case Stmt.Class classStmt -> new Stmt.Class(
+          classStmt.name(),
+          classStmt.superclass() == null ? null : keep(classStmt.superclass()),
+          classStmt.methods().stream().map(this::flattenFunctionStmt).toList());
+      case Stmt.Return returnStmt -> new Stmt.Return(
+          returnStmt.keyword(), returnStmt.value() == null ? null : flatten(returnStmt.value()));
+      case Stmt.Block blockStmt -> new Stmt.Block(flattenStmts(blockStmt.statements()));
+      case Stmt.Import importStmt -> importStmt;
+      case Stmt.Debug debugStmt -> debugStmt;
+      case Stmt.Break breakStmt -> breakStmt;
+      case Stmt.Deferred deferredStmt -> deferredStmt;
+    };
+  }
+
+  private Stmt.Function flattenFunctionStmt(Stmt.Function functionStmt) {
+    return new Stmt.Function(
+        functionStmt.name(), flattenFunction(functionStmt.function()), functionStmt.memo());
+  }
+
+  private Expr.Function flattenFunction(Expr.Function function) {
+    return new Expr.Function(function.params(), flattenStmts(function.body()), function.async());
+  }
+
+  private Expr flatten(Expr expr) {
+    if (isFlattenable(expr) && !(expr instanceof Expr.Literal)) {
+      return new Expr.Flat(code, node(expr));
+    }
+    return switch (expr) {
+      case Expr.Call call -> new Expr.Call(
+          flatten(call.callee()),
+          call.paren(),
+          call.arguments().stream().map(this::flatten).toList());
+      case Expr.Get get -> new Expr.Get(flatten(get.object()), get.name());
+      case Expr.Assignment assignment -> {
+        Expr target =
+            switch (assignment.variable()) {
+              case Expr.Get get -> new Expr.Get(flatten(get.object()), get.name());
+              case Expr.ArrayIndex index -> new Expr.ArrayIndex(
+                  flatten(index.array()), index.rightParen(), flatten(index.idx()));
+              default -> assignment.variable();
+            };
+        yield rekey(
+            assignment,
+            new Expr.Assignment(target, assignment.equals(), flatten(assignment.value())));
+      }
+      case Expr.Await await -> new Expr.Await(await.keyword(), flatten(await.value()));
+      case Expr.This thisExpr -> keep(thisExpr);
+      case Expr.Super superExpr -> keep(superExpr);
+      case Expr.ArrayCreation creation -> new Expr.ArrayCreation(
+          flatten(creation.size()), creation.rightBracket());
+      case Expr.ArrayIndex index -> new Expr.ArrayIndex(
+          flatten(index.array()), index.rightParen(), flatten(index.idx()));
+      case Expr.Function function -> flattenFunction(function);
+      case Expr.Interpolation interpolation -> new Expr.Interpolation(
+          interpolation.segments(), interpolation.values().stream().map(this::flatten).toList());
+      default -> expr;
+    };
+  }
+
+  private int node(Expr expr) {
+    return switch (expr) {
+      case Expr.Literal literal -> code.add(
+          FlatCode.CONSTANT, code.addConstant(literal.value()), 0, 0, 0);
+      case Expr.Variable variable -> {
+        VariableLocation location = originalLocals.get(System.identityHashCode(variable));
+        if (location != null) {
+          yield code.add(
+              FlatCode.LOCAL, location.depth(), location.slot(), 0, variable.name().line());
+        }
+        int name = code.addConstant(variable.name().symbol());
+        yield code.add(FlatCode.GLOBAL, name, 0, 0, variable.name().line());
+      }
+      case Expr.Grouping grouping -> operand(grouping.expr());
+      case Expr.Unary unary -> code.add(
+          FlatCode.UNARY,
+          operand(unary.right()),
+          0,
+          unary.operator().type().ordinal(),
+          unary.operator().line());
+      case Expr.Binary binary -> {
+        int left = operand(binary.left());
+        int right = operand(binary.right());
+        yield code.add(
+            FlatCode.BINARY,
+            left,
+            right,
+            binary.operator().type().ordinal(),
+            binary.operator().line());
+      }
+      case Expr.Logical logical -> {
+        int left = operand(logical.left());
+        int right = operand(logical.right());
+        yield code.add(
+            FlatCode.LOGICAL,
+            left,
+            right,
+            logical.operator().type().ordinal(),
+            logical.operator().line());
+      }
+      case Expr.Ternary ternary -> {
+        int condition = operand(ternary.condition());
+        int left = operand(ternary.left());
+        int right = operand(ternary.right());
+        yield code.add(FlatCode.TERNARY, condition, left, right, ternary.colon().line());
+      }
+      default -> throw new IllegalStateException();
+    };
+  }
+
+  private int operand(Expr expr) {
+    if (isFlattenable(expr)) return node(expr);
+    return code.add(FlatCode.TREE, code.addConstant(flatten(expr)), 0, 0, 0);
+  }
+
+  private <T extends Expr> T keep(T expr) {
+    VariableLocation location = originalLocals.get(System.identityHashCode(expr));
+    if (location != null) locals.put(System.identityHashCode(expr), location);
+    return expr;
+  }
+
+  private Expr rekey(Expr original, Expr rewritten) {
+    VariableLocation location = originalLocals.get(System.identityHashCode(original));
+    if (location != null) locals.put(System.identityHashCode(rewritten), location);
+    return rewritten;
+  }
+
+  private static boolean isFlattenable(Expr expr) {
+    return switch (expr) {
+      case Expr.Literal literal -> true;
+      case Expr.Variable variable -> true;
+      case Expr.Grouping grouping -> true;
+      case Expr.Unary unary -> true;
+      case Expr.Binary binary -> true;
+      case Expr.Logical logical -> true;
+      case Expr.Ternary ternary -> true;
+      default -> false;
+    };
+  }
+}
@@ -4,5 +4,7 @@ enum FunctionType {
   NONE,
   FUNCTION,
   METHOD,
-  INITIALIZER
+  INITIALIZER,
+  ASYNC_FUNCTION,
+  ASYNC_METHOD
 }
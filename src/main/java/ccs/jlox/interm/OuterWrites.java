@@ -0,0 +1,125 @@
+package ccs.jlox.interm;
+
+import ccs.jlox.ast.Expr;
+import ccs.jlox.ast.FlatCode;
+import ccs.jlox.ast.Stmt;
+import ccs.jlox.ast.Token;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Finds an assignment in a function body to a variable the function does not own: a global or a
+// variable captured from an enclosing scope. `depth` counts the environments between the
+// statement being visited and the function's own, matching what the resolver recorded.
+// Writes through objects and arrays are not tracked.
+public final class OuterWrites {
+  private final Map<Integer, VariableLocation> locals;
+
+  private OuterWrites(Map<Integer, VariableLocation> locals) {
+    this.locals = locals;
+  }
+
+  public static Optional<Token> find(
+      Expr.Function function, Map<Integer, VariableLocation> locals) {
+    return new OuterWrites(locals).inStmts(function.body(), 0);
+  }
+
+  private Optional<Token> inStmts(List<Stmt> statements, int depth) {
+    for (Stmt stmt : statements) {
+      Optional<Token> write = in(stmt, depth);
+      if (write.isPresent()) return write;
+    }
+    return Optional.empty();
+  }
+
+  private Optional<Token> in(Stmt stmt, int depth) {
+    return switch (stmt) {
+      case Stmt.Expression exprStmt -> in(exprStmt.expr(), depth);
+      case Stmt.If ifStmt -> in(ifStmt.condition(), depth)
+          .or(() -> in(ifStmt.thenBranch(), depth))
+          .or(
+              () ->
+                  ifStmt.elseBranch() == null ? Optional.empty() : in(ifStmt.elseBranch(), depth));
+      case Stmt.While whileStmt -> in(whileStmt.condition(), depth)
+          .or(() -> in(whileStmt.body(), depth));
+      case Stmt.Var varStmt -> varStmt.initializer() == null
+          ? Optional.empty()
+          : in(varStmt.initializer(), depth);
+      case Stmt.Function functionStmt -> inStmts(functionStmt.function().body(), depth + 1);
+      case Stmt.Class classStmt -> {
+        // Methods run below a `this` scope and, with a superclass, a `super` scope
+        int methodDepth = depth + (classStmt.superclass() == null ? 2 : 3);
+        for (Stmt.Function method : classStmt.methods()) {
+          Optional<Token> write = inStmts(method.function().body(), methodDepth);
+          if (write.isPresent()) yield write;
+        }
+        yield Optional.empty();
+      }
+      case Stmt.Return returnStmt -> returnStmt.value() == null
+          ? Optional.empty()
+          : in(returnStmt.value(), depth);
+      case Stmt.Block blockStmt -> inStmts(blockStmt.statements(), depth + 1);
+      case Stmt.Deferred deferredStmt -> inStmts(deferredStmt.body().statements(), depth);
+      case Stmt.Import importStmt -> Optional.empty();
+      case Stmt.Debug debugStmt -> Optional.empty();
+      case Stmt.Break breakStmt -> Optional.empty();
+    };
+  }
+
+  private Optional<Token> in(Expr expr, int depth) {
+    return switch (expr) {
+      case Expr.Assignment assignment -> {
+        if (assignment.variable() instanceof Expr.Variable variable) {
+          VariableLocation location = locals.get(System.identityHashCode(assignment));
+          if (location == null || location.depth() > depth) yield Optional.of(variable.name());
+        }
+        yield in(assignment.variable(), depth).or(() -> in(assignment.value(), depth));
+      }
+      case Expr.Binary binary -> in(binary.left(), depth).or(() -> in(binary.right(), depth));
+      case Expr.Logical logical -> in(logical.left(), depth).or(() -> in(logical.right(), depth));
+      case Expr.Ternary ternary -> in(ternary.condition(), depth)
+          .or(() -> in(ternary.left(), depth))
+          .or(() -> in(ternary.right(), depth));
+      case Expr.Unary unary -> in(unary.right(), depth);
+      case Expr.Await await -> in(await.value(), depth);
+      case Expr.Grouping grouping -> in(grouping.expr(), depth);
+      case Expr.Call call -> {
+        Optional<Token> write = in(call.callee(), depth);
+        for (Expr argument : call.arguments()) {
+          write = write.or(() -> in(argument, depth));
+        }
+        yield write;
+      }
+      case Expr.Interpolation interpolation -> {
+        Optional<Token> write = Optional.empty();
+        for (Expr value : interpolation.values()) {
+          write = write.or(() -> in(value, depth));
+        }
+        yield write;
+      }
+      case Expr.Get get -> in(get.object(), depth);
+      case Expr.ArrayCreation creation -> in(creation.size(), depth);
+      case Expr.ArrayIndex index -> in(index.array(), depth).or(() -> in(index.idx(), depth));
+      case Expr.Function function -> inStmts(function.body(), depth + 1);
+      case Expr.Flat flat -> inFlat(flat.code(), flat.root(), depth);
+      case Expr.Literal literal -> Optional.empty();
+      case Expr.Variable variable -> Optional.empty();
+      case Expr.This thisExpr -> Optional.empty();
+      case Expr.Super superExpr -> Optional.empty();
+    };
+  }
+
+  // Flat nodes only hold reads; assignments can only appear in nested trees
+  private Optional<Token> inFlat(FlatCode code, int node, int depth) {
+    return switch (code.kind(node)) {
+      case FlatCode.UNARY -> inFlat(code, code.a(node), depth);
+      case FlatCode.BINARY, FlatCode.LOGICAL -> inFlat(code, code.a(node), depth)
+          .or(() -> inFlat(code, code.b(node), depth));
+      case FlatCode.TERNARY -> inFlat(code, code.a(node), depth)
+          .or(() -> inFlat(code, code.b(node), depth))
+          .or(() -> inFlat(code, code.c(node), depth));
+      case FlatCode.TREE -> in((Expr) code.constant(code.a(node)), depth);
+      default -> Optional.empty();
+    };
+  }
+}
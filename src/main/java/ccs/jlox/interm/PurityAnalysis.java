@@ -0,0 +1,377 @@
+package ccs.jlox.interm;
+
+import ccs.jlox.ast.Expr;
+import ccs.jlox.ast.Stmt;
+import ccs.jlox.ast.Token;
+import ccs.jlox.error.ErrorHandler;
+import ccs.jlox.error.RuntimeError;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.Stack;
+
+// Marks the function declarations of a resolved unit whose result only depends on their arguments.
+// A pure function may only assign to its own variables and may only read its own variables and
+// functions declared with `fun` that are never reassigned and are pure themselves. Any other global
+// (natives such as print, clock and sleep included), await, debug and imports make it impure.
+// Methods are never pure since they see `this`. Deferred bodies are only parsed when @memo
+// functions need them: those of functions nested in an annotated one and of the global functions
+// they call, transitively. Any other deferred body counts as impure.
+// Purity is the greatest fixpoint over the call graph, so recursive functions can be pure.
+public final class PurityAnalysis {
+  private final Map<Integer, VariableLocation> locals;
+  private final ErrorHandler errorHandler;
+  private final Stack<Map<String, Declaration>> scopes = new Stack<>();
+  private final Map<String, Declaration> globals = new HashMap<>();
+  private final Set<String> assignedGlobals = new HashSet<>();
+  // Declarations local variables resolve to. Globals are looked up by name once all are known.
+  private final Map<Expr, Declaration> targets = new IdentityHashMap<>();
+  private final List<Stmt.Function> functions = new ArrayList<>();
+  private final Set<Stmt.Function> impure = Collections.newSetFromMap(new IdentityHashMap<>());
+  // Whether deferred bodies met while collecting are parsed, and the globals read meanwhile
+  private boolean forcing = false;
+  private final Queue<String> calledGlobals = new ArrayDeque<>();
+  private final Set<String> forcedGlobals = new HashSet<>();
+
+  private PurityAnalysis(Map<Integer, VariableLocation> locals, ErrorHandler errorHandler) {
+    this.locals = locals;
+    this.errorHandler = errorHandler;
+  }
+
+  public static void analyze(
+      List<Stmt> statements, Map<Integer, VariableLocation> locals, ErrorHandler errorHandler) {
+    PurityAnalysis analysis = new PurityAnalysis(locals, errorHandler);
+    analysis.collectStmts(statements);
+    analysis.forceCallees();
+    analysis.assignedGlobals.stream()
+        .map(analysis.globals::get)
+        .filter(declaration -> declaration != null)
+        .forEach(declaration -> declaration.assigned = true);
+    analysis.classify();
+  }
+
+  private void classify() {
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (Stmt.Function function : functions) {
+        if (!impure.contains(function) && impurity(function).isPresent()) {
+          impure.add(function);
+          changed = true;
+        }
+      }
+    }
+
+    for (Stmt.Function function : functions) {
+      if (!impure.contains(function)) {
+        function.memo().markPure();
+      } else if (function.memo().isRequested()) {
+        errorHandler.error(
+            function.name(),
+            String.format(
+                "Can't memoize '%s' since it is not pure: %s.",
+                function.name().lexeme(), impurity(function).orElseThrow()));
+      }
+    }
+  }
+
+  // Why the function is not pure given what is known to be impure so far, if it is not
+  private Optional<String> impurity(Stmt.Function function) {
+    if (function.function().async()) return Optional.of("it is async");
+    if (isDeferred(function)) return Optional.of("its body is deferred");
+    return inStmts(function.function().body(), 0);
+  }
+
+  private static boolean isDeferred(Stmt.Function function) {
+    List<Stmt> body = function.function().body();
+    return body.size() == 1
+        && body.get(0) instanceof Stmt.Deferred deferred
+        && !deferred.body().isParsed();
+  }
+
+  // Parses the deferred bodies of the global functions read by the code collected while forcing.
+  // Globals are only all known once the unit is collected, so these come last.
+  private void forceCallees() {
+    forcing = true;
+    for (String name = calledGlobals.poll(); name != null; name = calledGlobals.poll()) {
+      Declaration declaration = globals.get(name);
+      if (declaration == null || declaration.function == null) continue;
+      if (isDeferred(declaration.function) && forcedGlobals.add(name)) {
+        collectFunction(declaration.function.function());
+      }
+    }
+    forcing = false;
+  }
+
+  private void force(Stmt.Deferred deferredStmt) {
+    try {
+      collectStmts(deferredStmt.body().statements());
+    } catch (RuntimeError error) {
+      // The body stays deferred, so impure, and reports the error once called
+    }
+  }
+
+  // Declarations, mirroring the scopes of the resolver
+
+  private void collectStmts(List<Stmt> statements) {
+    statements.forEach(this::collect);
+  }
+
+  private void collect(Stmt stmt) {
+    switch (stmt) {
+      case Stmt.Expression exprStmt -> collect(exprStmt.expr());
+      case Stmt.If ifStmt -> {
+        collect(ifStmt.condition());
+        collect(ifStmt.thenBranch());
+        if (ifStmt.elseBranch() != null) collect(ifStmt.elseBranch());
+      }
+      case Stmt.While whileStmt -> {
+        collect(whileStmt.condition());
+        collect(whileStmt.body());
+      }
+      case Stmt.Var varStmt -> {
+        declare(varStmt.name(), new Declaration(null));
+        if (varStmt.initializer() != null) collect(varStmt.initializer());
+      }
+      case Stmt.Function functionStmt -> {
+        declare(functionStmt.name(), new Declaration(functionStmt));
+        functions.add(functionStmt);
+        boolean enclosingForcing = forcing;
+        forcing |= functionStmt.memo().isRequested();
+        collectFunction(functionStmt.function());
+        forcing = enclosingForcing;
+      }
+      case Stmt.Class classStmt -> {
+        declare(classStmt.name(), new Declaration(null));
+        if (classStmt.superclass() != null) {
+          collect(classStmt.superclass());
+          scopes.push(new HashMap<>());
+        }
+        scopes.push(new HashMap<>());
+        classStmt.methods().forEach(method -> collectFunction(method.function()));
+        scopes.pop();
+        if (classStmt.superclass() != null) scopes.pop();
+      }
+      case Stmt.Return returnStmt -> {
+        if (returnStmt.value() != null) collect(returnStmt.value());
+      }
+      case Stmt.Block blockStmt -> {
+        scopes.push(new HashMap<>());
+        collectStmts(blockStmt.statements());
+        scopes.pop();
+      }
+      case Stmt.Import importStmt -> declare(importStmt.name(), new Declaration(null));
+      case Stmt.Debug debugStmt -> {}
+      case Stmt.Break breakStmt -> {}
+      case Stmt.Deferred deferredStmt -> {
+        if (forcing) force(deferredStmt);
+      }
+    }
+  }
+
+  private void collectFunction(Expr.Function function) {
+    scopes.push(new HashMap<>());
+    function.params().forEach(param -> declare(param, new Declaration(null)));
+    collectStmts(function.body());
+    scopes.pop();
+  }
+
+  private void collect(Expr expr) {
+    switch (expr) {
+      case Expr.Variable variable -> {
+        target(variable, variable.name());
+        if (forcing && locals.get(System.identityHashCode(variable)) == null) {
+          calledGlobals.add(variable.name().lexeme());
+        }
+      }
+      case Expr.Assignment assignment -> {
+        if (assignment.variable() instanceof Expr.Variable variable) {
+          Declaration declaration = target(assignment, variable.name());
+          if (declaration != null) declaration.assigned = true;
+          if (locals.get(System.identityHashCode(assignment)) == null) {
+            assignedGlobals.add(variable.name().lexeme());
+          }
+        } else {
+          collect(assignment.variable());
+        }
+        collect(assignment.value());
+      }
+      case Expr.Binary binary -> {
+        collect(binary.left());
+        collect(binary.right());
+      }
+      case Expr.Logical logical -> {
+        collect(logical.left());
+        collect(logical.right());
+      }
+      case Expr.Ternary ternary -> {
+        collect(ternary.condition());
+        collect(ternary.left());
+        collect(ternary.right());
+      }
+      case Expr.Unary unary -> collect(unary.right());
+      case Expr.Await await -> collect(await.value());
+      case Expr.Grouping grouping -> collect(grouping.expr());
+      case Expr.Call call -> {
+        collect(call.callee());
+        call.arguments().forEach(this::collect);
+      }
+      case Expr.Interpolation interpolation -> interpolation.values().forEach(this::collect);
+      case Expr.Get get -> collect(get.object());
+      case Expr.ArrayCreation creation -> collect(creation.size());
+      case Expr.ArrayIndex index -> {
+        collect(index.array());
+        collect(index.idx());
+      }
+      case Expr.Function function -> collectFunction(function);
+      case Expr.Literal literal -> {}
+      case Expr.This thisExpr -> {}
+      case Expr.Super superExpr -> {}
+      case Expr.Flat flat -> {}
+    }
+  }
+
+  private void declare(Token name, Declaration declaration) {
+    if (!scopes.isEmpty()) {
+      scopes.peek().put(name.lexeme(), declaration);
+      return;
+    }
+    // A global declared twice might be either one when read
+    Declaration previous = globals.put(name.lexeme(), declaration);
+    if (previous != null) {
+      previous.assigned = true;
+      declaration.assigned = true;
+    }
+  }
+
+  private Declaration target(Expr expr, Token name) {
+    VariableLocation location = locals.get(System.identityHashCode(expr));
+    if (location == null) return null;
+    Declaration declaration = scopes.get(scopes.size() - 1 - location.depth()).get(name.lexeme());
+    if (declaration != null) targets.put(expr, declaration);
+    return declaration;
+  }
+
+  // Impurities, where `depth` counts the environments between the code and the function's own
+
+  private Optional<String> inStmts(List<Stmt> statements, int depth) {
+    for (Stmt stmt : statements) {
+      Optional<String> impurity = in(stmt, depth);
+      if (impurity.isPresent()) return impurity;
+    }
+    return Optional.empty();
+  }
+
+  private Optional<String> in(Stmt stmt, int depth) {
+    return switch (stmt) {
+      case Stmt.Expression exprStmt -> in(exprStmt.expr(), depth);
+      case Stmt.If ifStmt -> in(ifStmt.condition(), depth)
+          .or(() -> in(ifStmt.thenBranch(), depth))
+          .or(
+              () ->
+                  ifStmt.elseBranch() == null ? Optional.empty() : in(ifStmt.elseBranch(), depth));
+      case Stmt.While whileStmt -> in(whileStmt.condition(), depth)
+          .or(() -> in(whileStmt.body(), depth));
+      case Stmt.Var varStmt -> varStmt.initializer() == null
+          ? Optional.empty()
+          : in(varStmt.initializer(), depth);
+      case Stmt.Function functionStmt -> inStmts(functionStmt.function().body(), depth + 1);
+      case Stmt.Class classStmt -> {
+        Optional<String> impurity =
+            classStmt.superclass() == null ? Optional.empty() : in(classStmt.superclass(), depth);
+        int methodDepth = depth + (classStmt.superclass() == null ? 2 : 3);
+        for (Stmt.Function method : classStmt.methods()) {
+          impurity = impurity.or(() -> inStmts(method.function().body(), methodDepth));
+        }
+        yield impurity;
+      }
+      case Stmt.Return returnStmt -> returnStmt.value() == null
+          ? Optional.empty()
+          : in(returnStmt.value(), depth);
+      case Stmt.Block blockStmt -> inStmts(blockStmt.statements(), depth + 1);
+      case Stmt.Import importStmt -> Optional.of("it imports on line " + importStmt.name().line());
+      case Stmt.Debug debugStmt -> Optional.of("it uses debug on line " + debugStmt.line());
+      case Stmt.Deferred deferredStmt -> deferredStmt.body().isParsed()
+          ? inStmts(deferredStmt.body().statements(), depth)
+          : Optional.of("it has a deferred body");
+      case Stmt.Break breakStmt -> Optional.empty();
+    };
+  }
+
+  private Optional<String> in(Expr expr, int depth) {
+    return switch (expr) {
+      case Expr.Variable variable -> read(variable, depth);
+      case Expr.Assignment assignment -> {
+        if (assignment.variable() instanceof Expr.Variable variable) {
+          VariableLocation location = locals.get(System.identityHashCode(assignment));
+          if (location == null || location.depth() > depth) yield uses(variable.name());
+        }
+        yield in(assignment.variable(), depth).or(() -> in(assignment.value(), depth));
+      }
+      case Expr.Binary binary -> in(binary.left(), depth).or(() -> in(binary.right(), depth));
+      case Expr.Logical logical -> in(logical.left(), depth).or(() -> in(logical.right(), depth));
+      case Expr.Ternary ternary -> in(ternary.condition(), depth)
+          .or(() -> in(ternary.left(), depth))
+          .or(() -> in(ternary.right(), depth));
+      case Expr.Unary unary -> in(unary.right(), depth);
+      case Expr.Await await -> uses(await.keyword());
+      case Expr.Grouping grouping -> in(grouping.expr(), depth);
+      case Expr.Call call -> {
+        Optional<String> impurity = in(call.callee(), depth);
+        for (Expr argument : call.arguments()) {
+          impurity = impurity.or(() -> in(argument, depth));
+        }
+        yield impurity;
+      }
+      case Expr.Interpolation interpolation -> {
+        Optional<String> impurity = Optional.empty();
+        for (Expr value : interpolation.values()) {
+          impurity = impurity.or(() -> in(value, depth));
+        }
+        yield impurity;
+      }
+      case Expr.Get get -> in(get.object(), depth);
+      case Expr.ArrayCreation creation -> in(creation.size(), depth);
+      case Expr.ArrayIndex index -> in(index.array(), depth).or(() -> in(index.idx(), depth));
+      case Expr.Function function -> inStmts(function.body(), depth + 1);
+      case Expr.Flat flat -> Optional.of("it was flattened before the analysis");
+      case Expr.Literal literal -> Optional.empty();
+      case Expr.This thisExpr -> Optional.empty();
+      case Expr.Super superExpr -> Optional.empty();
+    };
+  }
+
+  private Optional<String> read(Expr.Variable variable, int depth) {
+    VariableLocation location = locals.get(System.identityHashCode(variable));
+    if (location != null && location.depth() <= depth) return Optional.empty();
+    Declaration declaration =
+        location != null ? targets.get(variable) : globals.get(variable.name().lexeme());
+    boolean pureFunction =
+        declaration != null
+            && declaration.function != null
+            && !declaration.assigned
+            && !impure.contains(declaration.function);
+    return pureFunction ? Optional.empty() : uses(variable.name());
+  }
+
+  private static Optional<String> uses(Token token) {
+    return Optional.of(String.format("it uses '%s' on line %d", token.lexeme(), token.line()));
+  }
+
+  private static final class Declaration {
+    private final Stmt.Function function;
+    private boolean assigned = false;
+
+    Declaration(Stmt.Function function) {
+      this.function = function;
+    }
+  }
+}
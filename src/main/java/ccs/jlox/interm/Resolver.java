@@ -4,28 +4,48 @@ import static ccs.jlox.interm.VariableState.DECLARED;
 import static ccs.jlox.interm.VariableState.DEFINED;
 import static ccs.jlox.interm.VariableState.UNDECLARED;
 
-import ccs.jlox.Lox;
 import ccs.jlox.ast.Expr;
 import ccs.jlox.ast.Stmt;
 import ccs.jlox.ast.Token;
+import ccs.jlox.error.CompileError;
 import ccs.jlox.error.ErrorHandler;
+import ccs.jlox.error.RuntimeError;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class Resolver {
-  private static final ErrorHandler ERROR_HANDLER = Lox.getErrorHandler();
-
+  private final ErrorHandler errorHandler;
   private final Stack<Map<String, VarStateSlot>> scopes = new Stack<>();
-  private final Map<Integer, VariableLocation> locals = new HashMap<>();
+  // Deferred function bodies add to this map when they run, possibly from another thread
+  private final Map<Integer, VariableLocation> locals;
   private final List<String> imports = new ArrayList<>();
   private FunctionType currentFunction = FunctionType.NONE;
   private ClassType currentClass = ClassType.NONE;
 
+  public Resolver(ErrorHandler errorHandler) {
+    this.errorHandler = errorHandler;
+    this.locals = new ConcurrentHashMap<>();
+  }
+
+  private Resolver(
+      ErrorHandler errorHandler,
+      Map<Integer, VariableLocation> locals,
+      List<Map<String, VarStateSlot>> enclosingScopes,
+      FunctionType currentFunction,
+      ClassType currentClass) {
+    this.errorHandler = errorHandler;
+    this.locals = locals;
+    this.currentFunction = currentFunction;
+    this.currentClass = currentClass;
+    enclosingScopes.forEach(scope -> scopes.push(new HashMap<>(scope)));
+  }
+
   public ResolverContext resolve(List<Stmt> statements) {
     _resolve(statements);
     return new ResolverContext(locals, imports);
@@ -50,6 +70,7 @@ public class Resolver {
       case Stmt.Import importStmt -> resolveImportStmt(importStmt);
       case Stmt.Debug debugStmt -> resolveDebugStmt(debugStmt);
       case Stmt.Break breakStmt -> resolveBreakStmt(breakStmt);
+      case Stmt.Deferred deferredStmt -> resolveDeferredStmt(deferredStmt);
     }
   }
 
@@ -61,12 +82,12 @@ public class Resolver {
 
   private void resolveReturnStmt(Stmt.Return stmt) {
     if (currentFunction == FunctionType.NONE) {
-      ERROR_HANDLER.error(stmt.keyword(), "Can't return from top-level code.");
+      errorHandler.error(stmt.keyword(), "Can't return from top-level code.");
     }
 
     if (stmt.value() != null) {
       if (currentFunction == FunctionType.INITIALIZER) {
-        ERROR_HANDLER.error(stmt.keyword(), "Can't return a value from an initializer.");
+        errorHandler.error(stmt.keyword(), "Can't return a value from an initializer.");
       }
       resolve(stmt.value());
     }
@@ -97,7 +118,7 @@ public class Resolver {
 
     if (stmt.superclass() != null
         && stmt.name().lexeme().equals(stmt.superclass().name().lexeme())) {
-      ERROR_HANDLER.error(stmt.superclass().name(), "A class can't inherit from itself.");
+      errorHandler.error(stmt.superclass().name(), "A class can't inherit from itself.");
     }
 
     if (stmt.superclass() != null) {
@@ -119,6 +140,9 @@ public class Resolver {
       FunctionType declaration = FunctionType.METHOD;
       if (method.name().lexeme().equals("init")) {
         declaration = FunctionType.INITIALIZER;
+        if (method.function().async()) {
+          errorHandler.error(method.name(), "Can't make an initializer async.");
+        }
       }
       resolveFunction(method.function(), declaration);
     }
@@ -141,6 +165,11 @@ public class Resolver {
   private void resolveFunction(Expr.Function functionExpr, FunctionType type) {
     FunctionType enclosingFunction = currentFunction;
     currentFunction = type;
+    if (functionExpr.async() && type == FunctionType.FUNCTION) {
+      currentFunction = FunctionType.ASYNC_FUNCTION;
+    } else if (functionExpr.async() && type == FunctionType.METHOD) {
+      currentFunction = FunctionType.ASYNC_METHOD;
+    }
 
     beginScope();
     for (Token param : functionExpr.params()) {
@@ -175,6 +204,39 @@ public class Resolver {
     // NO-OP
   }
 
+  // Remembers the scopes around the body so it can be resolved as if it had been done right here.
+  // The parser's draft of the body is resolved now against a scratch map, to report its errors and
+  // find its imports at load time.
+  private void resolveDeferredStmt(Stmt.Deferred deferredStmt) {
+    List<Map<String, VarStateSlot>> enclosingScopes =
+        scopes.stream().<Map<String, VarStateSlot>>map(HashMap::new).toList();
+    FunctionType enclosingFunction = currentFunction;
+    ClassType enclosingClass = currentClass;
+
+    deferredStmt
+        .body()
+        .setResolver(
+            statements -> {
+              ErrorHandler bodyErrorHandler = new ErrorHandler();
+              new Resolver(
+                      bodyErrorHandler, locals, enclosingScopes, enclosingFunction, enclosingClass)
+                  ._resolve(statements);
+              if (bodyErrorHandler.hadCompileError()) {
+                CompileError error = bodyErrorHandler.getCompileErrors().get(0);
+                throw new RuntimeError(error.line(), error.message());
+              }
+            });
+
+    List<Stmt> draft = deferredStmt.body().takeDraft();
+    if (draft != null) {
+      Resolver checker =
+          new Resolver(
+              errorHandler, new HashMap<>(), enclosingScopes, enclosingFunction, enclosingClass);
+      checker._resolve(draft);
+      imports.addAll(checker.imports);
+    }
+  }
+
   private void resolve(Expr expr) {
     switch (expr) {
       case Expr.Literal lit -> resolveLiteralExpr(lit);
@@ -182,9 +244,11 @@ public class Resolver {
       case Expr.Variable variable -> resolveVarExpr(variable);
       case Expr.Assignment assignment -> resolveAssignExpr(assignment);
       case Expr.Unary unary -> resolveUnaryExpr(unary);
+      case Expr.Await await -> resolveAwaitExpr(await);
       case Expr.Binary binary -> resolveBinaryExpr(binary);
       case Expr.Ternary ternary -> resolveTernaryExpr(ternary);
       case Expr.Grouping group -> resolveGroupingExpr(group);
+      case Expr.Interpolation interpolation -> resolveInterpolationExpr(interpolation);
       case Expr.Call call -> resolveCallExpr(call);
       case Expr.Get get -> resolveGetExpr(get);
       case Expr.This thisExpr -> resolveThisExpr(thisExpr);
@@ -192,9 +256,14 @@ public class Resolver {
       case Expr.ArrayCreation arrayCExpr -> resolveArrayCreationExpr(arrayCExpr);
       case Expr.ArrayIndex arrayIndex -> resolveArrayIndexExpr(arrayIndex);
       case Expr.Function functionExpr -> resolveFunctionExpr(functionExpr);
+      case Expr.Flat flat -> resolveFlatExpr(flat);
     }
   }
 
+  private void resolveFlatExpr(Expr.Flat expr) {
+    // NO-OP: flattened after resolution, with locations already inlined
+  }
+
   private void resolveLiteralExpr(Expr.Literal expr) {
     // NO-OP
   }
@@ -211,7 +280,7 @@ public class Resolver {
               .map(VarStateSlot::state)
               .orElse(UNDECLARED);
       if (variableState == DECLARED) {
-        ERROR_HANDLER.error(expr.name(), "Can't read local variable in its own initializer.");
+        errorHandler.error(expr.name(), "Can't read local variable in its own initializer.");
       }
     }
     resolveLocal(expr, expr.name());
@@ -235,6 +304,14 @@ public class Resolver {
     resolve(expr.right());
   }
 
+  private void resolveAwaitExpr(Expr.Await expr) {
+    if (currentFunction != FunctionType.ASYNC_FUNCTION
+        && currentFunction != FunctionType.ASYNC_METHOD) {
+      errorHandler.error(expr.keyword(), "Can't use 'await' outside of an async function.");
+    }
+    resolve(expr.value());
+  }
+
   private void resolveLocal(Expr expr, Token name) {
     for (int i = scopes.size() - 1; i >= 0; i--) {
       // XXX: We should be able to only access the key once
@@ -262,6 +339,10 @@ public class Resolver {
     resolve(expr.right());
   }
 
+  private void resolveInterpolationExpr(Expr.Interpolation expr) {
+    expr.values().forEach(this::resolve);
+  }
+
   private void resolveGroupingExpr(Expr.Grouping expr) {
     resolve(expr.expr());
   }
@@ -279,7 +360,7 @@ public class Resolver {
 
   private void resolveThisExpr(Expr.This thisExpr) {
     if (currentClass == ClassType.NONE) {
-      ERROR_HANDLER.error(thisExpr.keyword(), "Can't use 'this' outside of a class.");
+      errorHandler.error(thisExpr.keyword(), "Can't use 'this' outside of a class.");
     }
 
     resolveLocal(thisExpr, thisExpr.keyword());
@@ -287,9 +368,9 @@ public class Resolver {
 
   private void resolveSuperExpr(Expr.Super superExpr) {
     if (currentClass == ClassType.NONE) {
-      ERROR_HANDLER.error(superExpr.keyword(), "Can't use 'super' outside of a class.");
+      errorHandler.error(superExpr.keyword(), "Can't use 'super' outside of a class.");
     } else if (currentClass != ClassType.SUBCLASS) {
-      ERROR_HANDLER.error(superExpr.keyword(), "Can't use 'super' in a class with no superclass.");
+      errorHandler.error(superExpr.keyword(), "Can't use 'super' in a class with no superclass.");
     }
 
     resolveLocal(superExpr, superExpr.keyword());
@@ -322,7 +403,7 @@ public class Resolver {
     var scope = scopes.peek();
 
     if (scope.containsKey(name.lexeme())) {
-      ERROR_HANDLER.error(name, "Already variable with this name in this scope.");
+      errorHandler.error(name, "Already variable with this name in this scope.");
     }
 
     int nextSlot = scope.size();
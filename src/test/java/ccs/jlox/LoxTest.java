@@ -1,11 +1,36 @@
 package ccs.jlox;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
 
+import ccs.jlox.backend.Interpreter;
+import ccs.jlox.backend.JsonReader;
+import ccs.jlox.backend.MappedFile;
+import ccs.jlox.backend.MemoCache;
+import ccs.jlox.backend.OutputSink;
+import ccs.jlox.backend.ffi.NumericModule;
+import ccs.jlox.cache.ModuleCache;
+import ccs.jlox.error.CompileError;
 import ccs.jlox.error.ErrorHandler;
+import ccs.jlox.error.RuntimeError;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,11 +59,386 @@ final class LoxTest {
     }
   }
 
+  @Test
+  void runTestsWithLazyImports() throws IOException {
+    for (File file : getFilesInDir("tests/lang")) {
+      if (file.getName().endsWith("_test.lox")) {
+        runTestFile(file, true);
+      }
+    }
+    for (File file : getFilesInDir("tests/std")) {
+      if (file.getName().endsWith("_test.lox")) {
+        runTestFile(file, true);
+      }
+    }
+  }
+
+  @Test
+  void lazyImportsAreOnlyCompiledWhenExecuted() throws IOException {
+    ErrorHandler errorHandler = Lox.getErrorHandler();
+    try {
+      Lox.runFile("tests/errors/lazy_import.lox", false, true);
+
+      assertThat(errorHandler.getCompileErrors())
+          .extracting(CompileError::message)
+          .containsExactly("Expect parameter name.");
+      assertThat(errorHandler.getRuntimeErrors())
+          .extracting(RuntimeError::getLine, RuntimeError::getMessage)
+          .containsExactly(tuple(2, "Could not compile module compile_errors.first."));
+    } finally {
+      errorHandler.reset();
+    }
+  }
+
+  @Test
+  void runTestsWithDeferredFunctionBodies() throws IOException {
+    try {
+      LoxCompiler.setDeferFunctionBodies(true);
+      runLangTests();
+      runStdTests();
+    } finally {
+      LoxCompiler.setDeferFunctionBodies(false);
+    }
+  }
+
+  @Test
+  void runTestsWithFlatExpressions() throws IOException {
+    try {
+      LoxCompiler.setFlattenExpressions(true);
+      runLangTests();
+      runStdTests();
+    } finally {
+      LoxCompiler.setFlattenExpressions(false);
+    }
+  }
+
+  @Test
+  void runTestsWithMemoization() throws IOException {
+    try {
+      MemoCache.setMemoizeAll(true);
+      runLangTests();
+      runStdTests();
+    } finally {
+      MemoCache.setMemoizeAll(false);
+    }
+  }
+
+  @Test
+  void runTestsWithScalarKernels() throws IOException {
+    try {
+      NumericModule.setVectorized(false);
+      runStdTests();
+    } finally {
+      NumericModule.setVectorized(true);
+    }
+  }
+
+  @Test
+  void runTestsInBatch() {
+    List<Path> scripts =
+        Stream.concat(Stream.of(getFilesInDir("tests/lang")), Stream.of(getFilesInDir("tests/std")))
+            .filter(file -> file.getName().endsWith("_test.lox"))
+            .map(File::toPath)
+            .toList();
+
+    try (BatchRunner runner = new BatchRunner(4)) {
+      assertThat(runner.runScripts(scripts))
+          .hasSize(scripts.size())
+          .allSatisfy(result -> assertThat(result.succeeded()).as(result.script()).isTrue());
+    }
+  }
+
+  @Test
+  void batchRunsCaptureOutputPerInput() {
+    List<String> inputs = IntStream.range(0, 50).mapToObj(Integer::toString).toList();
+
+    try (BatchRunner runner = new BatchRunner(4)) {
+      assertThat(runner.runInputs(Path.of("tests/batch/echo.lox"), inputs))
+          .extracting(BatchRunner.Result::output)
+          .containsExactlyElementsOf(
+              inputs.stream().map(input -> input + input + System.lineSeparator()).toList());
+    }
+  }
+
+  @Test
+  void outputCanBeRedirected() throws IOException {
+    String expected =
+        IntStream.range(0, 20000)
+            .mapToObj(i -> i + System.lineSeparator())
+            .collect(Collectors.joining());
+    ErrorHandler errorHandler = new ErrorHandler();
+    Map<String, CompilationUnit> units =
+        LoxCompiler.compile(Path.of("tests/batch/count.lox"), errorHandler);
+
+    StringBuilder text = new StringBuilder();
+    new Interpreter(units, errorHandler, OutputSink.of(text)).execute("__main__");
+    assertThat(text.toString()).isEqualTo(expected);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    OutputSink sink = OutputSink.of(Channels.newChannel(bytes)).async();
+    new Interpreter(units, errorHandler, sink).execute("__main__");
+    assertThat(bytes.toString(StandardCharsets.UTF_8)).isEqualTo(expected);
+    assertThat(errorHandler.hadRuntimeError()).isFalse();
+  }
+
+  @Test
+  void outputIsFlushedOncePerProgram() throws IOException {
+    ErrorHandler errorHandler = new ErrorHandler();
+    Map<String, CompilationUnit> units =
+        LoxCompiler.compile(Path.of("tests/batch/imports.lox"), errorHandler);
+    CountingWriter writer = new CountingWriter();
+
+    new Interpreter(units, errorHandler, OutputSink.of(writer)).execute("__main__");
+    assertThat(writer.toString()).isEqualTo("2" + System.lineSeparator());
+    assertThat(writer.flushes).isEqualTo(1);
+  }
+
+  @Test
+  void outputIsKeptWhenAWriteFails() {
+    FailingWriter writer = new FailingWriter();
+    OutputSink out = OutputSink.of(writer);
+
+    out.print("a");
+    writer.failures = 1;
+    assertThatThrownBy(out::flush).isInstanceOf(UncheckedIOException.class);
+    out.print("b");
+    out.flush();
+    assertThat(writer.toString()).isEqualTo("ab");
+  }
+
+  @Test
+  void threadsCanPrintConcurrently() throws IOException {
+    ErrorHandler errorHandler = new ErrorHandler();
+    Map<String, CompilationUnit> units =
+        LoxCompiler.compile(Path.of("tests/batch/threads.lox"), errorHandler);
+    StringBuilder text = new StringBuilder();
+
+    new Interpreter(units, errorHandler, OutputSink.of(text)).execute("__main__");
+    assertThat(text.toString().lines().mapToInt(Integer::parseInt).sum())
+        .isEqualTo(4 * IntStream.range(0, 20000).sum());
+    assertThat(errorHandler.hadRuntimeError()).isFalse();
+  }
+
+  @Test
+  void unclosedFilesAreWrittenOutAtExit(@TempDir Path dir) throws IOException {
+    ErrorHandler errorHandler = new ErrorHandler();
+    Map<String, CompilationUnit> units =
+        LoxCompiler.compile(Path.of("tests/batch/unclosed.lox"), errorHandler);
+    Path file = dir.resolve("unclosed.txt");
+
+    Interpreter interpreter =
+        new Interpreter(units, errorHandler, OutputSink.of(new StringBuilder()));
+    interpreter.defineMainGlobal("input", file.toString());
+    interpreter.execute("__main__");
+    assertThat(errorHandler.hadRuntimeError()).isFalse();
+    assertThat(Files.readString(file))
+        .startsWith("line 0 ")
+        .endsWith("line 999 ")
+        .hasSize(IntStream.range(0, 1000).map(i -> ("line " + i + " ").length()).sum());
+  }
+
+  @Test
+  void invalidPathsAreRuntimeErrors() {
+    assertThatThrownBy(() -> MappedFile.map("bad\0path", 3))
+        .isInstanceOf(RuntimeError.class)
+        .hasMessageStartingWith("Could not map 'bad");
+    assertThatThrownBy(() -> JsonReader.open("bad\0path", 3))
+        .isInstanceOf(RuntimeError.class)
+        .hasMessageStartingWith("Could not open 'bad");
+  }
+
+  @Test
+  void arrayAccessIsChecked() {
+    List<String> inputs =
+        List.of(
+            "read", "write", "fraction", "byte", "bool", "types", "range", "mixed", "comparator");
+
+    try (BatchRunner runner = new BatchRunner(4)) {
+      assertThat(runner.runInputs(Path.of("tests/errors/array_errors.lox"), inputs))
+          .flatExtracting(BatchRunner.Result::runtimeErrors)
+          .extracting(RuntimeError::getLine, RuntimeError::getMessage)
+          .containsExactly(
+              tuple(6, "Index 3 is out of bounds for an array of size 3."),
+              tuple(7, "Index -1 is out of bounds for an array of size 3."),
+              tuple(8, "Array index must be an integer."),
+              tuple(9, "Byte arrays can only hold integers from 0 to 255."),
+              tuple(10, "Bool arrays can only hold booleans."),
+              tuple(11, "Can only copy between arrays of the same type."),
+              tuple(12, "Copy range is out of bounds."),
+              tuple(13, "Can only order arrays of numbers or of strings; use sortBy instead."),
+              tuple(14, "Comparator must return a number."));
+    }
+  }
+
+  @Test
+  void deferredFunctionBodiesReportErrorsAtLoadTime() throws IOException {
+    ErrorHandler errorHandler = Lox.getErrorHandler();
+    try {
+      LoxCompiler.setDeferFunctionBodies(true);
+
+      Lox.runFile("tests/errors/deferred_body.lox", false);
+      assertThat(errorHandler.getCompileErrors())
+          .extracting(CompileError::line, CompileError::message)
+          .containsExactly(tuple(2, "Expect expression."), tuple(6, "Expect expression."));
+      assertThat(errorHandler.getRuntimeErrors()).isEmpty();
+      errorHandler.reset();
+
+      Lox.runFile("tests/errors/uncalled_body.lox", false);
+      assertThat(errorHandler.getCompileErrors())
+          .extracting(CompileError::line, CompileError::message)
+          .containsExactly(
+              tuple(3, "Already variable with this name in this scope."),
+              tuple(4, "Can't use 'this' outside of a class."),
+              tuple(10, "Can't use 'super' in a class with no superclass."));
+      errorHandler.reset();
+
+      Lox.runFile("tests/errors/unbalanced_body.lox", false);
+      assertThat(errorHandler.getCompileErrors())
+          .extracting(CompileError::line, CompileError::message)
+          .containsExactly(tuple(3, "Unmatched '}'."));
+    } finally {
+      LoxCompiler.setDeferFunctionBodies(false);
+      errorHandler.reset();
+    }
+  }
+
+  @Test
+  void runTestsWithModuleCache(@TempDir Path cacheDir) throws IOException {
+    try {
+      ModuleCache.setDirectory(cacheDir);
+      ModuleCache.clearMemory();
+      runLangTests();
+      runStdTests();
+      try (Stream<Path> cachedFiles = Files.list(cacheDir)) {
+        assertThat(cachedFiles).isNotEmpty();
+      }
+
+      // Second run is served from the files written by the first one
+      ModuleCache.clearMemory();
+      runLangTests();
+      runStdTests();
+    } finally {
+      ModuleCache.setDirectory(null);
+      ModuleCache.clearMemory();
+    }
+  }
+
+  @Test
+  void compileErrorsFollowImportOrder() throws IOException {
+    for (int i = 0; i < 10; i++) {
+      ErrorHandler errorHandler = new ErrorHandler();
+      LoxCompiler.compile(Path.of("tests/errors/compile_errors.lox"), errorHandler);
+
+      assertThat(errorHandler.getCompileErrors())
+          .extracting(CompileError::message)
+          .containsExactly(
+              "Can't return from top-level code.",
+              "Expect parameter name.",
+              "Can't use 'this' outside of a class.");
+    }
+  }
+
+  @Test
+  void awaitIsOnlyAllowedInAsyncFunctions() throws IOException {
+    ErrorHandler errorHandler = new ErrorHandler();
+    LoxCompiler.compile(Path.of("tests/errors/async_errors.lox"), errorHandler);
+
+    assertThat(errorHandler.getCompileErrors())
+        .extracting(CompileError::line, CompileError::message)
+        .containsExactly(
+            tuple(2, "Can't use 'await' outside of an async function."),
+            tuple(6, "Can't make an initializer async."),
+            tuple(9, "Can't use 'await' outside of an async function."));
+  }
+
+  @Test
+  @Timeout(60)
+  void failingAsyncTasksStillComplete() throws IOException {
+    ErrorHandler errorHandler = Lox.getErrorHandler();
+    try {
+      Lox.runFile("tests/errors/async_overflow.lox", false);
+
+      assertThat(errorHandler.getRuntimeErrors())
+          .extracting(RuntimeError::getLine, RuntimeError::getMessage)
+          .containsExactly(tuple(9, "Stack overflow."));
+    } finally {
+      errorHandler.reset();
+    }
+  }
+
+  @Test
+  @Timeout(60)
+  void threadsReportJavaErrorsAndFinishBeforeExit() throws IOException {
+    ErrorHandler errorHandler = Lox.getErrorHandler();
+    try {
+      Lox.runFile("tests/errors/thread_errors.lox", false);
+
+      assertThat(errorHandler.getRuntimeErrors())
+          .extracting(RuntimeError::getLine, RuntimeError::getMessage)
+          .containsExactly(
+              tuple(11, "Stack overflow."),
+              tuple(16, "Operands must be two numbers or two strings."));
+    } finally {
+      errorHandler.reset();
+    }
+  }
+
+  @Test
+  void parallelCallbacksCannotAssignOuterVariables() throws IOException {
+    ErrorHandler errorHandler = Lox.getErrorHandler();
+    try {
+      Lox.runFile("tests/errors/parallel_outer_write.lox", false);
+
+      assertThat(errorHandler.getRuntimeErrors())
+          .extracting(RuntimeError::getLine, RuntimeError::getMessage)
+          .containsExactly(
+              tuple(
+                  9,
+                  "Function countAll assigns to 'count' on line 5, which is declared outside of"
+                      + " it."));
+    } finally {
+      errorHandler.reset();
+    }
+  }
+
+  @Test
+  void memoizingImpureFunctionsIsAnError() throws IOException {
+    checkMemoErrors();
+  }
+
+  // The callees of annotated functions are parsed for the analysis, so the errors are the same
+  @Test
+  void memoizingImpureFunctionsIsAnErrorWithDeferredFunctionBodies() throws IOException {
+    try {
+      LoxCompiler.setDeferFunctionBodies(true);
+      checkMemoErrors();
+    } finally {
+      LoxCompiler.setDeferFunctionBodies(false);
+    }
+  }
+
+  private void checkMemoErrors() throws IOException {
+    ErrorHandler errorHandler = new ErrorHandler();
+    LoxCompiler.compile(Path.of("tests/errors/memo_errors.lox"), errorHandler);
+
+    assertThat(errorHandler.getCompileErrors())
+        .extracting(CompileError::line, CompileError::message)
+        .containsExactly(
+            tuple(4, "Can't memoize 'counted' since it is not pure: it uses 'calls' on line 5."),
+            tuple(10, "Can't memoize 'noisy' since it is not pure: it uses 'print' on line 11."),
+            tuple(
+                20, "Can't memoize 'indirect' since it is not pure: it uses 'helper' on line 21."));
+  }
+
   private void runTestFile(File file) throws IOException {
+    runTestFile(file, false);
+  }
+
+  private void runTestFile(File file, boolean lazyImports) throws IOException {
     ErrorHandler errorHandler = Lox.getErrorHandler();
 
     try {
-      Lox.runFile(file.getPath(), false);
+      Lox.runFile(file.getPath(), false, lazyImports);
 
       errorHandler
           .getCompileErrors()
@@ -66,4 +466,44 @@ final class LoxTest {
     }
     return files;
   }
+
+  private static final class CountingWriter extends StringWriter {
+    private int flushes = 0;
+
+    @Override
+    public void flush() {
+      flushes++;
+    }
+  }
+
+  // Fails the next `failures` writes
+  private static final class FailingWriter implements Appendable {
+    private final StringBuilder text = new StringBuilder();
+    private int failures = 0;
+
+    @Override
+    public Appendable append(CharSequence chunk) throws IOException {
+      return append(chunk, 0, chunk.length());
+    }
+
+    @Override
+    public Appendable append(CharSequence chunk, int start, int end) throws IOException {
+      if (failures > 0) {
+        failures--;
+        throw new IOException("Disk full");
+      }
+      text.append(chunk, start, end);
+      return this;
+    }
+
+    @Override
+    public Appendable append(char c) throws IOException {
+      return append(String.valueOf(c));
+    }
+
+    @Override
+    public String toString() {
+      return text.toString();
+    }
+  }
 }